@@ -0,0 +1,134 @@
+package org.example.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 聊天服务配置属性
+ * 
+ * 配置项前缀: app.chat
+ * 可在 application.yml 中配置：
+ * app:
+ *   chat:
+ *     system-prompt: "自定义系统提示词"
+ *     max-context-pairs: 20
+ *     memory:
+ *       max-sessions: 10000
+ *       max-total-chars: 20000000
+ *       idle-timeout: 30m
+ *       sweep-interval: 1m
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.chat")
+public class ChatProperties {
+
+    /**
+     * 系统提示词 - 定义AI助手的行为准则
+     */
+    private String systemPrompt = "你是一个友好、专业的AI助手，请用简洁清晰的语言回答用户的问题。";
+
+    /**
+     * 每个会话保留的对话轮数（一对 = user + assistant），超出后丢弃最早的一轮
+     */
+    private int maxContextPairs = 20;
+
+    /**
+     * 内存会话存储配置
+     */
+    private Memory memory = new Memory();
+
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    public void setSystemPrompt(String systemPrompt) {
+        this.systemPrompt = systemPrompt;
+    }
+
+    public int getMaxContextPairs() {
+        return maxContextPairs;
+    }
+
+    public void setMaxContextPairs(int maxContextPairs) {
+        this.maxContextPairs = maxContextPairs;
+    }
+
+    /**
+     * 计算每个会话保留的最大消息数
+     * 
+     * @return 最大消息数（不含系统消息）
+     */
+    public int getMaxContextMessages() {
+        return maxContextPairs * 2;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public void setMemory(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * 内存会话存储配置
+     * 
+     * 配置项前缀: app.chat.memory
+     */
+    public static class Memory {
+
+        /**
+         * 最多保存的会话数，超出后淘汰最久未访问的会话
+         */
+        private int maxSessions = 10000;
+
+        /**
+         * 所有会话消息内容的总字符数上限，超出后淘汰最久未访问的会话，直到回落到上限的 90% 以下
+         */
+        private long maxTotalChars = 20_000_000L;
+
+        /**
+         * 会话空闲超过该时长后被清除
+         */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+
+        /**
+         * 空闲会话的清理间隔
+         */
+        private Duration sweepInterval = Duration.ofMinutes(1);
+
+        public int getMaxSessions() {
+            return maxSessions;
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        public long getMaxTotalChars() {
+            return maxTotalChars;
+        }
+
+        public void setMaxTotalChars(long maxTotalChars) {
+            this.maxTotalChars = maxTotalChars;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public Duration getSweepInterval() {
+            return sweepInterval;
+        }
+
+        public void setSweepInterval(Duration sweepInterval) {
+            this.sweepInterval = sweepInterval;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.controller;
 
 import org.example.service.ChatService;
+import org.example.service.ConversationStore;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
@@ -18,19 +19,30 @@ public class ChatController {
 
     @PostMapping
     public Mono<String> chat(@RequestBody ChatRequest request) {
-        return chatService.chat(request.message());
+        return chatService.chat(request.sessionId(), request.message());
     }
 
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<String> chatStream(@RequestBody ChatRequest request) {
-        return chatService.chatStream(request.message());
+        return chatService.chatStream(request.sessionId(), request.message());
     }
 
     @DeleteMapping("/history")
-    public Mono<Void> clearHistory() {
-        chatService.clearHistory();
+    public Mono<Void> clearHistory(@RequestParam(required = false) String sessionId) {
+        chatService.clearHistory(sessionId);
         return Mono.empty();
     }
 
-    public record ChatRequest(String message) {}
+    @GetMapping("/stats")
+    public Mono<ConversationStore.Stats> getStats() {
+        return Mono.just(chatService.getStats());
+    }
+
+    /**
+     * 聊天请求
+     * 
+     * @param sessionId 会话ID（可选，未指定时使用默认会话）
+     * @param message 用户消息
+     */
+    public record ChatRequest(String sessionId, String message) {}
 }
@@ -1,7 +1,7 @@
 package org.example.service;
 
+import org.example.config.ChatProperties;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
@@ -18,55 +18,82 @@ import java.util.List;
 @Service
 public class ChatService {
 
+    /**
+     * 未指定 sessionId 时使用的会话
+     */
+    public static final String DEFAULT_SESSION_ID = "default";
+
     private final ChatClient chatClient;
-    private final List<Message> conversationHistory;
+    private final ChatProperties chatProperties;
+    private final ConversationStore conversationStore;
 
-    public ChatService(ChatModel chatModel) {
+    public ChatService(ChatModel chatModel, ChatProperties chatProperties, ConversationStore conversationStore) {
         this.chatClient = ChatClient.builder(chatModel).build();
-        this.conversationHistory = new ArrayList<>();
-        this.conversationHistory.add(new SystemMessage("你是一个友好、专业的AI助手，请用简洁清晰的语言回答用户的问题。"));
+        this.chatProperties = chatProperties;
+        this.conversationStore = conversationStore;
     }
 
-    public Mono<String> chat(String userMessage) {
-        conversationHistory.add(new UserMessage(userMessage));
-        Prompt prompt = new Prompt(conversationHistory);
+    public Mono<String> chat(String sessionId, String userMessage) {
+        String sid = resolveSessionId(sessionId);
         
         return Mono.fromCallable(() -> 
-                chatClient.prompt(prompt)
+                chatClient.prompt(buildPrompt(sid, userMessage))
                         .call()
                         .content()
         )
         .subscribeOn(Schedulers.boundedElastic())  // 在弹性线程池中执行阻塞操作
         .doOnNext(response -> {
             if (response != null && !response.isEmpty()) {
-                conversationHistory.add(new AssistantMessage(response));
+                conversationStore.appendTurn(sid, userMessage, response);
             }
         });
     }
 
-    public Flux<String> chatStream(String userMessage) {
-        conversationHistory.add(new UserMessage(userMessage));
-        Prompt prompt = new Prompt(conversationHistory);
-        
-        StringBuilder fullResponse = new StringBuilder();
+    public Flux<String> chatStream(String sessionId, String userMessage) {
+        String sid = resolveSessionId(sessionId);
         
-        return chatClient.prompt(prompt)
-                .stream()
-                .content()
-                .doOnNext(fullResponse::append)
-                .doOnComplete(() -> {
-                    if (!fullResponse.isEmpty()) {
-                        conversationHistory.add(new AssistantMessage(fullResponse.toString()));
-                    }
-                });
+        return Flux.defer(() -> {
+            StringBuilder fullResponse = new StringBuilder();
+            return chatClient.prompt(buildPrompt(sid, userMessage))
+                    .stream()
+                    .content()
+                    .doOnNext(fullResponse::append)
+                    .doOnComplete(() -> {
+                        if (!fullResponse.isEmpty()) {
+                            conversationStore.appendTurn(sid, userMessage, fullResponse.toString());
+                        }
+                    });
+        });
+    }
+
+    public void clearHistory(String sessionId) {
+        conversationStore.remove(resolveSessionId(sessionId));
+    }
+
+    public List<Message> getConversationHistory(String sessionId) {
+        return conversationStore.history(resolveSessionId(sessionId));
+    }
+
+    public ConversationStore.Stats getStats() {
+        return conversationStore.stats();
     }
 
-    public void clearHistory() {
-        conversationHistory.clear();
-        conversationHistory.add(new SystemMessage("你是一个友好、专业的AI助手，请用简洁清晰的语言回答用户的问题。"));
+    /**
+     * 组装提示词：系统消息 + 会话历史快照 + 本轮用户消息
+     * 
+     * 本轮用户消息在模型返回后才与回复一起写入会话，
+     * 同一会话的并发请求各自基于快照构建提示词，不会读到其他请求写了一半的历史。
+     */
+    private Prompt buildPrompt(String sessionId, String userMessage) {
+        List<Message> history = conversationStore.history(sessionId);
+        List<Message> messages = new ArrayList<>(history.size() + 2);
+        messages.add(new SystemMessage(chatProperties.getSystemPrompt()));
+        messages.addAll(history);
+        messages.add(new UserMessage(userMessage));
+        return new Prompt(messages);
     }
 
-    public List<Message> getConversationHistory() {
-        return new ArrayList<>(conversationHistory);
+    private String resolveSessionId(String sessionId) {
+        return sessionId == null || sessionId.isBlank() ? DEFAULT_SESSION_ID : sessionId;
     }
 }
@@ -0,0 +1,218 @@
+package org.example.service;
+
+import org.example.config.ChatProperties;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存会话存储（无数据库）
+ * 
+ * 按会话保存对话历史，适合单实例的轻量部署：
+ * 1. 会话隔离 - 每个会话单独加锁，不同会话的请求互不阻塞
+ * 2. 有界窗口 - 每个会话只保留最近 maxContextPairs 轮对话
+ * 3. 空闲清理 - 定期清除空闲超过 idleTimeout 的会话
+ * 4. 全局上限 - 会话数或消息总字符数超出上限时，淘汰最久未访问的会话
+ * 
+ * 一轮对话（用户消息 + AI回复）在模型返回后一次追加，并发请求不会交错写入半轮对话。
+ */
+@Component
+public class ConversationStore implements DisposableBean {
+
+    private final ChatProperties.Memory config;
+    private final int maxMessages;
+    private final Map<String, SessionHistory> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong totalChars = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final Disposable sweeper;
+
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+
+    public ConversationStore(ChatProperties chatProperties) {
+        this.config = chatProperties.getMemory();
+        this.maxMessages = chatProperties.getMaxContextMessages();
+        this.sweeper = Flux.interval(config.getSweepInterval()).subscribe(tick -> evictIdle());
+    }
+
+    /**
+     * 获取会话的历史消息快照
+     * 
+     * @param sessionId 会话ID
+     * @return 按时间正序的历史消息（不含系统消息）；会话不存在时返回空列表
+     */
+    public List<Message> history(String sessionId) {
+        SessionHistory history = sessions.get(sessionId);
+        if (history == null) {
+            return List.of();
+        }
+        synchronized (history) {
+            history.touch();
+            return new ArrayList<>(history.messages);
+        }
+    }
+
+    /**
+     * 追加一轮对话
+     * 
+     * @param sessionId 会话ID
+     * @param userMessage 用户消息
+     * @param response AI回复
+     */
+    public void appendTurn(String sessionId, String userMessage, String response) {
+        while (true) {
+            SessionHistory history = sessions.computeIfAbsent(sessionId, id -> new SessionHistory());
+            synchronized (history) {
+                if (history.removed) {
+                    // 会话刚被淘汰，重新创建
+                    continue;
+                }
+                history.add(new UserMessage(userMessage), userMessage.length());
+                history.add(new AssistantMessage(response), response.length());
+                while (history.messages.size() > maxMessages) {
+                    history.removeFirst();
+                }
+                history.touch();
+            }
+            break;
+        }
+        if (sessions.size() > config.getMaxSessions() || totalChars.get() > config.getMaxTotalChars()) {
+            evictForCapacity();
+        }
+    }
+
+    /**
+     * 清除会话
+     * 
+     * @param sessionId 会话ID
+     */
+    public void remove(String sessionId) {
+        SessionHistory history = sessions.get(sessionId);
+        if (history != null) {
+            remove(sessionId, history);
+        }
+    }
+
+    /**
+     * 获取存储统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        return new Stats(sessions.size(), totalChars.get(), idleEvictions.get(), capacityEvictions.get());
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.dispose();
+    }
+
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - config.getIdleTimeout().toMillis();
+        for (Map.Entry<String, SessionHistory> entry : sessions.entrySet()) {
+            if (entry.getValue().lastAccess < deadline && remove(entry.getKey(), entry.getValue())) {
+                idleEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 按最近访问时间淘汰会话，直到会话数和总字符数都回落到上限的 90% 以下
+     * 
+     * 同一时刻只有一个线程执行淘汰，其他线程直接返回，不等待。
+     */
+    private void evictForCapacity() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long targetChars = config.getMaxTotalChars() / 10 * 9;
+            int targetSessions = config.getMaxSessions() / 10 * 9;
+            // 先固定访问时间再排序，排序期间的访问不影响比较结果
+            List<Candidate> candidates = new ArrayList<>(sessions.size());
+            for (Map.Entry<String, SessionHistory> entry : sessions.entrySet()) {
+                candidates.add(new Candidate(entry.getKey(), entry.getValue(), entry.getValue().lastAccess));
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+            for (Candidate candidate : candidates) {
+                if (sessions.size() <= targetSessions && totalChars.get() <= targetChars) {
+                    break;
+                }
+                if (remove(candidate.sessionId(), candidate.history())) {
+                    capacityEvictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private boolean remove(String sessionId, SessionHistory history) {
+        if (!sessions.remove(sessionId, history)) {
+            return false;
+        }
+        synchronized (history) {
+            history.removed = true;
+            totalChars.addAndGet(-history.chars);
+            history.messages.clear();
+            history.chars = 0;
+        }
+        return true;
+    }
+
+    /**
+     * 单个会话的历史消息（访问时需持有该对象的锁，lastAccess 除外）
+     */
+    private final class SessionHistory {
+        private final ArrayDeque<Message> messages = new ArrayDeque<>();
+        private final ArrayDeque<Integer> lengths = new ArrayDeque<>();
+        private long chars;
+        private boolean removed;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private void add(Message message, int length) {
+            messages.addLast(message);
+            lengths.addLast(length);
+            chars += length;
+            totalChars.addAndGet(length);
+        }
+
+        private void removeFirst() {
+            messages.pollFirst();
+            Integer length = lengths.pollFirst();
+            if (length != null) {
+                chars -= length;
+                totalChars.addAndGet(-length);
+            }
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    private record Candidate(String sessionId, SessionHistory history, long lastAccess) {}
+
+    /**
+     * 会话存储统计信息
+     * 
+     * @param sessions 当前保存的会话数
+     * @param totalChars 当前所有会话消息内容的总字符数
+     * @param idleEvictions 因空闲被清除的会话数
+     * @param capacityEvictions 因超出会话数或字符数上限被淘汰的会话数
+     */
+    public record Stats(int sessions, long totalChars, long idleEvictions, long capacityEvictions) {}
+}
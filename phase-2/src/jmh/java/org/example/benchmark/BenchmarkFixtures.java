@@ -0,0 +1,262 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.cache.ConversationWindowCache;
+import org.example.cache.SessionExistenceCache;
+import org.example.config.ChatProperties;
+import org.example.context.ContextWindowBuilder;
+import org.example.context.SimpleTokenEstimator;
+import org.example.entity.ConversationMessage;
+import org.example.exception.UpstreamErrorParser;
+import org.example.repository.ConversationMessageRepository;
+import org.example.repository.ConversationSessionRepository;
+import org.example.repository.ConversationSummaryRepository;
+import org.example.repository.MessageBatchWriter;
+import org.example.service.ChatService;
+import org.example.service.ConversationSummarizer;
+import org.example.service.SessionTurnQueue;
+import org.example.service.UpstreamGuard;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 基准测试的公共桩件
+ * 
+ * 不依赖数据库和模型服务：
+ * 1. 模型 - 固定返回同一段回复（或固定抛出同一个异常）的 ChatModel
+ * 2. 仓库 - 基于内存列表的动态代理，只实现聊天链路用到的查询
+ * 3. 写入 - 不落库的 MessageBatchWriter，直接为消息分配自增ID
+ * 
+ * 消息内容以中文为主，夹杂少量英文和数字，长度与线上对话接近。
+ */
+final class BenchmarkFixtures {
+
+    static final Long SESSION_ID = 1L;
+
+    private static final String CJK_TEXT =
+            "在分布式系统中，缓存一致性是一个经常被讨论的问题。当多个节点同时读写同一份数据时，"
+            + "如果没有合适的失效策略，就可能读到过期的内容。常见的做法包括写穿透、延迟双删以及基于版本号的校验，"
+            + "每种方式都有各自的适用场景。另外，Spring WebFlux 基于 Reactor 实现非阻塞 I/O，"
+            + "在事件循环线程上执行阻塞调用会拖慢所有请求，因此模型调用需要切换到 boundedElastic 线程池。"
+            + "请结合上面的背景，说明在 QPS 达到 2000 时应该如何设计会话历史的存储和裁剪策略。";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 基准测试使用的配置：关闭依赖数据库或后台任务的功能
+     * 
+     * @param messageCount 每个会话保留的历史消息数
+     * @param cached 是否启用内存窗口缓存
+     * @return 配置
+     */
+    static ChatProperties properties(int messageCount, boolean cached) {
+        ChatProperties properties = new ChatProperties();
+        properties.setMaxContextPairs(Math.max(messageCount / 2, 1));
+        properties.getWindowCache().setEnabled(cached);
+        // 内存仓库不记录新写入的消息，版本校验总会失败，测试期间关闭（单实例部署的配置）
+        properties.getWindowCache().setValidate(false);
+        properties.getBatchWrite().setEnabled(false);
+        properties.getStreamPersist().setEnabled(false);
+        properties.getSummary().setEnabled(false);
+        return properties;
+    }
+
+    /**
+     * 生成中文为主的文本
+     * 
+     * @param random 随机数（固定种子保证各次运行内容一致）
+     * @param length 字符数
+     * @return 文本
+     */
+    static String cjkText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            int start = random.nextInt(CJK_TEXT.length());
+            int end = Math.min(CJK_TEXT.length(), start + length - text.length());
+            text.append(CJK_TEXT, start, end);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 生成一段会话历史（用户提问和AI回复交替）
+     * 
+     * @param messageCount 消息数
+     * @return 按时间正序的消息
+     */
+    static List<ConversationMessage> history(int messageCount) {
+        Random random = new Random(42);
+        SimpleTokenEstimator estimator = new SimpleTokenEstimator();
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        List<ConversationMessage> rows = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            boolean user = i % 2 == 0;
+            String content = cjkText(random, user ? 80 + random.nextInt(120) : 300 + random.nextInt(500));
+            rows.add(new ConversationMessage(
+                    (long) i + 1,
+                    SESSION_ID,
+                    user ? MessageType.USER.getValue() : MessageType.ASSISTANT.getValue(),
+                    content,
+                    start.plusSeconds(i),
+                    estimator.estimate(content),
+                    ConversationMessage.STATUS_COMPLETE
+            ));
+        }
+        return rows;
+    }
+
+    /**
+     * 固定返回同一段回复的模型
+     * 
+     * @param reply 回复内容
+     * @return 模型
+     */
+    static ChatModel replyingModel(String reply) {
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage(reply))));
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response;
+            }
+        };
+    }
+
+    /**
+     * 固定抛出异常的模型
+     * 
+     * @param error 每次调用抛出的异常
+     * @return 模型
+     */
+    static ChatModel failingModel(RuntimeException error) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw error;
+            }
+        };
+    }
+
+    /**
+     * 基于内存历史的消息仓库
+     * 
+     * @param rows 按时间正序的消息
+     * @return 仓库
+     */
+    static ConversationMessageRepository messageRepository(List<ConversationMessage> rows) {
+        return repository(ConversationMessageRepository.class, Map.of(
+                "findRecentBySessionId", args -> {
+                    int limit = (Integer) args[1];
+                    // 与 SQL 一致：按时间倒序取最近 limit 条
+                    List<ConversationMessage> recent = new ArrayList<>(Math.min(limit, rows.size()));
+                    for (int i = rows.size() - 1; i >= 0 && recent.size() < limit; i--) {
+                        recent.add(rows.get(i));
+                    }
+                    return Flux.fromIterable(recent);
+                },
+                "findBySessionIdOrderByCreatedAtAsc", args -> Flux.fromIterable(rows)
+        ));
+    }
+
+    /**
+     * 所有会话都存在的会话仓库
+     * 
+     * @return 仓库
+     */
+    static ConversationSessionRepository sessionRepository() {
+        return repository(ConversationSessionRepository.class, Map.of(
+                "existsById", args -> Mono.just(true)
+        ));
+    }
+
+    /**
+     * 没有任何摘要的摘要仓库
+     * 
+     * @return 仓库
+     */
+    static ConversationSummaryRepository summaryRepository() {
+        return repository(ConversationSummaryRepository.class, Map.of(
+                "findById", args -> Mono.empty()
+        ));
+    }
+
+    /**
+     * 不落库的批量写入器：为消息分配自增ID后直接返回
+     * 
+     * @param properties 配置
+     * @return 写入器
+     */
+    static MessageBatchWriter messageWriter(ChatProperties properties) {
+        AtomicLong ids = new AtomicLong(1_000_000L);
+        return new MessageBatchWriter(null, properties) {
+            @Override
+            public Mono<List<ConversationMessage>> write(List<ConversationMessage> rows) {
+                List<ConversationMessage> saved = new ArrayList<>(rows.size());
+                for (ConversationMessage row : rows) {
+                    saved.add(new ConversationMessage(ids.incrementAndGet(), row.sessionId(), row.role(),
+                            row.content(), row.createdAt(), row.tokenCount(), row.status()));
+                }
+                return Mono.just(saved);
+            }
+        };
+    }
+
+    /**
+     * 组装聊天服务
+     * 
+     * @param chatModel 模型
+     * @param properties 配置
+     * @param rows 会话历史
+     * @return 聊天服务
+     */
+    static ChatService chatService(ChatModel chatModel, ChatProperties properties, List<ConversationMessage> rows) {
+        ConversationMessageRepository messageRepository = messageRepository(rows);
+        UpstreamGuard upstreamGuard = new UpstreamGuard(new UpstreamErrorParser(new ObjectMapper()), properties);
+        return new ChatService(
+                chatModel,
+                sessionRepository(),
+                messageRepository,
+                properties,
+                new ConversationWindowCache(properties),
+                new ContextWindowBuilder(properties, new SimpleTokenEstimator()),
+                messageWriter(properties),
+                new SessionExistenceCache(properties),
+                new ConversationSummarizer(chatModel, messageRepository, summaryRepository(), properties, upstreamGuard),
+                new SessionTurnQueue(properties),
+                upstreamGuard
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + "(in-memory)";
+                };
+            }
+            Function<Object[], Object> handler = methods.get(method.getName());
+            if (handler == null) {
+                throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+            }
+            return handler.apply(args);
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.benchmark;
+
+import org.example.config.ChatProperties;
+import org.example.entity.ConversationMessage;
+import org.example.service.ChatService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一轮非流式对话的完整链路（会话校验 -> 加载历史 -> 转换为 Message -> 裁剪 -> 调用模型 -> 保存）
+ * 
+ * 模型和仓库均为内存桩件，测得的是服务自身的开销：
+ * - cached=false：每轮都从仓库读取并转换历史消息
+ * - cached=true：历史消息命中内存窗口缓存
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextAssemblyBenchmark {
+
+    @Param({"10", "100", "10000"})
+    public int messages;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private ChatService chatService;
+    private String userMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        ChatProperties properties = BenchmarkFixtures.properties(messages, cached);
+        List<ConversationMessage> rows = BenchmarkFixtures.history(messages);
+        chatService = BenchmarkFixtures.chatService(
+                BenchmarkFixtures.replyingModel(BenchmarkFixtures.cjkText(random, 600)),
+                properties,
+                rows
+        );
+        userMessage = BenchmarkFixtures.cjkText(random, 120);
+    }
+
+    @Benchmark
+    public String chatTurn() {
+        return chatService.chat(BenchmarkFixtures.SESSION_ID, userMessage).block();
+    }
+}
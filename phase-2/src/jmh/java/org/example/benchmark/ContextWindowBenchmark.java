@@ -0,0 +1,80 @@
+package org.example.benchmark;
+
+import org.example.config.ChatProperties;
+import org.example.context.ContextMessage;
+import org.example.context.ContextWindowBuilder;
+import org.example.context.SimpleTokenEstimator;
+import org.example.entity.ConversationMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史消息转换与按 token 预算裁剪
+ * 
+ * - toContextMessages：数据库行 -> Message（含 token 数），对应缓存未命中时的转换开销
+ * - buildWindow：在已转换的历史上按预算选取窗口并组装完整消息列表
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextWindowBenchmark {
+
+    @Param({"10", "100", "10000"})
+    public int messages;
+
+    private ContextWindowBuilder builder;
+    private List<ConversationMessage> rows;
+    private List<ContextMessage> history;
+    private List<Message> prefix;
+    private String userMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChatProperties properties = BenchmarkFixtures.properties(messages, false);
+        builder = new ContextWindowBuilder(properties, new SimpleTokenEstimator());
+        rows = BenchmarkFixtures.history(messages);
+        history = toContextMessages();
+        prefix = List.of(new SystemMessage(properties.getSystemPrompt()));
+        userMessage = BenchmarkFixtures.cjkText(new Random(7), 120);
+    }
+
+    @Benchmark
+    public List<ContextMessage> toContextMessages() {
+        List<ContextMessage> converted = new ArrayList<>(rows.size());
+        for (ConversationMessage row : rows) {
+            Message message = MessageType.USER.getValue().equals(row.role())
+                    ? new UserMessage(row.content())
+                    : new AssistantMessage(row.content());
+            converted.add(new ContextMessage(message, row.tokenCount()));
+        }
+        return converted;
+    }
+
+    @Benchmark
+    public List<Message> buildWindow() {
+        return builder.build(prefix, history, userMessage);
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.config.ChatProperties;
+import org.example.exception.UpstreamErrorParser;
+import org.example.exception.UpstreamException;
+import org.example.service.ChatService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游错误的解析与映射（模型调用失败 -> 带类型的 UpstreamException）
+ * 
+ * - zh：带 message_zh 字段的 JSON 错误体（429）
+ * - en：只有 message 字段的 JSON 错误体（503）
+ * - context：上下文超长（400）
+ * - plain：无法解析的长文本（需要截断）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorMappingBenchmark {
+
+    @Param({"zh", "en", "context", "plain"})
+    public String body;
+
+    private RuntimeException error;
+    private UpstreamErrorParser parser;
+    private ChatService chatService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        error = switch (body) {
+            case "zh" -> new NonTransientAiException("HTTP 429 - {\"error\":{\"code\":\"rate_limit_exceeded\","
+                    + "\"type\":\"requests\",\"message\":\"Rate limit reached for requests\","
+                    + "\"message_zh\":\"请求过于频繁，请稍后再试\"}}");
+            case "en" -> new TransientAiException("HTTP 503 - {\"error\":{\"code\":\"overloaded\","
+                    + "\"type\":\"server_error\",\"message\":\"The upstream model is currently overloaded\"}}");
+            case "context" -> new NonTransientAiException("HTTP 400 - {\"error\":{\"code\":\"context_length_exceeded\","
+                    + "\"type\":\"invalid_request_error\",\"message\":\"This model's maximum context length is "
+                    + "128000 tokens. However, your messages resulted in 130412 tokens.\"}}");
+            default -> new TransientAiException("HTTP 502 - " + BenchmarkFixtures.cjkText(new Random(7), 2000));
+        };
+        parser = new UpstreamErrorParser(new ObjectMapper());
+
+        ChatProperties properties = BenchmarkFixtures.properties(10, true);
+        // 只测错误映射本身：不重试、不熔断
+        properties.getUpstream().setMaxRetries(0);
+        properties.getUpstream().setFailureThreshold(0);
+        chatService = BenchmarkFixtures.chatService(
+                BenchmarkFixtures.failingModel(error),
+                properties,
+                BenchmarkFixtures.history(10)
+        );
+    }
+
+    @Benchmark
+    public UpstreamException parse() {
+        return parser.parse(error);
+    }
+
+    @Benchmark
+    public Throwable chatTurnFailure() {
+        try {
+            chatService.chat(BenchmarkFixtures.SESSION_ID, "你好").block();
+            return null;
+        } catch (UpstreamException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.example.cache;
+
+import org.example.config.ChatProperties;
+import org.example.context.ContextMessage;
+import org.example.entity.ConversationMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话上下文窗口缓存
+ * 
+ * 按 sessionId 在内存中保存最近的 Message 对象及其 token 数（环形缓冲区），直接作为上下文窗口使用：
+ * 1. 写穿透 - 消息先写入数据库，成功后再追加到已缓存的窗口
+ * 2. 有界淘汰 - 缓存的会话数超过上限时按 LRU 淘汰最久未使用的会话
+ * 3. 回源加载 - 未命中、被淘汰或过期后由调用方从数据库加载并回填
+ * 4. 过期与校验 - 窗口加载后超过 ttl 视为过期；多实例部署时以会话最新一条消息的 (ID, 状态)
+ *    作为版本，其他实例写入新消息或结束流式回复后版本变化，本地窗口失效
+ * 5. 统计指标 - 记录命中/未命中/淘汰/过期/失效次数，用于评估容量配置
+ * 
+ * 两个实例同时为同一会话写入时，版本只能反映最后一次写入，另一实例的消息可能在 ttl 内缺失。
+ */
+@Component
+public class ConversationWindowCache {
+
+    private final ChatProperties chatProperties;
+    private final Map<Long, SessionWindow> windows;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    public ConversationWindowCache(ChatProperties chatProperties) {
+        this.chatProperties = chatProperties;
+        int maxSessions = chatProperties.getWindowCache().getMaxSessions();
+        // accessOrder = true：按访问顺序排列，最久未访问的会话在队首
+        this.windows = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SessionWindow> eldest) {
+                if (size() > maxSessions) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 是否启用缓存
+     * 
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return chatProperties.getWindowCache().isEnabled();
+    }
+
+    /**
+     * 是否在使用缓存前校验会话的最新消息（多实例部署）
+     * 
+     * @return 是否校验
+     */
+    public boolean isValidate() {
+        return chatProperties.getWindowCache().isValidate();
+    }
+
+    /**
+     * 获取会话的上下文窗口快照
+     * 
+     * @param sessionId 会话ID
+     * @return 按时间正序的消息列表副本；未命中或已过期时返回 null
+     */
+    public List<ContextMessage> get(Long sessionId) {
+        SessionWindow window;
+        synchronized (windows) {
+            window = windows.get(sessionId);
+            if (window != null && window.isExpired(System.nanoTime())) {
+                windows.remove(sessionId);
+                expirations.incrementAndGet();
+                window = null;
+            }
+        }
+        if (window == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return window.snapshot();
+    }
+
+    /**
+     * 校验本地窗口是否仍对应会话的最新消息
+     * 
+     * 版本不一致时移除本地窗口，调用方随后从数据库重新加载。
+     * 
+     * @param sessionId 会话ID
+     * @param current 数据库中会话的最新版本
+     * @return 本地窗口存在且版本一致时返回 true
+     */
+    public boolean validate(Long sessionId, Head current) {
+        synchronized (windows) {
+            SessionWindow window = windows.get(sessionId);
+            if (window == null) {
+                return false;
+            }
+            if (window.head().equals(current)) {
+                return true;
+            }
+            windows.remove(sessionId);
+        }
+        stale.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 回填从数据库加载的上下文窗口
+     * 
+     * 若其他请求已先一步回填，则保留已有窗口，避免用较旧的数据覆盖。
+     * 
+     * @param sessionId 会话ID
+     * @param messages 按时间正序的消息列表
+     * @param head 加载时会话的最新版本（包括不参与上下文的消息）
+     */
+    public void put(Long sessionId, List<ContextMessage> messages, Head head) {
+        SessionWindow window = new SessionWindow(chatProperties.getMaxContextMessages(), head,
+                System.nanoTime() + chatProperties.getWindowCache().getTtl().toNanos());
+        window.appendAll(messages, head);
+        synchronized (windows) {
+            windows.putIfAbsent(sessionId, window);
+        }
+    }
+
+    /**
+     * 追加新消息（写穿透）
+     * 
+     * 只更新已缓存的窗口；会话不在缓存中时不做任何事，下次访问会从数据库加载。
+     * 
+     * @param sessionId 会话ID
+     * @param messages 按时间正序追加的消息
+     * @param head 写入后会话的最新版本
+     */
+    public void append(Long sessionId, List<ContextMessage> messages, Head head) {
+        SessionWindow window;
+        synchronized (windows) {
+            window = windows.get(sessionId);
+        }
+        if (window != null) {
+            window.appendAll(messages, head);
+        }
+    }
+
+    /**
+     * 使会话的缓存失效
+     * 
+     * @param sessionId 会话ID
+     */
+    public void invalidate(Long sessionId) {
+        synchronized (windows) {
+            windows.remove(sessionId);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        int size;
+        synchronized (windows) {
+            size = windows.size();
+        }
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        double hitRatio = total == 0 ? 0.0 : (double) hitCount / total;
+        return new Stats(hitCount, missCount, evictions.get(), expirations.get(), stale.get(), size, hitRatio);
+    }
+
+    /**
+     * 单个会话的消息环形缓冲区，超过容量时丢弃最旧的消息
+     */
+    private static final class SessionWindow {
+
+        private final int capacity;
+        private final ArrayDeque<ContextMessage> messages;
+        private final long expiresAtNanos;
+        private Head head;
+
+        SessionWindow(int capacity, Head head, long expiresAtNanos) {
+            this.capacity = capacity;
+            this.messages = new ArrayDeque<>(capacity);
+            this.head = head;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+
+        synchronized Head head() {
+            return head;
+        }
+
+        synchronized void appendAll(List<ContextMessage> newMessages, Head newHead) {
+            head = newHead;
+            if (capacity <= 0) {
+                return;
+            }
+            for (ContextMessage message : newMessages) {
+                if (messages.size() == capacity) {
+                    messages.pollFirst();
+                }
+                messages.addLast(message);
+            }
+        }
+
+        synchronized List<ContextMessage> snapshot() {
+            return messages.isEmpty() ? Collections.emptyList() : new ArrayList<>(messages);
+        }
+    }
+
+    /**
+     * 会话的最新版本：最新一条消息的ID和状态
+     * 
+     * 流式回复的占位消息在结束时只更新状态，因此状态也是版本的一部分。
+     * 
+     * @param messageId 最新一条消息的ID（会话没有消息时为 0）
+     * @param status 最新一条消息的状态（会话没有消息时为 null）
+     */
+    public record Head(long messageId, String status) {
+
+        /**
+         * 没有消息的会话
+         */
+        public static final Head EMPTY = new Head(0, null);
+
+        /**
+         * 取消息列表中最新一条消息的版本
+         * 
+         * @param rows 按时间正序的消息
+         * @return 版本；列表为空时返回 EMPTY
+         */
+        public static Head of(List<ConversationMessage> rows) {
+            if (rows.isEmpty()) {
+                return EMPTY;
+            }
+            ConversationMessage last = rows.get(rows.size() - 1);
+            return new Head(last.id(), last.status());
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     * 
+     * @param hits 命中次数
+     * @param misses 未命中次数
+     * @param evictions 淘汰的会话数
+     * @param expirations 超过 ttl 而过期的会话数
+     * @param stale 因其他实例写入而失效的会话数
+     * @param size 当前缓存的会话数
+     * @param hitRatio 命中率（0~1）
+     */
+    public record Stats(long hits, long misses, long evictions, long expirations, long stale, int size, double hitRatio) {}
+}
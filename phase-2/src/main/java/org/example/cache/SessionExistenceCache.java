@@ -0,0 +1,161 @@
+package org.example.cache;
+
+import org.example.config.ChatProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话存在性缓存
+ * 
+ * 缓存"会话存在"和"会话不存在"两类结果，省去每轮对话前的 existsById 查询：
+ * 1. 正向缓存 - createNewSession 时写入，deleteSession 时改为不存在
+ * 2. 负向缓存 - 查询到不存在的会话ID，在较短的 TTL 内直接拒绝
+ * 3. 有界淘汰 - 条目数超过上限时按 LRU 淘汰
+ * 4. 统计指标 - 记录命中次数和省下的数据库往返次数
+ * 
+ * 正向条目也带有 TTL，用于兜底其他实例删除会话的情况。
+ */
+@Component
+public class SessionExistenceCache {
+
+    private final ChatProperties.SessionCache config;
+    private final Map<Long, Entry> entries;
+
+    private final AtomicLong positiveHits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong foldedChecks = new AtomicLong();
+
+    public SessionExistenceCache(ChatProperties chatProperties) {
+        this.config = chatProperties.getSessionCache();
+        int maxEntries = config.getMaxEntries();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 查询缓存的存在性结果
+     * 
+     * @param sessionId 会话ID
+     * @return true 表示存在，false 表示不存在，null 表示未缓存（需查询数据库）
+     */
+    public Boolean lookup(Long sessionId) {
+        if (!config.isEnabled()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(sessionId);
+            if (entry != null && entry.expiresAtNanos() - System.nanoTime() <= 0) {
+                entries.remove(sessionId);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.exists()) {
+            positiveHits.incrementAndGet();
+        } else {
+            negativeHits.incrementAndGet();
+        }
+        return entry.exists();
+    }
+
+    /**
+     * 记录会话存在
+     * 
+     * @param sessionId 会话ID
+     */
+    public void markPresent(Long sessionId) {
+        put(sessionId, true, config.getPositiveTtl().toNanos());
+    }
+
+    /**
+     * 记录会话不存在
+     * 
+     * @param sessionId 会话ID
+     */
+    public void markAbsent(Long sessionId) {
+        put(sessionId, false, config.getNegativeTtl().toNanos());
+    }
+
+    /**
+     * 记录一次合并到历史查询中的存在性校验（省去了单独的 existsById）
+     */
+    public void recordFoldedCheck() {
+        foldedChecks.incrementAndGet();
+    }
+
+    /**
+     * 是否将存在性校验合并到历史消息查询中
+     * 
+     * @return 是否合并
+     */
+    public boolean isFoldIntoHistory() {
+        return config.isFoldIntoHistory();
+    }
+
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long positive = positiveHits.get();
+        long negative = negativeHits.get();
+        long folded = foldedChecks.get();
+        return new Stats(positive, negative, misses.get(), folded, positive + negative + folded, size);
+    }
+
+    private void put(Long sessionId, boolean exists, long ttlNanos) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Entry entry = new Entry(exists, System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(sessionId, entry);
+        }
+    }
+
+    /**
+     * 缓存条目
+     * 
+     * @param exists 会话是否存在
+     * @param expiresAtNanos 过期时间（System.nanoTime）
+     */
+    private record Entry(boolean exists, long expiresAtNanos) {}
+
+    /**
+     * 存在性缓存统计信息
+     * 
+     * @param positiveHits 命中"存在"的次数
+     * @param negativeHits 命中"不存在"的次数
+     * @param misses 未命中次数
+     * @param foldedChecks 合并到历史查询中的校验次数
+     * @param avoidedRoundTrips 省下的 existsById 往返次数
+     * @param size 当前缓存的条目数
+     */
+    public record Stats(
+            long positiveHits,
+            long negativeHits,
+            long misses,
+            long foldedChecks,
+            long avoidedRoundTrips,
+            int size
+    ) {}
+}
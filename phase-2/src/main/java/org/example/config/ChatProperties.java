@@ -3,6 +3,8 @@ package org.example.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * 聊天服务配置属性
  * 
@@ -12,6 +14,47 @@ import org.springframework.context.annotation.Configuration;
  *   chat:
  *     system-prompt: "自定义系统提示词"
  *     max-context-pairs: 20
+ *     max-context-tokens: 8000
+ *     window-cache:
+ *       enabled: true
+ *       max-sessions: 10000
+ *       ttl: 10m
+ *       validate: true
+ *     batch-write:
+ *       enabled: true
+ *       flush-size: 64
+ *       flush-interval: 10ms
+ *       queue-capacity: 4096
+ *     stream-persist:
+ *       enabled: true
+ *       flush-interval: 1s
+ *       flush-bytes: 4096
+ *     session-cache:
+ *       enabled: true
+ *       max-entries: 100000
+ *       positive-ttl: 10m
+ *       negative-ttl: 30s
+ *       fold-into-history: false
+ *     paging:
+ *       default-page-size: 50
+ *       max-page-size: 200
+ *     summary:
+ *       enabled: true
+ *       concurrency: 2
+ *       queue-capacity: 1000
+ *       min-messages: 10
+ *       max-messages-per-run: 40
+ *       max-chars: 800
+ *     turn-queue:
+ *       enabled: true
+ *       max-pending: 8
+ *       retry-after: 1s
+ *       coalesce: false
+ *     upstream:
+ *       max-retries: 2
+ *       retry-backoff: 500ms
+ *       failure-threshold: 5
+ *       open-duration: 10s
  */
 @Configuration
 @ConfigurationProperties(prefix = "app.chat")
@@ -28,6 +71,52 @@ public class ChatProperties {
      */
     private int maxContextPairs = 20;
 
+    /**
+     * 上下文的 token 预算（系统消息 + 历史消息 + 本轮用户消息）
+     * 历史消息从最新的开始装填，超出预算的旧消息被丢弃；小于等于 0 表示只按消息条数截断
+     */
+    private int maxContextTokens = 8000;
+
+    /**
+     * 会话上下文窗口缓存配置
+     */
+    private WindowCache windowCache = new WindowCache();
+
+    /**
+     * 消息批量写入配置
+     */
+    private BatchWrite batchWrite = new BatchWrite();
+
+    /**
+     * 流式回复增量持久化配置
+     */
+    private StreamPersist streamPersist = new StreamPersist();
+
+    /**
+     * 会话存在性缓存配置
+     */
+    private SessionCache sessionCache = new SessionCache();
+
+    /**
+     * 会话/消息列表分页配置
+     */
+    private Paging paging = new Paging();
+
+    /**
+     * 历史消息摘要配置
+     */
+    private Summary summary = new Summary();
+
+    /**
+     * 会话级请求队列配置
+     */
+    private TurnQueue turnQueue = new TurnQueue();
+
+    /**
+     * 模型调用保护配置
+     */
+    private Upstream upstream = new Upstream();
+
     public String getSystemPrompt() {
         return systemPrompt;
     }
@@ -44,6 +133,14 @@ public class ChatProperties {
         this.maxContextPairs = maxContextPairs;
     }
 
+    public int getMaxContextTokens() {
+        return maxContextTokens;
+    }
+
+    public void setMaxContextTokens(int maxContextTokens) {
+        this.maxContextTokens = maxContextTokens;
+    }
+
     /**
      * 获取最大保留的消息条数（不含系统消息）
      * 
@@ -52,4 +149,548 @@ public class ChatProperties {
     public int getMaxContextMessages() {
         return maxContextPairs * 2;
     }
+
+    public WindowCache getWindowCache() {
+        return windowCache;
+    }
+
+    public void setWindowCache(WindowCache windowCache) {
+        this.windowCache = windowCache;
+    }
+
+    public BatchWrite getBatchWrite() {
+        return batchWrite;
+    }
+
+    public void setBatchWrite(BatchWrite batchWrite) {
+        this.batchWrite = batchWrite;
+    }
+
+    public StreamPersist getStreamPersist() {
+        return streamPersist;
+    }
+
+    public void setStreamPersist(StreamPersist streamPersist) {
+        this.streamPersist = streamPersist;
+    }
+
+    public SessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    public void setSessionCache(SessionCache sessionCache) {
+        this.sessionCache = sessionCache;
+    }
+
+    public Paging getPaging() {
+        return paging;
+    }
+
+    public void setPaging(Paging paging) {
+        this.paging = paging;
+    }
+
+    public Summary getSummary() {
+        return summary;
+    }
+
+    public void setSummary(Summary summary) {
+        this.summary = summary;
+    }
+
+    public TurnQueue getTurnQueue() {
+        return turnQueue;
+    }
+
+    public void setTurnQueue(TurnQueue turnQueue) {
+        this.turnQueue = turnQueue;
+    }
+
+    public Upstream getUpstream() {
+        return upstream;
+    }
+
+    public void setUpstream(Upstream upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * 会话上下文窗口缓存配置
+     * 
+     * 配置项前缀: app.chat.window-cache
+     */
+    public static class WindowCache {
+
+        /**
+         * 是否启用内存上下文窗口缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最多缓存的会话数，超出后按 LRU 淘汰
+         */
+        private int maxSessions = 10000;
+
+        /**
+         * 窗口从数据库加载后的有效期，过期后重新加载
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * 使用缓存前是否查询会话的最新消息进行校验；多实例部署时应开启，单实例可关闭以省去这次查询
+         */
+        private boolean validate = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSessions() {
+            return maxSessions;
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public boolean isValidate() {
+            return validate;
+        }
+
+        public void setValidate(boolean validate) {
+            this.validate = validate;
+        }
+    }
+
+    /**
+     * 消息批量写入配置
+     * 
+     * 配置项前缀: app.chat.batch-write
+     */
+    public static class BatchWrite {
+
+        /**
+         * 是否启用微批合并；关闭时每轮对话仍然单语句写入，但不排队
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每个批次最多合并的写请求数（一个写请求 = 一轮对话）
+         */
+        private int flushSize = 64;
+
+        /**
+         * 最长刷盘间隔
+         */
+        private Duration flushInterval = Duration.ofMillis(10);
+
+        /**
+         * 写请求队列容量，队列满时直接单独写入
+         */
+        private int queueCapacity = 4096;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getFlushSize() {
+            return flushSize;
+        }
+
+        public void setFlushSize(int flushSize) {
+            this.flushSize = flushSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * 流式回复增量持久化配置
+     * 
+     * 配置项前缀: app.chat.stream-persist
+     */
+    public static class StreamPersist {
+
+        /**
+         * 是否按检查点增量保存流式回复；关闭时在流结束后一次性保存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 检查点间隔：距上次保存超过该时间后，收到的下一个片段触发保存
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * 检查点字节阈值：未保存内容超过该字节数（UTF-8）时立即保存
+         */
+        private int flushBytes = 4096;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getFlushBytes() {
+            return flushBytes;
+        }
+
+        public void setFlushBytes(int flushBytes) {
+            this.flushBytes = flushBytes;
+        }
+    }
+
+    /**
+     * 会话存在性缓存配置
+     * 
+     * 配置项前缀: app.chat.session-cache
+     */
+    public static class SessionCache {
+
+        /**
+         * 是否启用会话存在性缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最多缓存的会话ID数，超出后按 LRU 淘汰
+         */
+        private int maxEntries = 100000;
+
+        /**
+         * "会话存在"结果的有效期（兜底其他实例删除会话的情况）
+         */
+        private Duration positiveTtl = Duration.ofMinutes(10);
+
+        /**
+         * "会话不存在"结果的有效期
+         */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+
+        /**
+         * 缓存未命中时，是否把存在性校验合并到历史消息查询中（会话表 LEFT JOIN 消息表，无结果即会话不存在）
+         */
+        private boolean foldIntoHistory = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getPositiveTtl() {
+            return positiveTtl;
+        }
+
+        public void setPositiveTtl(Duration positiveTtl) {
+            this.positiveTtl = positiveTtl;
+        }
+
+        public Duration getNegativeTtl() {
+            return negativeTtl;
+        }
+
+        public void setNegativeTtl(Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+
+        public boolean isFoldIntoHistory() {
+            return foldIntoHistory;
+        }
+
+        public void setFoldIntoHistory(boolean foldIntoHistory) {
+            this.foldIntoHistory = foldIntoHistory;
+        }
+    }
+
+    /**
+     * 会话/消息列表分页配置
+     * 
+     * 配置项前缀: app.chat.paging
+     */
+    public static class Paging {
+
+        /**
+         * 未指定 size 时的每页条数，也是 NDJSON 流式列表每次从数据库读取的行数
+         */
+        private int defaultPageSize = 50;
+
+        /**
+         * 每页条数上限，超出时按上限处理
+         */
+        private int maxPageSize = 200;
+
+        public int getDefaultPageSize() {
+            return defaultPageSize;
+        }
+
+        public void setDefaultPageSize(int defaultPageSize) {
+            this.defaultPageSize = defaultPageSize;
+        }
+
+        public int getMaxPageSize() {
+            return maxPageSize;
+        }
+
+        public void setMaxPageSize(int maxPageSize) {
+            this.maxPageSize = maxPageSize;
+        }
+    }
+
+    /**
+     * 历史消息摘要配置
+     * 
+     * 配置项前缀: app.chat.summary
+     */
+    public static class Summary {
+
+        /**
+         * 是否把滑出上下文窗口的旧消息压缩为摘要
+         */
+        private boolean enabled = true;
+
+        /**
+         * 同时执行的摘要任务数（每个任务调用一次模型）
+         */
+        private int concurrency = 2;
+
+        /**
+         * 等待执行的摘要任务上限，队列满时丢弃新任务（下一轮对话会再次触发）
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * 滑出窗口的未摘要消息达到该条数时才生成摘要，避免每轮都调用模型
+         */
+        private int minMessages = 10;
+
+        /**
+         * 单次摘要最多合并的消息条数，剩余消息由后续任务继续处理
+         */
+        private int maxMessagesPerRun = 40;
+
+        /**
+         * 摘要的最大字数（写入摘要提示词）
+         */
+        private int maxChars = 800;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getMinMessages() {
+            return minMessages;
+        }
+
+        public void setMinMessages(int minMessages) {
+            this.minMessages = minMessages;
+        }
+
+        public int getMaxMessagesPerRun() {
+            return maxMessagesPerRun;
+        }
+
+        public void setMaxMessagesPerRun(int maxMessagesPerRun) {
+            this.maxMessagesPerRun = maxMessagesPerRun;
+        }
+
+        public int getMaxChars() {
+            return maxChars;
+        }
+
+        public void setMaxChars(int maxChars) {
+            this.maxChars = maxChars;
+        }
+    }
+
+    /**
+     * 会话级请求队列配置
+     * 
+     * 配置项前缀: app.chat.turn-queue
+     */
+    public static class TurnQueue {
+
+        /**
+         * 是否让同一会话的对话请求依次执行
+         */
+        private boolean enabled = true;
+
+        /**
+         * 单个会话最多排队等待的请求数（不含正在执行的请求），超出后直接拒绝
+         */
+        private int maxPending = 8;
+
+        /**
+         * 排队已满被拒绝时，通过 Retry-After 建议客户端等待的时间
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * 是否合并同一会话中内容相同、且仍在排队或执行中的请求（共享一次模型调用和一次保存）
+         */
+        private boolean coalesce = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+
+        public boolean isCoalesce() {
+            return coalesce;
+        }
+
+        public void setCoalesce(boolean coalesce) {
+            this.coalesce = coalesce;
+        }
+    }
+
+    /**
+     * 模型调用保护配置
+     * 
+     * 配置项前缀: app.chat.upstream
+     */
+    public static class Upstream {
+
+        /**
+         * 可重试错误（限流、过载）的最大重试次数；已由 spring.ai.retry 重试过的瞬时错误不再重试
+         */
+        private int maxRetries = 2;
+
+        /**
+         * 首次重试的等待时间，之后按指数退避
+         */
+        private Duration retryBackoff = Duration.ofMillis(500);
+
+        /**
+         * 连续多少次上游整体性错误（限流、过载、鉴权）后熔断，0 表示不熔断
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 熔断时长，期间的请求不调用上游，直接失败
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package org.example.context;
+
+import org.example.config.ChatProperties;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 token 预算的上下文构建器
+ * 
+ * 策略：
+ * 1. 系统消息和本轮用户消息始终保留，先从预算中扣除
+ * 2. 从最新的历史消息开始向前装填，直到剩余预算放不下下一条消息
+ * 3. 若窗口以孤立的助手回复开头，则将其丢弃，保证上下文从用户提问开始
+ * 
+ * 预算配置为 app.chat.max-context-tokens，小于等于 0 时只按消息条数截断。
+ */
+@Component
+public class ContextWindowBuilder {
+
+    /**
+     * 每条消息的角色标记等额外开销（token）
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final ChatProperties chatProperties;
+    private final TokenEstimator tokenEstimator;
+
+    public ContextWindowBuilder(ChatProperties chatProperties, TokenEstimator tokenEstimator) {
+        this.chatProperties = chatProperties;
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * 构建发送给模型的完整消息列表
+     * 
+     * @param prefixMessages 系统/角色消息（始终保留）
+     * @param history 按时间正序的历史消息
+     * @param userMessage 本轮用户消息
+     * @return 完整的消息列表（前缀 + 装入预算的历史 + 本轮用户消息）
+     */
+    public List<Message> build(List<Message> prefixMessages, List<ContextMessage> history, String userMessage) {
+        int start = selectWindowStart(prefixMessages, history, userMessage);
+        
+        List<Message> messages = new ArrayList<>(prefixMessages.size() + history.size() - start + 1);
+        messages.addAll(prefixMessages);
+        for (int i = start; i < history.size(); i++) {
+            messages.add(history.get(i).message());
+        }
+        messages.add(new UserMessage(userMessage));
+        return messages;
+    }
+
+    /**
+     * 估算文本的 token 数
+     * 
+     * @param text 文本内容
+     * @return 估算的 token 数
+     */
+    public int estimateTokens(String text) {
+        return tokenEstimator.estimate(text);
+    }
+
+    /**
+     * 计算历史消息中装入预算的起始下标
+     * 
+     * @param prefixMessages 系统/角色消息
+     * @param history 按时间正序的历史消息
+     * @param userMessage 本轮用户消息
+     * @return 起始下标（history.size() 表示不保留任何历史）
+     */
+    private int selectWindowStart(List<Message> prefixMessages, List<ContextMessage> history, String userMessage) {
+        int budget = chatProperties.getMaxContextTokens();
+        int start = history.size();
+        
+        if (budget <= 0) {
+            start = 0;
+        } else {
+            int used = tokenEstimator.estimate(userMessage) + MESSAGE_OVERHEAD_TOKENS;
+            for (Message message : prefixMessages) {
+                used += tokenEstimator.estimate(message.getText()) + MESSAGE_OVERHEAD_TOKENS;
+            }
+            
+            while (start > 0) {
+                int cost = history.get(start - 1).tokenCount() + MESSAGE_OVERHEAD_TOKENS;
+                if (used + cost > budget) {
+                    break;
+                }
+                used += cost;
+                start--;
+            }
+        }
+        
+        // 丢弃窗口开头孤立的助手回复
+        while (start < history.size()
+                && history.get(start).message().getMessageType() == MessageType.ASSISTANT) {
+            start++;
+        }
+        return start;
+    }
+}
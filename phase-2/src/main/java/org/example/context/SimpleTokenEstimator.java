@@ -0,0 +1,56 @@
+package org.example.context;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 基于字符类别的 token 估算器
+ * 
+ * 估算规则（近似主流 BPE 分词器的表现）：
+ * 1. 中日韩文字 - 每个字符约 1 个 token
+ * 2. 其他字符（英文、数字、标点、空白） - 约每 4 个字符 1 个 token
+ */
+@Component
+public class SimpleTokenEstimator implements TokenEstimator {
+
+    /**
+     * 非中日韩字符平均每个 token 对应的字符数
+     */
+    private static final int CHARS_PER_TOKEN = 4;
+
+    @Override
+    public int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        
+        int cjkCount = 0;
+        int otherCount = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                cjkCount++;
+            } else {
+                otherCount++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        
+        return cjkCount + (otherCount + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * 判断是否为中日韩文字（含全角标点）
+     * 
+     * @param codePoint Unicode 码点
+     * @return 是否为中日韩文字
+     */
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL
+                || (codePoint >= 0x3000 && codePoint <= 0x303F)
+                || (codePoint >= 0xFF00 && codePoint <= 0xFFEF);
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.context;
+
+/**
+ * Token 数量估算器
+ * 
+ * 用于在本地估算消息的 token 数，避免每次构建上下文都调用远程分词接口。
+ * 默认实现为 {@link SimpleTokenEstimator}，如需接入与模型一致的分词器，
+ * 在 Spring 容器中注册一个标注 @Primary 的 TokenEstimator Bean 即可替换。
+ */
+public interface TokenEstimator {
+
+    /**
+     * 估算文本的 token 数
+     * 
+     * @param text 文本内容
+     * @return 估算的 token 数（不小于 0）
+     */
+    int estimate(String text);
+}
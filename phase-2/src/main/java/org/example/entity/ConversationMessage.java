@@ -21,15 +21,62 @@ public record ConversationMessage(
     String content,
     
     @Column("created_at")
-    LocalDateTime createdAt
+    LocalDateTime createdAt,
+    
+    @Column("token_count")
+    Integer tokenCount,
+    
+    @Column("status")
+    String status
 ) {
-    public static ConversationMessage of(Long sessionId, String role, String content) {
+    /**
+     * 消息已完整写入
+     */
+    public static final String STATUS_COMPLETE = "complete";
+    
+    /**
+     * 流式回复生成中，内容按检查点逐段追加
+     */
+    public static final String STATUS_STREAMING = "streaming";
+    
+    /**
+     * 客户端断开导致流被取消，保留已生成的部分内容
+     */
+    public static final String STATUS_CANCELLED = "cancelled";
+    
+    /**
+     * 生成过程中出错，保留已生成的部分内容
+     */
+    public static final String STATUS_FAILED = "failed";
+    
+    public static ConversationMessage of(Long sessionId, String role, String content, int tokenCount) {
         return new ConversationMessage(
             null,
             sessionId,
             role,
             content,
-            LocalDateTime.now()
+            LocalDateTime.now(),
+            tokenCount,
+            STATUS_COMPLETE
+        );
+    }
+    
+    /**
+     * 创建流式回复的占位消息（内容为空，状态为 streaming）
+     * 
+     * @param sessionId 会话ID
+     * @param role 角色
+     * @return 占位消息
+     */
+    public static ConversationMessage streaming(Long sessionId, String role) {
+        return new ConversationMessage(
+            null,
+            sessionId,
+            role,
+            "",
+            LocalDateTime.now(),
+            0,
+            STATUS_STREAMING
         );
     }
 }
@@ -0,0 +1,47 @@
+package org.example.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话摘要
+ * 
+ * 滑出上下文窗口的旧消息被后台压缩为一份滚动更新的摘要，构建上下文时放在历史消息之前。
+ */
+@Table("conversation_summaries")
+public record ConversationSummary(
+    @Id
+    @Column("session_id")
+    Long sessionId,
+    
+    @Column("summary")
+    String summary,
+    
+    @Column("covered_until_id")
+    Long coveredUntilId,
+    
+    @Column("updated_at")
+    LocalDateTime updatedAt
+) {
+    /**
+     * 表示会话尚无摘要
+     * 
+     * @param sessionId 会话ID
+     * @return 空摘要
+     */
+    public static ConversationSummary none(Long sessionId) {
+        return new ConversationSummary(sessionId, null, 0L, null);
+    }
+    
+    /**
+     * 是否没有摘要内容
+     * 
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return summary == null || summary.isBlank();
+    }
+}
@@ -2,6 +2,7 @@ package org.example.exception;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -66,6 +67,58 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(error);
     }
     
+    /**
+     * 处理会话繁忙（排队中的请求过多）
+     * 
+     * @param ex 异常
+     * @param exchange 请求交换对象
+     * @return 429 Too Many Requests，带 Retry-After
+     */
+    @ExceptionHandler(SessionBusyException.class)
+    public ResponseEntity<ErrorResponse> handleSessionBusyException(
+            SessionBusyException ex, 
+            ServerWebExchange exchange) {
+        
+        log.warn("会话繁忙: {}", ex.getMessage());
+        
+        ErrorResponse error = ErrorResponse.of(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase(),
+                ex.getMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.retryAfter().toSeconds())))
+                .body(error);
+    }
+    
+    /**
+     * 处理上游（模型服务）错误
+     * 
+     * @param ex 异常
+     * @param exchange 请求交换对象
+     * @return 按错误类型返回 429 / 503 / 502 / 400
+     */
+    @ExceptionHandler(UpstreamException.class)
+    public ResponseEntity<ErrorResponse> handleUpstreamException(
+            UpstreamException ex, 
+            ServerWebExchange exchange) {
+        
+        log.warn("上游错误: kind={}, status={}, code={}, message={}", 
+                ex.kind(), ex.status(), ex.code(), ex.getMessage());
+        
+        HttpStatus status = ex.kind().httpStatus();
+        ErrorResponse error = ErrorResponse.of(
+                status.value(),
+                ex.kind().name(),
+                ex.toUserMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        
+        return ResponseEntity.status(status).body(error);
+    }
+    
     /**
      * 处理资源不存在异常
      * 
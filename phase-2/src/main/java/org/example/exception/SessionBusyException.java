@@ -0,0 +1,28 @@
+package org.example.exception;
+
+import java.time.Duration;
+
+/**
+ * 会话繁忙
+ * 
+ * 同一会话排队中的请求已达上限时抛出，属于背压而不是请求本身有误，
+ * 全局异常处理器返回 429 并通过 Retry-After 提示客户端稍后重试。
+ */
+public class SessionBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public SessionBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * 建议的重试等待时间
+     * 
+     * @return 等待时间
+     */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
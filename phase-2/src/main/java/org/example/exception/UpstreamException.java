@@ -0,0 +1,79 @@
+package org.example.exception;
+
+/**
+ * 上游（模型服务）调用失败
+ * 
+ * 由 UpstreamErrorParser 从原始异常解析而来，携带错误类型和提取出的错误描述，
+ * 全局异常处理器据此返回对应的 HTTP 状态码。
+ */
+public class UpstreamException extends RuntimeException {
+
+    private final UpstreamErrorKind kind;
+    private final int status;
+    private final String code;
+    private final boolean fastFailed;
+
+    public UpstreamException(UpstreamErrorKind kind, int status, String code, String message, Throwable cause) {
+        this(kind, status, code, message, cause, false);
+    }
+
+    public UpstreamException(
+            UpstreamErrorKind kind,
+            int status,
+            String code,
+            String message,
+            Throwable cause,
+            boolean fastFailed
+    ) {
+        super(message, cause);
+        this.kind = kind;
+        this.status = status;
+        this.code = code;
+        this.fastFailed = fastFailed;
+    }
+
+    /**
+     * 错误类型
+     * 
+     * @return 错误类型
+     */
+    public UpstreamErrorKind kind() {
+        return kind;
+    }
+
+    /**
+     * 上游返回的 HTTP 状态码
+     * 
+     * @return 状态码；未知时为 0
+     */
+    public int status() {
+        return status;
+    }
+
+    /**
+     * 上游返回的错误码（error.code 或 error.type）
+     * 
+     * @return 错误码；未知时为 null
+     */
+    public String code() {
+        return code;
+    }
+
+    /**
+     * 是否为熔断期间未调用上游而直接失败
+     * 
+     * @return 是否快速失败
+     */
+    public boolean fastFailed() {
+        return fastFailed;
+    }
+
+    /**
+     * 面向用户的错误提示
+     * 
+     * @return 形如 "【AI服务请求过于频繁】请求过于频繁，请稍后再试"
+     */
+    public String toUserMessage() {
+        return "【" + kind.label() + "】" + getMessage();
+    }
+}
@@ -1,14 +1,132 @@
 package org.example.repository;
 
 import org.example.entity.ConversationMessage;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
 
 @Repository
 public interface ConversationMessageRepository extends R2dbcRepository<ConversationMessage, Long> {
     
     Flux<ConversationMessage> findBySessionIdOrderByCreatedAtAsc(Long sessionId);
     
+    /**
+     * 查询会话最近的 N 条消息（按创建时间倒序）
+     * 
+     * 配合 (session_id, created_at, id) 复合索引（反向扫描），只扫描窗口内的行，
+     * 查询代价与会话历史长度无关。调用方需自行反转为正序。
+     * 
+     * @param sessionId 会话ID
+     * @param limit 最多返回的消息条数
+     * @return 最近的消息（新 -> 旧）
+     */
+    @Query("SELECT * FROM conversation_messages WHERE session_id = :sessionId ORDER BY created_at DESC, id DESC LIMIT :limit")
+    Flux<ConversationMessage> findRecentBySessionId(Long sessionId, int limit);
+    
     Flux<ConversationMessage> deleteBySessionId(Long sessionId);
+    
+    /**
+     * 查询已滑出上下文窗口、尚未被摘要覆盖的消息
+     * 
+     * 上下文窗口为会话最近的 windowSize 条消息，返回其之前、ID 大于 afterId 的已完成消息（旧 -> 新）。
+     * 
+     * @param sessionId 会话ID
+     * @param afterId 已有摘要覆盖到的最后一条消息ID
+     * @param windowSize 上下文窗口的消息条数
+     * @param limit 最多返回的消息条数
+     * @return 待摘要的消息
+     */
+    @Query("SELECT * FROM conversation_messages WHERE session_id = :sessionId AND id > :afterId AND status = 'complete' "
+            + "AND id < (SELECT COALESCE(MIN(id), 0) FROM (SELECT id FROM conversation_messages "
+            + "WHERE session_id = :sessionId ORDER BY created_at DESC, id DESC LIMIT :windowSize) w) "
+            + "ORDER BY id ASC LIMIT :limit")
+    Flux<ConversationMessage> findOutsideWindow(Long sessionId, Long afterId, int windowSize, int limit);
+    
+    /**
+     * 查询会话的第一页消息（按创建时间正序）
+     * 
+     * @param sessionId 会话ID
+     * @param limit 每页条数
+     * @return 消息列表
+     */
+    @Query("SELECT * FROM conversation_messages WHERE session_id = :sessionId ORDER BY created_at ASC, id ASC LIMIT :limit")
+    Flux<ConversationMessage> findFirstPageBySessionId(Long sessionId, int limit);
+    
+    /**
+     * 查询游标之后的一页消息（键集分页）
+     * 
+     * 以 (created_at, id) 行比较定位起点，配合 (session_id, created_at, id) 复合索引，翻页深度不影响查询代价。
+     * 
+     * @param sessionId 会话ID
+     * @param createdAt 上一页最后一条消息的创建时间
+     * @param id 上一页最后一条消息的ID
+     * @param limit 每页条数
+     * @return 消息列表
+     */
+    @Query("SELECT * FROM conversation_messages WHERE session_id = :sessionId AND (created_at, id) > (:createdAt, :id) "
+            + "ORDER BY created_at ASC, id ASC LIMIT :limit")
+    Flux<ConversationMessage> findPageBySessionIdAfter(Long sessionId, LocalDateTime createdAt, Long id, int limit);
+    
+    /**
+     * 查询会话最近的 N 条消息，并同时校验会话是否存在
+     * 
+     * 以会话表 LEFT JOIN 最近的消息：
+     * - 无结果：会话不存在
+     * - 一行且 id 为空：会话存在但没有消息
+     * - 其他：会话最近的消息（新 -> 旧）
+     * 
+     * @param sessionId 会话ID
+     * @param limit 最多返回的消息条数
+     * @return 最近的消息（新 -> 旧），可能包含一条 id 为空的占位行
+     */
+    @Query("SELECT s.id AS session_id, m.id, m.role, m.content, m.created_at, m.token_count, m.status "
+            + "FROM conversation_sessions s "
+            + "LEFT JOIN LATERAL (SELECT * FROM conversation_messages WHERE session_id = s.id "
+            + "ORDER BY created_at DESC, id DESC LIMIT :limit) m ON true "
+            + "WHERE s.id = :sessionId "
+            + "ORDER BY m.created_at DESC, m.id DESC")
+    Flux<ConversationMessage> findRecentWithSession(Long sessionId, int limit);
+    
+    /**
+     * 查询会话中的指定消息（用于断线后获取流式回复已保存的部分内容）
+     * 
+     * @param id 消息ID
+     * @param sessionId 会话ID
+     * @return 消息
+     */
+    Mono<ConversationMessage> findByIdAndSessionId(Long id, Long sessionId);
+    
+    /**
+     * 追加流式回复的内容片段（检查点）
+     * 
+     * 只对仍处于 streaming 状态的消息生效，避免流结束后迟到的追加写乱内容。
+     * 
+     * @param id 消息ID
+     * @param chunk 追加的内容
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("UPDATE conversation_messages SET content = content || :chunk WHERE id = :id AND status = 'streaming'")
+    Mono<Integer> appendContent(Long id, String chunk);
+    
+    /**
+     * 写入剩余内容并设置最终状态，返回完整的消息
+     * 
+     * 先截断到已确认保存的长度再追加剩余内容：无论未确认的检查点是否已经执行，结果都一致。
+     * 
+     * @param id 消息ID
+     * @param committedLength 已确认保存的字符数
+     * @param chunk 剩余内容
+     * @param status 最终状态
+     * @param tokenCount 估算的 token 数
+     * @return 更新后的消息
+     */
+    @Query("UPDATE conversation_messages SET content = LEFT(content, :committedLength) || :chunk, status = :status, token_count = :tokenCount "
+            + "WHERE id = :id AND status = 'streaming' RETURNING *")
+    Mono<ConversationMessage> finishContent(Long id, int committedLength, String chunk, String status, int tokenCount);
 }
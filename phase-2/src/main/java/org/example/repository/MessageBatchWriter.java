@@ -0,0 +1,299 @@
+package org.example.repository;
+
+import org.example.config.ChatProperties;
+import org.example.entity.ConversationMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息批量写入器
+ * 
+ * 将一轮对话（用户消息 + AI回复）合并为一条 SQL 写入，并合并多个会话的并发写入：
+ * 1. 单语句写入 - 多行 INSERT 与 conversation_sessions.updated_at 更新放在同一条语句中，一次往返
+ * 2. 微批合并 - 写请求先进入有界队列，攒够 flushSize 条或每隔 flushInterval 统一刷盘
+ * 3. 串行刷盘 - 同一时刻只有一个批次在写，写放大不随并发会话数增长
+ * 4. 溢出降级 - 队列满时不丢数据，直接单独写入该请求并计数
+ * 5. 失败隔离 - 批次语句失败时（例如某个会话已被删除导致外键冲突）逐个重试其中的写请求，
+ *    只有真正出错的写请求收到错误
+ * 
+ * 每行携带在批次中的序号并随结果返回，按序号把生成的ID分发给各个等待方，不依赖数据库的ID分配顺序。
+ * 单条语句的行数不超过 MAX_ROWS_PER_STATEMENT，绑定参数数量不会超出驱动限制。
+ */
+@Component
+public class MessageBatchWriter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBatchWriter.class);
+
+    /**
+     * 单条 INSERT 语句的最大行数（每行 6 个绑定参数，PostgreSQL 单条语句最多 65535 个）
+     */
+    static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private final DatabaseClient databaseClient;
+    private final ChatProperties.BatchWrite config;
+    private final BlockingQueue<PendingWrite> queue;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final Disposable ticker;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong isolatedRetries = new AtomicLong();
+
+    public MessageBatchWriter(DatabaseClient databaseClient, ChatProperties chatProperties) {
+        this.databaseClient = databaseClient;
+        this.config = chatProperties.getBatchWrite();
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        this.ticker = config.isEnabled()
+                ? Flux.interval(config.getFlushInterval()).subscribe(tick -> triggerFlush())
+                : null;
+    }
+
+    /**
+     * 写入一组消息（按列表顺序入库）
+     * 
+     * @param rows 待写入的消息，通常为同一轮对话的用户消息和AI回复
+     * @return 写入后的消息（包含数据库生成的ID）
+     */
+    public Mono<List<ConversationMessage>> write(List<ConversationMessage> rows) {
+        return Mono.defer(() -> {
+            PendingWrite pending = new PendingWrite(rows, Sinks.one());
+            if (!config.isEnabled()) {
+                return persist(List.of(pending)).then(pending.result().asMono());
+            }
+            if (!queue.offer(pending)) {
+                // 队列已满：不排队，直接单独写入
+                overflows.incrementAndGet();
+                return persist(List.of(pending)).then(pending.result().asMono());
+            }
+            if (queue.size() >= config.getFlushSize()) {
+                triggerFlush();
+            }
+            return pending.result().asMono();
+        });
+    }
+
+    /**
+     * 获取写入统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        return new Stats(batches.get(), messages.get(), overflows.get(), isolatedRetries.get(), queue.size());
+    }
+
+    @Override
+    public void destroy() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+        // 关闭前尽量把队列中的写入落库
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            persist(remaining).block();
+        }
+    }
+
+    /**
+     * 触发一次刷盘；已有批次在写时直接返回，由该批次结束后继续处理队列
+     */
+    private void triggerFlush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        List<PendingWrite> batch = new ArrayList<>(config.getFlushSize());
+        queue.drainTo(batch, config.getFlushSize());
+        if (batch.isEmpty()) {
+            flushing.set(false);
+            return;
+        }
+        persist(batch)
+                .doFinally(signal -> {
+                    flushing.set(false);
+                    if (!queue.isEmpty()) {
+                        triggerFlush();
+                    }
+                })
+                .subscribe();
+    }
+
+    /**
+     * 将一个批次写入数据库，并把结果分发给各个等待方
+     * 
+     * 行数超过 MAX_ROWS_PER_STATEMENT 时拆成多条语句依次执行，同一写请求的行始终在同一条语句中。
+     * 
+     * @param batch 待写入的批次
+     * @return 完成信号（写入失败时错误已分发给等待方，不再向上抛出）
+     */
+    private Mono<Void> persist(List<PendingWrite> batch) {
+        List<List<PendingWrite>> statements = new ArrayList<>();
+        List<PendingWrite> current = new ArrayList<>();
+        int rowCount = 0;
+        for (PendingWrite pending : batch) {
+            int count = pending.rows().size();
+            if (!current.isEmpty() && rowCount + count > MAX_ROWS_PER_STATEMENT) {
+                statements.add(current);
+                current = new ArrayList<>();
+                rowCount = 0;
+            }
+            current.add(pending);
+            rowCount += count;
+        }
+        if (!current.isEmpty()) {
+            statements.add(current);
+        }
+        return Flux.fromIterable(statements)
+                .concatMap(this::persistStatement)
+                .then();
+    }
+
+    /**
+     * 用一条语句写入一组写请求；失败时逐个重试，使一行出错只影响它所属的写请求
+     * 
+     * @param writes 同一条语句中的写请求
+     * @return 完成信号（错误已分发给等待方）
+     */
+    private Mono<Void> persistStatement(List<PendingWrite> writes) {
+        List<ConversationMessage> rows = new ArrayList<>();
+        for (PendingWrite pending : writes) {
+            rows.addAll(pending.rows());
+        }
+
+        return insertAndTouchSessions(rows)
+                .doOnNext(saved -> {
+                    batches.incrementAndGet();
+                    messages.addAndGet(rows.size());
+                    // saved 按序号排列，与 rows 一一对应
+                    int offset = 0;
+                    for (PendingWrite pending : writes) {
+                        int count = pending.rows().size();
+                        pending.result().tryEmitValue(new ArrayList<>(saved.subList(offset, offset + count)));
+                        offset += count;
+                    }
+                })
+                .then()
+                .onErrorResume(e -> {
+                    if (writes.size() == 1) {
+                        log.warn("写入消息失败: {}", e.getMessage());
+                        writes.get(0).result().tryEmitError(e);
+                        return Mono.empty();
+                    }
+                    log.warn("批量写入消息失败，逐个重试 {} 个写请求: {}", writes.size(), e.getMessage());
+                    isolatedRetries.incrementAndGet();
+                    return Flux.fromIterable(writes)
+                            .concatMap(pending -> persistStatement(List.of(pending)))
+                            .then();
+                });
+    }
+
+    /**
+     * 用一条语句插入所有消息，并更新涉及会话的 updated_at
+     * 
+     * 先为每行取序列值作为ID，再插入并以ID关联回输入行，返回结果中带有每行在 rows 中的序号。
+     * 
+     * @param rows 待写入的消息
+     * @return 写入后的消息，顺序与 rows 一致
+     */
+    private Mono<List<ConversationMessage>> insertAndTouchSessions(List<ConversationMessage> rows) {
+        if (rows.isEmpty()) {
+            return Mono.just(new ArrayList<>());
+        }
+        
+        StringBuilder sql = new StringBuilder(
+                "WITH input AS (SELECT nextval(pg_get_serial_sequence('conversation_messages', 'id')) AS id, v.* FROM (VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append('(').append(i)
+                    .append(", :s").append(i)
+                    .append(", :r").append(i)
+                    .append(", :c").append(i)
+                    .append(", :t").append(i)
+                    .append(", :k").append(i)
+                    .append(", :st").append(i)
+                    .append(')');
+        }
+        sql.append(") AS v (ord, session_id, role, content, created_at, token_count, status)), ")
+                .append("inserted AS (INSERT INTO conversation_messages (id, session_id, role, content, created_at, token_count, status) ")
+                .append("SELECT id, session_id, role, content, created_at, token_count, status FROM input ")
+                .append("RETURNING id, session_id, role, content, created_at, token_count, status), ")
+                .append("touched AS (UPDATE conversation_sessions SET updated_at = CURRENT_TIMESTAMP ")
+                .append("WHERE id IN (SELECT DISTINCT session_id FROM inserted)) ")
+                .append("SELECT inserted.*, input.ord FROM inserted JOIN input ON input.id = inserted.id");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < rows.size(); i++) {
+            ConversationMessage row = rows.get(i);
+            spec = spec.bind("s" + i, row.sessionId())
+                    .bind("r" + i, row.role())
+                    .bind("c" + i, row.content())
+                    .bind("t" + i, row.createdAt())
+                    .bind("st" + i, row.status());
+            spec = row.tokenCount() != null
+                    ? spec.bind("k" + i, row.tokenCount())
+                    : spec.bindNull("k" + i, Integer.class);
+        }
+
+        ConversationMessage[] saved = new ConversationMessage[rows.size()];
+        return spec.map((row, metadata) -> {
+                    saved[row.get("ord", Integer.class)] = new ConversationMessage(
+                            row.get("id", Long.class),
+                            row.get("session_id", Long.class),
+                            row.get("role", String.class),
+                            row.get("content", String.class),
+                            row.get("created_at", LocalDateTime.class),
+                            row.get("token_count", Integer.class),
+                            row.get("status", String.class)
+                    );
+                    return saved;
+                })
+                .all()
+                .then(Mono.fromCallable(() -> {
+                    List<ConversationMessage> result = Arrays.asList(saved);
+                    if (result.contains(null)) {
+                        throw new IllegalStateException("批量写入返回的行数与输入不一致");
+                    }
+                    return new ArrayList<>(result);
+                }));
+    }
+
+    /**
+     * 排队中的写请求
+     * 
+     * @param rows 待写入的消息
+     * @param result 写入结果通知
+     */
+    private record PendingWrite(
+            List<ConversationMessage> rows,
+            Sinks.One<List<ConversationMessage>> result
+    ) {}
+
+    /**
+     * 批量写入统计信息
+     * 
+     * @param batches 已刷盘的批次数
+     * @param messages 已写入的消息数
+     * @param overflows 队列满时直接写入的次数
+     * @param isolatedRetries 批次失败后拆开逐个重试的次数
+     * @param queueDepth 当前排队的写请求数
+     */
+    public record Stats(long batches, long messages, long overflows, long isolatedRetries, int queueDepth) {}
+}
@@ -0,0 +1,12 @@
+package org.example.service;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * 
+ * @param items 本页数据
+ * @param nextCursor 下一页游标；为 null 表示没有更多数据
+ * @param <T> 数据类型
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {}
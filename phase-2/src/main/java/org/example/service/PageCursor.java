@@ -0,0 +1,55 @@
+package org.example.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 键集分页游标
+ * 
+ * 记录上一页最后一行的排序键 (时间, id)，下一页从该位置之后继续查询，
+ * 查询代价与翻页深度无关。对外编码为不透明的 Base64 字符串。
+ * 
+ * @param position 排序时间（会话为 updated_at，消息为 created_at）
+ * @param id 行ID，用于区分时间相同的行
+ */
+record PageCursor(LocalDateTime position, Long id) {
+
+    private static final char SEPARATOR = '|';
+
+    /**
+     * 编码为游标字符串
+     * 
+     * @return 游标字符串
+     */
+    String encode() {
+        String raw = position.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     * 
+     * @param cursor 游标字符串
+     * @return 游标；cursor 为空时返回 null（表示第一页）
+     */
+    static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+            return new PageCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1))
+            );
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.example.service;
+
+import org.example.config.ChatProperties;
+import org.example.exception.SessionBusyException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 会话级请求队列
+ * 
+ * 同一会话的多个对话请求按到达顺序依次执行，避免并发请求读取相同的历史、重复调用模型、交错写入：
+ * 1. 异步排队 - 等待中的请求只登记一个回调，不占用线程，不阻塞 Netty 事件循环
+ * 2. 有界等待 - 单个会话排队的请求数超过 maxPending 时直接拒绝（SessionBusyException，返回 429）
+ * 3. 请求合并（可选）- 同一会话中内容完全相同、且仍在排队或执行中的请求共享一次模型调用
+ * 4. 统计指标 - 活跃会话数、排队总数及排队最深的会话
+ * 
+ * 请求被取消（客户端断开）时释放队列位置，后续请求继续执行。
+ */
+@Component
+public class SessionTurnQueue {
+
+    /**
+     * 统计信息中列出的排队最深的会话数
+     */
+    private static final int TOP_SESSIONS = 10;
+
+    private final ChatProperties.TurnQueue config;
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final Map<String, Flux<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SessionTurnQueue(ChatProperties chatProperties) {
+        this.config = chatProperties.getTurnQueue();
+    }
+
+    /**
+     * 在会话队列中执行一轮对话（单值结果）
+     * 
+     * @param sessionId 会话ID
+     * @param coalesceKey 合并键（内容相同的请求使用相同的键），不合并时为 null
+     * @param turn 本轮对话
+     * @return 本轮对话的结果
+     */
+    public <T> Mono<T> submit(Long sessionId, String coalesceKey, Supplier<Mono<T>> turn) {
+        return submitMany(sessionId, coalesceKey, () -> turn.get().flux()).next();
+    }
+
+    /**
+     * 在会话队列中执行一轮对话（流式结果）
+     * 
+     * @param sessionId 会话ID
+     * @param coalesceKey 合并键（内容相同的请求使用相同的键），不合并时为 null
+     * @param turn 本轮对话
+     * @return 本轮对话的结果流
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> submitMany(Long sessionId, String coalesceKey, Supplier<Flux<T>> turn) {
+        if (!config.isEnabled()) {
+            return Flux.defer(turn);
+        }
+        if (!config.isCoalesce() || coalesceKey == null) {
+            return serialize(sessionId, turn);
+        }
+
+        return Flux.defer(() -> {
+            String key = sessionId + ":" + coalesceKey;
+            boolean[] created = new boolean[1];
+            Flux<T> shared = (Flux<T>) inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                // 后加入的请求从头重放已生成的内容；所有请求都取消后才取消模型调用
+                return serialize(sessionId, turn)
+                        .doFinally(signal -> inFlight.remove(k))
+                        .replay()
+                        .refCount();
+            });
+            if (!created[0]) {
+                coalesced.incrementAndGet();
+            }
+            return shared;
+        });
+    }
+
+    /**
+     * 获取队列统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        int activeSessions = 0;
+        int waiting = 0;
+        List<SessionDepth> depths = new ArrayList<>();
+        for (Map.Entry<Long, Lane> entry : lanes.entrySet()) {
+            int depth;
+            synchronized (entry.getValue()) {
+                depth = entry.getValue().waiting.size();
+            }
+            activeSessions++;
+            waiting += depth;
+            if (depth > 0) {
+                depths.add(new SessionDepth(entry.getKey(), depth));
+            }
+        }
+        depths.sort(Comparator.comparingInt(SessionDepth::depth).reversed());
+        Map<Long, Integer> deepest = new LinkedHashMap<>();
+        for (SessionDepth depth : depths.subList(0, Math.min(TOP_SESSIONS, depths.size()))) {
+            deepest.put(depth.sessionId(), depth.depth());
+        }
+        return new Stats(
+                executed.get(),
+                queued.get(),
+                rejected.get(),
+                coalesced.get(),
+                activeSessions,
+                waiting,
+                inFlight.size(),
+                deepest
+        );
+    }
+
+    /**
+     * 获取会话当前排队等待的请求数（不含正在执行的请求）
+     * 
+     * @param sessionId 会话ID
+     * @return 排队数
+     */
+    public int queueDepth(Long sessionId) {
+        Lane lane = lanes.get(sessionId);
+        if (lane == null) {
+            return 0;
+        }
+        synchronized (lane) {
+            return lane.waiting.size();
+        }
+    }
+
+    /**
+     * 排队获取会话的执行权后执行本轮对话，结束（完成、出错或取消）后交给下一个请求
+     */
+    private <T> Flux<T> serialize(Long sessionId, Supplier<Flux<T>> turn) {
+        return Flux.defer(() -> {
+            Ticket ticket = new Ticket();
+            return Mono.<Void>create(sink -> enter(sessionId, ticket, sink))
+                    .thenMany(Flux.defer(turn))
+                    .doFinally(signal -> leave(sessionId, ticket));
+        });
+    }
+
+    private void enter(Long sessionId, Ticket ticket, MonoSink<Void> sink) {
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(sessionId, id -> new Lane());
+            synchronized (lane) {
+                if (lane.closed) {
+                    // 该队列刚被清理，重新获取
+                    continue;
+                }
+                ticket.lane = lane;
+                ticket.sink = sink;
+                if (lane.holder == null) {
+                    lane.holder = ticket;
+                } else if (lane.waiting.size() >= config.getMaxPending()) {
+                    rejected.incrementAndGet();
+                    ticket.lane = null;
+                    sink.error(new SessionBusyException("会话 " + sessionId + " 排队中的请求过多，请稍后重试",
+                            config.getRetryAfter()));
+                    return;
+                } else {
+                    lane.waiting.addLast(ticket);
+                    queued.incrementAndGet();
+                    return;
+                }
+            }
+            executed.incrementAndGet();
+            sink.success();
+            return;
+        }
+    }
+
+    private void leave(Long sessionId, Ticket ticket) {
+        Lane lane = ticket.lane;
+        if (lane == null) {
+            return;
+        }
+        Ticket next;
+        synchronized (lane) {
+            if (lane.holder != ticket) {
+                // 排队期间被取消
+                lane.waiting.remove(ticket);
+                return;
+            }
+            next = lane.waiting.pollFirst();
+            lane.holder = next;
+            if (next == null) {
+                lane.closed = true;
+                lanes.remove(sessionId, lane);
+                return;
+            }
+        }
+        executed.incrementAndGet();
+        next.sink.success();
+    }
+
+    /**
+     * 单个会话的队列：holder 为正在执行的请求，waiting 为排队中的请求
+     */
+    private static final class Lane {
+        private Ticket holder;
+        private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+        private boolean closed;
+    }
+
+    /**
+     * 一个请求在队列中的位置
+     */
+    private static final class Ticket {
+        private Lane lane;
+        private MonoSink<Void> sink;
+    }
+
+    private record SessionDepth(Long sessionId, int depth) {}
+
+    /**
+     * 会话队列统计信息
+     * 
+     * @param executed 获得执行权的请求数
+     * @param queued 曾经排队等待的请求数
+     * @param rejected 因排队过多被拒绝的请求数
+     * @param coalesced 与相同请求合并的请求数
+     * @param activeSessions 当前有请求在执行或排队的会话数
+     * @param waiting 当前排队等待的请求总数
+     * @param inFlightShared 当前可被合并的请求数
+     * @param deepestSessions 排队最深的会话（sessionId -> 排队数）
+     */
+    public record Stats(
+            long executed,
+            long queued,
+            long rejected,
+            long coalesced,
+            int activeSessions,
+            int waiting,
+            int inFlightShared,
+            Map<Long, Integer> deepestSessions
+    ) {}
+}
@@ -0,0 +1,142 @@
+package org.example.service;
+
+import org.example.config.ChatProperties;
+import org.example.context.ContextWindowBuilder;
+import org.example.entity.ConversationMessage;
+import org.example.repository.ConversationMessageRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * 流式回复的增量持久化检查点
+ * 
+ * 每个进行中的流对应一个实例，只缓存尚未确认保存的片段：
+ * 1. 未保存内容超过字节阈值，或距上次保存超过时间间隔时，追加到数据库中的占位消息
+ * 2. 流结束时写入剩余内容并标记为 complete
+ * 3. 流被取消或出错时同样写入剩余内容，并标记为 cancelled / failed
+ * 
+ * 单个流占用的内存与回复总长度无关，只与检查点阈值有关。
+ */
+class StreamCheckpoint {
+
+    private final Long messageId;
+    private final ConversationMessageRepository messageRepository;
+    private final ContextWindowBuilder contextWindowBuilder;
+    private final ChatProperties.StreamPersist config;
+
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingBytes;
+    private int committedLength;
+    private int committedTokens;
+    private long lastFlushNanos = System.nanoTime();
+    private boolean flushing;
+    private boolean finished;
+
+    StreamCheckpoint(
+            Long messageId,
+            ConversationMessageRepository messageRepository,
+            ContextWindowBuilder contextWindowBuilder,
+            ChatProperties.StreamPersist config
+    ) {
+        this.messageId = messageId;
+        this.messageRepository = messageRepository;
+        this.contextWindowBuilder = contextWindowBuilder;
+        this.config = config;
+    }
+
+    /**
+     * 记录一个片段，达到检查点条件时追加到数据库
+     * 
+     * @param chunk 内容片段
+     * @return 完成信号（未触发检查点时立即完成）
+     */
+    Mono<Void> append(String chunk) {
+        String flushText;
+        synchronized (this) {
+            pending.append(chunk);
+            pendingBytes += utf8Length(chunk);
+            boolean sizeReached = pendingBytes >= config.getFlushBytes();
+            boolean intervalReached = System.nanoTime() - lastFlushNanos >= config.getFlushInterval().toNanos();
+            if (finished || flushing || !(sizeReached || intervalReached)) {
+                return Mono.empty();
+            }
+            flushing = true;
+            flushText = pending.toString();
+        }
+        return messageRepository.appendContent(messageId, flushText)
+                .doOnSuccess(updated -> committed(flushText))
+                .doFinally(signal -> flushDone())
+                .then();
+    }
+
+    /**
+     * 写入剩余内容并设置最终状态
+     * 
+     * 只有第一次调用生效，后续调用（例如完成后又收到取消信号）返回空。
+     * 未确认的检查点内容仍在 pending 中，会随剩余内容一起写入。
+     * 
+     * @param status 最终状态
+     * @return 完整的消息
+     */
+    Mono<ConversationMessage> finish(String status) {
+        String tail;
+        int length;
+        int totalTokens;
+        synchronized (this) {
+            if (finished) {
+                return Mono.empty();
+            }
+            finished = true;
+            tail = pending.toString();
+            length = committedLength;
+            totalTokens = committedTokens + contextWindowBuilder.estimateTokens(tail);
+            pending.setLength(0);
+            pendingBytes = 0;
+        }
+        return messageRepository.finishContent(messageId, length, tail, status, totalTokens);
+    }
+
+    /**
+     * 检查点写入成功后，从待保存内容中移除已写入的部分
+     * 
+     * @param flushed 已写入的内容
+     */
+    private synchronized void committed(String flushed) {
+        if (finished) {
+            return;
+        }
+        pending.delete(0, flushed.length());
+        pendingBytes = utf8Length(pending);
+        // 数据库按字符（码点）计算长度
+        committedLength += flushed.codePointCount(0, flushed.length());
+        committedTokens += contextWindowBuilder.estimateTokens(flushed);
+        lastFlushNanos = System.nanoTime();
+    }
+
+    private synchronized void flushDone() {
+        flushing = false;
+    }
+
+    /**
+     * 计算字符序列的 UTF-8 字节数（不分配字节数组）
+     * 
+     * @param text 字符序列
+     * @return 字节数
+     */
+    private static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
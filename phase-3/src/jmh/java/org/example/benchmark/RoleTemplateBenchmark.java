@@ -0,0 +1,73 @@
+package org.example.benchmark;
+
+import org.example.cache.RoleTemplateCache;
+import org.example.entity.RoleConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 角色模板渲染
+ * 
+ * - renderUncompiled：未持久化的角色（没有ID），每次都重新编译模板
+ * - renderStatic：只使用角色自身变量，命中缓存的静态渲染结果
+ * - renderDynamic：带调用方变量，复用已编译的模板重新渲染
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoleTemplateBenchmark {
+
+    private RoleTemplateCache cache;
+    private RoleConfig persisted;
+    private RoleConfig transientRole;
+    private Map<String, Object> staticVariables;
+    private Map<String, Object> dynamicVariables;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new RoleTemplateCache();
+        persisted = BenchmarkFixtures.role(1L, "架构顾问", "擅长分布式系统与高并发架构设计", new Random(11));
+        transientRole = BenchmarkFixtures.role(null, "架构顾问", "擅长分布式系统与高并发架构设计", new Random(11));
+        staticVariables = Map.of(
+                "roleName", persisted.roleName(),
+                "roleDescription", persisted.description(),
+                "roleType", persisted.roleType()
+        );
+        dynamicVariables = Map.of(
+                "roleName", persisted.roleName(),
+                "roleDescription", persisted.description() + "（当前用户：张三）",
+                "roleType", persisted.roleType()
+        );
+    }
+
+    @Benchmark
+    public String renderUncompiled() {
+        return cache.render(transientRole, staticVariables);
+    }
+
+    @Benchmark
+    public String renderStatic() {
+        return cache.render(persisted, staticVariables);
+    }
+
+    @Benchmark
+    public String renderDynamic() {
+        return cache.render(persisted, dynamicVariables);
+    }
+}
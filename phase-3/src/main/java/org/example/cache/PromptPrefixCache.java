@@ -0,0 +1,166 @@
+package org.example.cache;
+
+import org.example.config.ChatProperties;
+import org.example.context.ContextMessage;
+import org.example.context.PromptPrefix;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 提示词前缀缓存
+ * 
+ * 按 (会话, 角色) 保存预组装的 PromptPrefix：
+ * 1. 版本校验 - 角色注册表刷新或会话摘要更新后，旧版本的前缀视为失效并重建
+ * 2. 写穿透 - 一轮对话保存后追加到该会话的所有前缀
+ * 3. 有界淘汰 - 缓存的会话数超过上限时按 LRU 淘汰
+ * 4. 统计指标 - 记录命中/未命中/重建/淘汰次数
+ */
+@Component
+public class PromptPrefixCache {
+
+    private final ChatProperties.PrefixCache config;
+    private final Map<Long, Map<Long, PromptPrefix>> prefixes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PromptPrefixCache(ChatProperties chatProperties) {
+        this.config = chatProperties.getPrefixCache();
+        int maxSessions = config.getMaxSessions();
+        this.prefixes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<Long, PromptPrefix>> eldest) {
+                if (size() > maxSessions) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 是否启用缓存
+     * 
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 获取会话在指定角色下的前缀
+     * 
+     * @param sessionId 会话ID
+     * @param roleId 角色ID（未指定角色时为 null）
+     * @param roleVersion 当前的角色注册表版本
+     * @param summaryVersion 当前的会话摘要版本
+     * @return 前缀；未命中或版本已变化时返回 null
+     */
+    public PromptPrefix get(Long sessionId, Long roleId, long roleVersion, long summaryVersion) {
+        PromptPrefix prefix;
+        synchronized (prefixes) {
+            Map<Long, PromptPrefix> byRole = prefixes.get(sessionId);
+            prefix = byRole != null ? byRole.get(roleId) : null;
+            if (prefix != null
+                    && (prefix.roleVersion() != roleVersion || prefix.summaryVersion() != summaryVersion)) {
+                byRole.remove(roleId);
+                stale.incrementAndGet();
+                prefix = null;
+            }
+        }
+        if (prefix == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return prefix;
+    }
+
+    /**
+     * 回填新建的前缀
+     * 
+     * 若其他请求已先一步回填了同一版本（角色和摘要）的前缀，则沿用已有的前缀。
+     * 
+     * @param sessionId 会话ID
+     * @param roleId 角色ID（未指定角色时为 null）
+     * @param prefix 新建的前缀
+     * @return 实际缓存的前缀
+     */
+    public PromptPrefix putIfAbsent(Long sessionId, Long roleId, PromptPrefix prefix) {
+        synchronized (prefixes) {
+            Map<Long, PromptPrefix> byRole = prefixes.computeIfAbsent(sessionId, id -> new HashMap<>(4));
+            PromptPrefix existing = byRole.get(roleId);
+            if (existing != null
+                    && existing.roleVersion() == prefix.roleVersion()
+                    && existing.summaryVersion() == prefix.summaryVersion()) {
+                return existing;
+            }
+            byRole.put(roleId, prefix);
+            return prefix;
+        }
+    }
+
+    /**
+     * 追加新消息到会话的所有前缀（写穿透）
+     * 
+     * @param sessionId 会话ID
+     * @param messages 按时间正序追加的消息
+     */
+    public void append(Long sessionId, List<ContextMessage> messages) {
+        List<PromptPrefix> targets;
+        synchronized (prefixes) {
+            Map<Long, PromptPrefix> byRole = prefixes.get(sessionId);
+            if (byRole == null) {
+                return;
+            }
+            targets = new ArrayList<>(byRole.values());
+        }
+        for (PromptPrefix prefix : targets) {
+            prefix.append(messages);
+        }
+    }
+
+    /**
+     * 使会话的所有前缀失效
+     * 
+     * @param sessionId 会话ID
+     */
+    public void invalidate(Long sessionId) {
+        synchronized (prefixes) {
+            prefixes.remove(sessionId);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        int size;
+        synchronized (prefixes) {
+            size = prefixes.size();
+        }
+        return new Stats(hits.get(), misses.get(), stale.get(), evictions.get(), size);
+    }
+
+    /**
+     * 前缀缓存统计信息
+     * 
+     * @param hits 命中次数（本轮直接复用前缀）
+     * @param misses 未命中次数（重新渲染角色并加载历史）
+     * @param stale 因角色配置或会话摘要变化而失效的次数
+     * @param evictions 淘汰的会话数
+     * @param size 当前缓存的会话数
+     */
+    public record Stats(long hits, long misses, long stale, long evictions, int size) {}
+}
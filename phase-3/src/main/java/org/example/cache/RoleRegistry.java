@@ -0,0 +1,292 @@
+package org.example.cache;
+
+import org.example.config.ChatProperties;
+import org.example.entity.RoleConfig;
+import org.example.repository.RoleConfigRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 内存角色注册表
+ * 
+ * 将 role_config 表整体加载为不可变快照，对话时直接在内存中解析角色，不再逐条查询数据库：
+ * 1. 启动加载 - 应用就绪后加载第一份快照
+ * 2. 写后刷新 - RoleConfigService 创建/更新/删除角色配置后重新加载
+ * 3. 版本检查 - 定期比对表的版本（行数、ID之和、最大 updated_at），发现其他实例的修改后重新加载
+ * 4. 无锁读取 - 快照通过 AtomicReference 整体替换，读取方只做一次引用读取
+ * 
+ * 快照尚未加载或按ID未找到角色时返回 null，由调用方回源数据库。
+ */
+@Component
+public class RoleRegistry implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RoleRegistry.class);
+
+    /**
+     * 未指定角色时使用的角色名称
+     */
+    public static final String DEFAULT_ROLE_NAME = "默认助手";
+
+    private static final String VERSION_SQL =
+            "SELECT COUNT(*) AS role_count, COALESCE(SUM(id), 0)::BIGINT AS id_sum, MAX(updated_at) AS max_updated_at "
+                    + "FROM role_config";
+
+    private final RoleConfigRepository roleConfigRepository;
+    private final DatabaseClient databaseClient;
+    private final ChatProperties.RoleRegistry config;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong refreshSequence = new AtomicLong();
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private final Disposable ticker;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong versionChecks = new AtomicLong();
+
+    public RoleRegistry(
+            RoleConfigRepository roleConfigRepository,
+            DatabaseClient databaseClient,
+            ChatProperties chatProperties
+    ) {
+        this.roleConfigRepository = roleConfigRepository;
+        this.databaseClient = databaseClient;
+        this.config = chatProperties.getRoleRegistry();
+        this.ticker = config.isEnabled()
+                ? Flux.interval(config.getRefreshInterval()).subscribe(tick -> checkVersion())
+                : null;
+    }
+
+    /**
+     * 应用就绪后加载第一份快照（schema.sql 已执行完毕）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (config.isEnabled()) {
+            refresh().subscribe();
+        }
+    }
+
+    /**
+     * 解析本轮对话使用的角色配置
+     * 
+     * 与原有的数据库查询逻辑一致：
+     * 指定角色ID时只使用该角色（未启用则返回空列表）；
+     * 未指定时优先使用"默认助手"，不存在或未启用时使用所有启用的角色。
+     * 
+     * @param roleId 选择的角色ID（可选）
+     * @return 角色配置列表；快照未加载或角色ID不在快照中时返回 null，需回源数据库
+     */
+    public List<RoleConfig> resolve(Long roleId) {
+        Snapshot current = config.isEnabled() ? snapshot.get() : null;
+        if (current == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (roleId != null) {
+            RoleConfig roleConfig = current.byId().get(roleId);
+            if (roleConfig == null) {
+                // 可能是其他实例刚创建、本实例尚未刷新的角色
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return isEnabled(roleConfig) ? List.of(roleConfig) : List.of();
+        }
+
+        hits.incrementAndGet();
+        RoleConfig defaultRole = current.byName().get(DEFAULT_ROLE_NAME);
+        if (defaultRole != null && isEnabled(defaultRole)) {
+            return List.of(defaultRole);
+        }
+        return current.enabledRoles();
+    }
+
+    /**
+     * 当前快照的版本（每次重新加载后递增）
+     * 
+     * @return 版本号；快照未加载或注册表未启用时返回 0
+     */
+    public long version() {
+        Snapshot current = config.isEnabled() ? snapshot.get() : null;
+        return current != null ? current.sequence() : 0;
+    }
+
+    /**
+     * 从数据库重新加载快照
+     * 
+     * 并发刷新时只保留最后发起的那次加载结果，避免较旧的数据覆盖较新的快照。
+     * 加载失败时保留当前快照，不向上抛出错误。
+     * 
+     * @return 完成信号
+     */
+    public Mono<Void> refresh() {
+        if (!config.isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            long sequence = refreshSequence.incrementAndGet();
+            return roleConfigRepository.findAll()
+                    .collectList()
+                    .doOnNext(roleConfigs -> {
+                        Snapshot loaded = Snapshot.of(sequence, roleConfigs);
+                        Snapshot installed = snapshot.updateAndGet(current ->
+                                current == null || current.sequence() < sequence ? loaded : current);
+                        if (installed == loaded) {
+                            reloads.incrementAndGet();
+                            log.debug("角色注册表已刷新: {} 个角色", roleConfigs.size());
+                        }
+                    })
+                    .doOnError(e -> log.warn("加载角色注册表失败: {}", e.getMessage()))
+                    .onErrorResume(e -> Mono.empty())
+                    .then();
+        });
+    }
+
+    /**
+     * 获取注册表统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        Snapshot current = snapshot.get();
+        return new Stats(
+                hits.get(),
+                misses.get(),
+                reloads.get(),
+                versionChecks.get(),
+                current != null ? current.byId().size() : 0,
+                current != null ? current.version().maxUpdatedAt() : null
+        );
+    }
+
+    @Override
+    public void destroy() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+    }
+
+    /**
+     * 比对数据库中的版本，不一致时重新加载；上一次检查未结束时跳过本次
+     */
+    private void checkVersion() {
+        if (!checking.compareAndSet(false, true)) {
+            return;
+        }
+        versionChecks.incrementAndGet();
+        queryVersion()
+                .flatMap(version -> {
+                    Snapshot current = snapshot.get();
+                    if (current != null && current.version().equals(version)) {
+                        return Mono.empty();
+                    }
+                    return refresh();
+                })
+                .doOnError(e -> log.warn("检查角色配置版本失败: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> checking.set(false))
+                .subscribe();
+    }
+
+    private Mono<Version> queryVersion() {
+        return databaseClient.sql(VERSION_SQL)
+                .map((row, metadata) -> new Version(
+                        Objects.requireNonNullElse(row.get("role_count", Long.class), 0L),
+                        Objects.requireNonNullElse(row.get("id_sum", Long.class), 0L),
+                        row.get("max_updated_at", LocalDateTime.class)
+                ))
+                .one();
+    }
+
+    private static boolean isEnabled(RoleConfig roleConfig) {
+        return Boolean.TRUE.equals(roleConfig.enabled());
+    }
+
+    /**
+     * role_config 表的版本，经由本服务的增删改都会改变其中至少一项（updated_at 随更新刷新，ID 不复用）
+     * 
+     * @param count 行数
+     * @param idSum ID之和
+     * @param maxUpdatedAt 最大更新时间
+     */
+    private record Version(long count, long idSum, LocalDateTime maxUpdatedAt) {
+
+        static Version of(List<RoleConfig> roleConfigs) {
+            long idSum = 0;
+            LocalDateTime maxUpdatedAt = null;
+            for (RoleConfig roleConfig : roleConfigs) {
+                idSum += roleConfig.id();
+                if (roleConfig.updatedAt() != null
+                        && (maxUpdatedAt == null || roleConfig.updatedAt().isAfter(maxUpdatedAt))) {
+                    maxUpdatedAt = roleConfig.updatedAt();
+                }
+            }
+            return new Version(roleConfigs.size(), idSum, maxUpdatedAt);
+        }
+    }
+
+    /**
+     * 不可变的角色配置快照
+     * 
+     * @param sequence 加载序号（越大越新）
+     * @param version 加载时的表版本
+     * @param byId 按ID索引的全部角色配置
+     * @param byName 按名称索引的全部角色配置
+     * @param enabledRoles 启用的角色配置（按角色类型和优先级排序）
+     */
+    private record Snapshot(
+            long sequence,
+            Version version,
+            Map<Long, RoleConfig> byId,
+            Map<String, RoleConfig> byName,
+            List<RoleConfig> enabledRoles
+    ) {
+
+        static Snapshot of(long sequence, List<RoleConfig> roleConfigs) {
+            Map<Long, RoleConfig> byId = new HashMap<>();
+            Map<String, RoleConfig> byName = new HashMap<>();
+            for (RoleConfig roleConfig : roleConfigs) {
+                byId.put(roleConfig.id(), roleConfig);
+                byName.put(roleConfig.roleName(), roleConfig);
+            }
+            List<RoleConfig> enabledRoles = roleConfigs.stream()
+                    .filter(RoleRegistry::isEnabled)
+                    .sorted(Comparator.comparing(RoleConfig::roleType)
+                            .thenComparing(RoleConfig::priority, Comparator.nullsLast(Comparator.naturalOrder())))
+                    .toList();
+            return new Snapshot(sequence, Version.of(roleConfigs), Map.copyOf(byId), Map.copyOf(byName), enabledRoles);
+        }
+    }
+
+    /**
+     * 角色注册表统计信息
+     * 
+     * @param hits 从快照解析的次数
+     * @param misses 需要回源数据库的次数
+     * @param reloads 快照重新加载的次数
+     * @param versionChecks 定期版本检查的次数
+     * @param size 快照中的角色数
+     * @param version 快照版本（角色配置的最大更新时间）
+     */
+    public record Stats(long hits, long misses, long reloads, long versionChecks, int size, LocalDateTime version) {}
+}
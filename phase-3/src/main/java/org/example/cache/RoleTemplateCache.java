@@ -0,0 +1,193 @@
+package org.example.cache;
+
+import org.example.entity.RoleConfig;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 角色模板缓存
+ * 
+ * 避免每次对话都重新构建和渲染相同的角色模板：
+ * 1. 编译缓存 - 按角色配置ID缓存 PromptTemplate，updatedAt 变化时自动重建
+ * 2. 渲染结果缓存 - 变量只包含角色元数据（roleName、roleDescription、roleType）时，渲染结果固定，直接复用
+ * 3. 主动失效 - 角色配置更新或删除时由 RoleConfigService 调用 invalidate
+ */
+@Component
+public class RoleTemplateCache {
+
+    /**
+     * 由角色配置本身决定取值的模板变量
+     */
+    private static final Set<String> STATIC_VARIABLES = Set.of("roleName", "roleDescription", "roleType");
+
+    private final Map<Long, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+    private final AtomicLong compileHits = new AtomicLong();
+    private final AtomicLong compileMisses = new AtomicLong();
+    private final AtomicLong renderHits = new AtomicLong();
+    private final AtomicLong renderMisses = new AtomicLong();
+
+    /**
+     * 渲染角色模板
+     * 
+     * @param roleConfig 角色配置
+     * @param variables 调用方传入的模板变量（可为 null）
+     * @return 渲染后的内容
+     */
+    public String render(RoleConfig roleConfig, Map<String, Object> variables) {
+        if (roleConfig.templateContent() == null || roleConfig.templateContent().trim().isEmpty()) {
+            return "";
+        }
+
+        Map<String, Object> templateVariables = variables != null ? new HashMap<>(variables) : new HashMap<>();
+
+        // 添加默认变量（使用putIfAbsent避免覆盖调用方传递的值）
+        templateVariables.putIfAbsent("roleName", roleConfig.roleName());
+        templateVariables.putIfAbsent("roleDescription", roleConfig.description());
+        templateVariables.putIfAbsent("roleType", roleConfig.roleType());
+
+        // 未持久化的配置没有ID，无法缓存
+        if (roleConfig.id() == null) {
+            compileMisses.incrementAndGet();
+            return compile(roleConfig).template().render(templateVariables);
+        }
+
+        CompiledTemplate compiled = getOrCompile(roleConfig);
+        if (!isStatic(roleConfig, templateVariables)) {
+            renderMisses.incrementAndGet();
+            return compiled.template().render(templateVariables);
+        }
+
+        String rendered = compiled.staticRendered;
+        if (rendered != null) {
+            renderHits.incrementAndGet();
+            return rendered;
+        }
+        renderMisses.incrementAndGet();
+        rendered = compiled.template().render(templateVariables);
+        compiled.staticRendered = rendered;
+        return rendered;
+    }
+
+    /**
+     * 使指定角色配置的缓存失效
+     * 
+     * @param roleConfigId 角色配置ID
+     */
+    public void invalidate(Long roleConfigId) {
+        if (roleConfigId != null) {
+            templates.remove(roleConfigId);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        return new Stats(
+                compileHits.get(),
+                compileMisses.get(),
+                renderHits.get(),
+                renderMisses.get(),
+                templates.size()
+        );
+    }
+
+    /**
+     * 获取已编译的模板，缓存不存在或配置已更新时重新编译
+     * 
+     * @param roleConfig 角色配置
+     * @return 已编译的模板
+     */
+    private CompiledTemplate getOrCompile(RoleConfig roleConfig) {
+        CompiledTemplate cached = templates.get(roleConfig.id());
+        if (cached != null && cached.matches(roleConfig)) {
+            compileHits.incrementAndGet();
+            return cached;
+        }
+        compileMisses.incrementAndGet();
+        CompiledTemplate compiled = compile(roleConfig);
+        templates.put(roleConfig.id(), compiled);
+        return compiled;
+    }
+
+    private static CompiledTemplate compile(RoleConfig roleConfig) {
+        PromptTemplate promptTemplate = PromptTemplate.builder()
+                .template(roleConfig.templateContent())
+                .build();
+        return new CompiledTemplate(roleConfig.updatedAt(), roleConfig.templateContent(), promptTemplate);
+    }
+
+    /**
+     * 判断变量是否全部由角色配置本身决定（此时渲染结果固定）
+     * 
+     * @param roleConfig 角色配置
+     * @param templateVariables 补全默认值后的模板变量
+     * @return 是否为固定变量集
+     */
+    private static boolean isStatic(RoleConfig roleConfig, Map<String, Object> templateVariables) {
+        if (!STATIC_VARIABLES.containsAll(templateVariables.keySet())) {
+            return false;
+        }
+        return Objects.equals(templateVariables.get("roleName"), roleConfig.roleName())
+                && Objects.equals(templateVariables.get("roleDescription"), roleConfig.description())
+                && Objects.equals(templateVariables.get("roleType"), roleConfig.roleType());
+    }
+
+    /**
+     * 已编译的模板
+     */
+    private static final class CompiledTemplate {
+
+        private final LocalDateTime updatedAt;
+        private final String templateContent;
+        private final PromptTemplate template;
+
+        /**
+         * 固定变量集下的渲染结果（首次渲染后写入）
+         */
+        private volatile String staticRendered;
+
+        CompiledTemplate(LocalDateTime updatedAt, String templateContent, PromptTemplate template) {
+            this.updatedAt = updatedAt;
+            this.templateContent = templateContent;
+            this.template = template;
+        }
+
+        PromptTemplate template() {
+            return template;
+        }
+
+        /**
+         * 缓存是否仍对应当前的角色配置
+         * 
+         * @param roleConfig 角色配置
+         * @return 是否匹配
+         */
+        boolean matches(RoleConfig roleConfig) {
+            return Objects.equals(updatedAt, roleConfig.updatedAt())
+                    && Objects.equals(templateContent, roleConfig.templateContent());
+        }
+    }
+
+    /**
+     * 角色模板缓存统计信息
+     * 
+     * @param compileHits 编译缓存命中次数
+     * @param compileMisses 编译缓存未命中次数（重新构建 PromptTemplate）
+     * @param renderHits 渲染结果缓存命中次数
+     * @param renderMisses 实际执行渲染的次数
+     * @param size 当前缓存的模板数
+     */
+    public record Stats(long compileHits, long compileMisses, long renderHits, long renderMisses, int size) {}
+}
@@ -0,0 +1,11 @@
+package org.example.context;
+
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * 上下文窗口中的一条消息及其 token 数
+ * 
+ * @param message Spring AI Message 对象
+ * @param tokenCount 估算的 token 数
+ */
+public record ContextMessage(Message message, int tokenCount) {}
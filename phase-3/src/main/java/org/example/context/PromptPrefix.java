@@ -0,0 +1,140 @@
+package org.example.context;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预组装的提示词前缀（角色消息 + 会话摘要 + 历史消息）
+ * 
+ * 每个 (会话, 角色) 对应一个实例，跨轮次复用：
+ * 1. 角色消息只渲染一次，之后每轮直接复用同一批 Message 对象
+ * 2. 新一轮对话保存后，把消息追加到历史末尾，而不是重新加载和包装
+ * 3. 超出 token 预算时一次性从头部裁剪到 trimTokens 以下，之后若干轮前缀保持不变，
+ *    上游服务的前缀缓存（prompt caching）可以持续命中
+ * 4. 单轮用户消息过长时只在本轮跳过最早的历史，缓存的前缀不受影响
+ * 
+ * 由 ContextWindowBuilder 创建，所有方法线程安全。
+ */
+public final class PromptPrefix {
+
+    private final long roleVersion;
+    private final long summaryVersion;
+    private final List<Message> roleMessages;
+    private final int roleTokens;
+    private final int budget;
+    private final int trimTokens;
+    private final int maxMessages;
+    private final int overheadTokens;
+
+    private final ArrayDeque<ContextMessage> history;
+    private int historyTokens;
+
+    PromptPrefix(
+            long roleVersion,
+            long summaryVersion,
+            List<Message> roleMessages,
+            int roleTokens,
+            int budget,
+            int trimTokens,
+            int maxMessages,
+            int overheadTokens
+    ) {
+        this.roleVersion = roleVersion;
+        this.summaryVersion = summaryVersion;
+        this.roleMessages = List.copyOf(roleMessages);
+        this.roleTokens = roleTokens;
+        this.budget = budget;
+        this.trimTokens = trimTokens;
+        this.maxMessages = maxMessages;
+        this.overheadTokens = overheadTokens;
+        this.history = new ArrayDeque<>(Math.max(maxMessages, 0));
+    }
+
+    /**
+     * 构建前缀时使用的角色配置版本
+     * 
+     * @return 角色注册表版本
+     */
+    public long roleVersion() {
+        return roleVersion;
+    }
+
+    /**
+     * 构建前缀时使用的会话摘要版本
+     * 
+     * @return 摘要覆盖到的最后一条消息ID（没有摘要时为 0）
+     */
+    public long summaryVersion() {
+        return summaryVersion;
+    }
+
+    /**
+     * 追加新保存的消息
+     * 
+     * @param messages 按时间正序的消息
+     */
+    public synchronized void append(List<ContextMessage> messages) {
+        for (ContextMessage message : messages) {
+            history.addLast(message);
+            historyTokens += message.tokenCount() + overheadTokens;
+        }
+        while (history.size() > maxMessages) {
+            removeFirst();
+        }
+    }
+
+    /**
+     * 组装本轮发送给模型的完整消息列表
+     * 
+     * 缓存的历史只按不含本轮用户消息的预算裁剪；本轮用户消息较长导致超出预算时，
+     * 只在本次组装中跳过最早的若干条历史，不修改缓存的前缀，之后较短的消息仍能看到这些历史。
+     * 
+     * @param userMessage 本轮用户消息
+     * @param userTokens 本轮用户消息的 token 数
+     * @return 完整的消息列表（角色消息 + 历史消息 + 本轮用户消息）
+     */
+    synchronized List<Message> assemble(String userMessage, int userTokens) {
+        int fixed = roleTokens + overheadTokens;
+        if (budget > 0 && fixed + historyTokens > budget) {
+            // 历史本身超出预算：一次裁剪到 trimTokens 以下，为后续几轮留出余量
+            while (!history.isEmpty() && fixed + historyTokens > trimTokens) {
+                removeFirst();
+            }
+        }
+
+        // 丢弃开头孤立的助手回复，保证上下文从用户提问开始
+        while (!history.isEmpty() && history.peekFirst().message().getMessageType() == MessageType.ASSISTANT) {
+            removeFirst();
+        }
+
+        // 本轮超出预算的部分：从头跳过历史，直到放得下本轮用户消息
+        int overflow = budget > 0 ? fixed + userTokens + historyTokens - budget : 0;
+        List<Message> messages = new ArrayList<>(roleMessages.size() + history.size() + 1);
+        messages.addAll(roleMessages);
+        boolean skipping = overflow > 0;
+        for (ContextMessage message : history) {
+            if (skipping) {
+                if (overflow > 0 || message.message().getMessageType() == MessageType.ASSISTANT) {
+                    overflow -= message.tokenCount() + overheadTokens;
+                    continue;
+                }
+                skipping = false;
+            }
+            messages.add(message.message());
+        }
+        messages.add(new UserMessage(userMessage));
+        return messages;
+    }
+
+    private void removeFirst() {
+        ContextMessage removed = history.pollFirst();
+        if (removed != null) {
+            historyTokens -= removed.tokenCount() + overheadTokens;
+        }
+    }
+}
@@ -3,12 +3,15 @@ package org.example.controller;
 import org.example.entity.ConversationMessage;
 import org.example.entity.ConversationSession;
 import org.example.service.ChatService;
+import org.example.service.CursorPage;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 聊天控制器 - RESTful API
@@ -42,11 +45,14 @@ public class ChatController {
     /**
      * 流式聊天（SSE）
      * 
+     * 开启增量持久化时，第一个事件为 message-id（data 为AI回复的消息ID），之后是内容片段；
+     * 断线后可通过 GET /sessions/{sessionId}/messages/{messageId} 获取已保存的部分内容。
+     * 
      * @param request 包含 sessionId、message 和可选的 roleId
      * @return 流式 AI 回复
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> chatStream(@RequestBody ChatRequest request) {
+    public Flux<ServerSentEvent<String>> chatStream(@RequestBody ChatRequest request) {
         return chatService.chatStream(request.sessionId(), request.message(), request.roleId());
     }
 
@@ -75,6 +81,33 @@ public class ChatController {
         return chatService.getAllSessions();
     }
 
+    /**
+     * 分页获取会话列表（键集分页）
+     * 
+     * @param cursor 上一页返回的 nextCursor（第一页不传）
+     * @param size 每页条数（可选）
+     * @return 一页会话及下一页游标
+     */
+    @GetMapping("/sessions/page")
+    public Mono<CursorPage<ConversationSession>> getSessionsPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size
+    ) {
+        return chatService.getSessionsPage(cursor, size);
+    }
+
+    /**
+     * 流式获取所有会话（NDJSON，请求头 Accept: application/x-ndjson）
+     * 
+     * 每行一个会话，按页从数据库读取并受背压控制
+     * 
+     * @return 按更新时间倒序的会话流
+     */
+    @GetMapping(value = "/sessions", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ConversationSession> streamSessions() {
+        return chatService.streamSessions();
+    }
+
     /**
      * 获取指定会话的详细信息
      * 
@@ -97,6 +130,50 @@ public class ChatController {
         return chatService.getSessionMessages(sessionId).collectList();
     }
 
+    /**
+     * 分页获取指定会话的消息（键集分页）
+     * 
+     * @param sessionId 会话ID
+     * @param cursor 上一页返回的 nextCursor（第一页不传）
+     * @param size 每页条数（可选）
+     * @return 一页消息及下一页游标
+     */
+    @GetMapping("/sessions/{sessionId}/messages/page")
+    public Mono<CursorPage<ConversationMessage>> getSessionMessagesPage(
+            @PathVariable Long sessionId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size
+    ) {
+        return chatService.getSessionMessagesPage(sessionId, cursor, size);
+    }
+
+    /**
+     * 流式获取指定会话的所有消息（NDJSON，请求头 Accept: application/x-ndjson）
+     * 
+     * 每行一条消息，按页从数据库读取并受背压控制
+     * 
+     * @param sessionId 会话ID
+     * @return 按创建时间正序的消息流
+     */
+    @GetMapping(value = "/sessions/{sessionId}/messages", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ConversationMessage> streamSessionMessages(@PathVariable Long sessionId) {
+        return chatService.streamSessionMessages(sessionId);
+    }
+
+    /**
+     * 获取指定会话中的单条消息
+     * 
+     * 流式回复会按检查点增量保存，客户端断线后可通过该接口获取已生成的部分内容（status 字段标识是否完成）
+     * 
+     * @param sessionId 会话ID
+     * @param messageId 消息ID
+     * @return 消息
+     */
+    @GetMapping("/sessions/{sessionId}/messages/{messageId}")
+    public Mono<ConversationMessage> getSessionMessage(@PathVariable Long sessionId, @PathVariable Long messageId) {
+        return chatService.getSessionMessage(sessionId, messageId);
+    }
+
     /**
      * 删除会话及其所有消息
      * 
@@ -107,6 +184,16 @@ public class ChatController {
         return chatService.deleteSession(sessionId);
     }
 
+    /**
+     * 获取运行时统计信息（缓存命中率等）
+     * 
+     * @return 统计信息
+     */
+    @GetMapping("/stats")
+    public Mono<Map<String, Object>> getStats() {
+        return Mono.fromSupplier(chatService::getStats);
+    }
+
     // ==================== 请求/响应记录 ====================
 
     /**
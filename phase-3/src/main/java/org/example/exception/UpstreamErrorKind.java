@@ -0,0 +1,89 @@
+package org.example.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * 上游（模型服务）错误类型
+ * 
+ * 每种类型决定：返回给客户端的 HTTP 状态码、是否值得重试、是否计入熔断。
+ */
+public enum UpstreamErrorKind {
+
+    /**
+     * 请求频率或配额超限（429）
+     */
+    RATE_LIMIT("AI服务请求过于频繁", HttpStatus.TOO_MANY_REQUESTS, true, true),
+
+    /**
+     * API Key 无效或无权限（401/403），重试无意义
+     */
+    AUTH("AI服务鉴权失败", HttpStatus.BAD_GATEWAY, false, true),
+
+    /**
+     * 提示词超出模型上下文长度，重试无意义，需要缩短上下文
+     */
+    CONTEXT_LENGTH("对话内容超出模型上下文长度", HttpStatus.BAD_REQUEST, false, false),
+
+    /**
+     * 上游过载、5xx 或网络异常
+     */
+    OVERLOAD("AI服务暂时不可用", HttpStatus.SERVICE_UNAVAILABLE, true, true),
+
+    /**
+     * 其他被上游拒绝的请求（4xx）
+     */
+    INVALID_REQUEST("AI服务拒绝了请求", HttpStatus.BAD_GATEWAY, false, false),
+
+    /**
+     * 无法识别的错误
+     */
+    UNKNOWN("AI服务调用失败", HttpStatus.BAD_GATEWAY, false, false);
+
+    private final String label;
+    private final HttpStatus httpStatus;
+    private final boolean retryable;
+    private final boolean tripsCircuit;
+
+    UpstreamErrorKind(String label, HttpStatus httpStatus, boolean retryable, boolean tripsCircuit) {
+        this.label = label;
+        this.httpStatus = httpStatus;
+        this.retryable = retryable;
+        this.tripsCircuit = tripsCircuit;
+    }
+
+    /**
+     * 面向用户的错误标题
+     * 
+     * @return 错误标题
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * 返回给客户端的 HTTP 状态码
+     * 
+     * @return HTTP 状态码
+     */
+    public HttpStatus httpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * 稍后重试是否可能成功
+     * 
+     * @return 是否可重试
+     */
+    public boolean retryable() {
+        return retryable;
+    }
+
+    /**
+     * 是否说明上游整体不可用（连续出现时触发熔断），而不只是当前请求的问题
+     * 
+     * @return 是否计入熔断
+     */
+    public boolean tripsCircuit() {
+        return tripsCircuit;
+    }
+}
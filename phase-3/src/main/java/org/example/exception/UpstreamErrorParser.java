@@ -0,0 +1,201 @@
+package org.example.exception;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 上游错误解析器
+ * 
+ * 把模型调用抛出的异常解析为带类型的 UpstreamException：
+ * 1. 状态码 - 取自 HTTP 异常，或 Spring AI 异常消息开头的 "HTTP 429 - ..."
+ * 2. 错误体 - 从第一个 '{' 开始按 JSON 解析一次，依次取 message_zh、message 作为错误描述
+ * 3. 错误类型 - 按状态码和错误码（error.code / error.type）判断
+ * 
+ * 错误体不是合法 JSON（例如被截断）时，才退回到预编译的正则提取。
+ */
+@Component
+public class UpstreamErrorParser {
+
+    /**
+     * 错误描述的最大长度
+     */
+    private static final int MAX_MESSAGE_LENGTH = 200;
+
+    private static final Pattern MESSAGE_ZH = Pattern.compile("\"message_zh\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern MESSAGE = Pattern.compile("\"message\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final ObjectMapper objectMapper;
+
+    public UpstreamErrorParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 解析上游异常
+     * 
+     * @param error 模型调用抛出的异常
+     * @return 带类型的上游异常
+     */
+    public UpstreamException parse(Throwable error) {
+        if (error instanceof UpstreamException upstream) {
+            return upstream;
+        }
+
+        int status;
+        String body;
+        if (error instanceof WebClientResponseException response) {
+            status = response.getStatusCode().value();
+            body = response.getResponseBodyAsString();
+        } else if (error instanceof RestClientResponseException response) {
+            status = response.getStatusCode().value();
+            body = response.getResponseBodyAsString();
+        } else {
+            body = error.getMessage();
+            status = parseStatus(body);
+        }
+
+        String code = null;
+        String detail = null;
+        JsonNode node = readErrorNode(body);
+        if (node != null) {
+            if (node.isTextual()) {
+                detail = node.asText();
+            } else {
+                code = firstText(node, "code", "type");
+                detail = firstText(node, "message_zh", "message");
+            }
+        } else if (body != null) {
+            detail = find(MESSAGE_ZH, body);
+            if (detail == null) {
+                detail = find(MESSAGE, body);
+            }
+        }
+        if (detail == null) {
+            detail = body != null && !body.isBlank() ? body : "未知错误";
+        }
+        if (detail.length() > MAX_MESSAGE_LENGTH) {
+            detail = detail.substring(0, MAX_MESSAGE_LENGTH) + "...";
+        }
+
+        return new UpstreamException(classify(error, status, code, detail), status, code, detail, error);
+    }
+
+    /**
+     * 判断错误类型：先看状态码，再看错误码和描述
+     */
+    private UpstreamErrorKind classify(Throwable error, int status, String code, String detail) {
+        if (status == 401 || status == 403) {
+            return UpstreamErrorKind.AUTH;
+        }
+        if (status == 429) {
+            return UpstreamErrorKind.RATE_LIMIT;
+        }
+        if (status == 413 || isContextLength(code, detail)) {
+            return UpstreamErrorKind.CONTEXT_LENGTH;
+        }
+        if (status >= 500) {
+            return UpstreamErrorKind.OVERLOAD;
+        }
+
+        String normalizedCode = code != null ? code.toLowerCase(Locale.ROOT) : "";
+        if (normalizedCode.contains("rate_limit")) {
+            return UpstreamErrorKind.RATE_LIMIT;
+        }
+        if (normalizedCode.contains("auth") || normalizedCode.contains("api_key")) {
+            return UpstreamErrorKind.AUTH;
+        }
+        if (normalizedCode.contains("overloaded") || normalizedCode.contains("server_error")) {
+            return UpstreamErrorKind.OVERLOAD;
+        }
+        if (status >= 400) {
+            return UpstreamErrorKind.INVALID_REQUEST;
+        }
+        if (error instanceof TimeoutException || error instanceof IOException
+                || error.getCause() instanceof TimeoutException || error.getCause() instanceof IOException) {
+            return UpstreamErrorKind.OVERLOAD;
+        }
+        return UpstreamErrorKind.UNKNOWN;
+    }
+
+    private boolean isContextLength(String code, String detail) {
+        if (code != null && code.contains("context_length")) {
+            return true;
+        }
+        String text = detail.toLowerCase(Locale.ROOT);
+        return text.contains("context length")
+                || text.contains("context window")
+                || text.contains("maximum context")
+                || text.contains("prompt is too long")
+                || text.contains("上下文长度");
+    }
+
+    /**
+     * 解析 "HTTP 429 - ..." 开头的状态码
+     * 
+     * @return 状态码；没有时返回 0
+     */
+    private int parseStatus(String message) {
+        if (message == null || message.length() < 8 || !message.startsWith("HTTP ")) {
+            return 0;
+        }
+        int status = 0;
+        for (int i = 5; i < 8; i++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            status = status * 10 + (c - '0');
+        }
+        return status;
+    }
+
+    /**
+     * 从第一个 '{' 开始读取一个 JSON 对象，返回其中的 error 节点（没有时返回对象本身）
+     * 
+     * @return 错误节点；不是 JSON 时返回 null
+     */
+    private JsonNode readErrorNode(String body) {
+        if (body == null) {
+            return null;
+        }
+        int start = body.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(body.substring(start))) {
+            JsonNode root = objectMapper.readTree(parser);
+            if (root == null || !root.isObject()) {
+                return null;
+            }
+            JsonNode error = root.get("error");
+            return error != null && (error.isObject() || error.isTextual()) ? error : root;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String firstText(JsonNode node, String... fields) {
+        for (String field : fields) {
+            JsonNode value = node.get(field);
+            if (value != null && value.isValueNode() && !value.asText().isBlank()) {
+                return value.asText();
+            }
+        }
+        return null;
+    }
+
+    private String find(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -1,12 +1,38 @@
 package org.example.repository;
 
 import org.example.entity.ConversationSession;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
+import java.time.LocalDateTime;
+
 @Repository
 public interface ConversationSessionRepository extends R2dbcRepository<ConversationSession, Long> {
     
     Flux<ConversationSession> findAllByOrderByUpdatedAtDesc();
+    
+    /**
+     * 查询第一页会话（按更新时间倒序）
+     * 
+     * @param limit 每页条数
+     * @return 会话列表
+     */
+    @Query("SELECT * FROM conversation_sessions ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    Flux<ConversationSession> findFirstPage(int limit);
+    
+    /**
+     * 查询游标之后的一页会话（键集分页）
+     * 
+     * 以 (updated_at, id) 行比较定位起点，配合 (updated_at DESC, id DESC) 索引，翻页深度不影响查询代价。
+     * 
+     * @param updatedAt 上一页最后一个会话的更新时间
+     * @param id 上一页最后一个会话的ID
+     * @param limit 每页条数
+     * @return 会话列表
+     */
+    @Query("SELECT * FROM conversation_sessions WHERE (updated_at, id) < (:updatedAt, :id) "
+            + "ORDER BY updated_at DESC, id DESC LIMIT :limit")
+    Flux<ConversationSession> findPageAfter(LocalDateTime updatedAt, Long id, int limit);
 }
@@ -0,0 +1,30 @@
+package org.example.repository;
+
+import org.example.entity.ConversationSummary;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ConversationSummaryRepository extends R2dbcRepository<ConversationSummary, Long> {
+    
+    /**
+     * 写入或更新会话摘要
+     * 
+     * 只有覆盖范围更靠后的摘要才会替换已有摘要，并发或重复的摘要任务不会用旧结果覆盖新结果。
+     * 
+     * @param sessionId 会话ID
+     * @param summary 摘要内容
+     * @param coveredUntilId 摘要覆盖到的最后一条消息ID
+     * @return 受影响的行数
+     */
+    @Modifying
+    @Query("INSERT INTO conversation_summaries (session_id, summary, covered_until_id, updated_at) "
+            + "VALUES (:sessionId, :summary, :coveredUntilId, CURRENT_TIMESTAMP) "
+            + "ON CONFLICT (session_id) DO UPDATE SET summary = EXCLUDED.summary, "
+            + "covered_until_id = EXCLUDED.covered_until_id, updated_at = EXCLUDED.updated_at "
+            + "WHERE conversation_summaries.covered_until_id < EXCLUDED.covered_until_id")
+    Mono<Integer> upsert(Long sessionId, String summary, Long coveredUntilId);
+}
@@ -1,11 +1,24 @@
 package org.example.service;
 
+import org.example.cache.ConversationWindowCache;
+import org.example.cache.PromptPrefixCache;
+import org.example.cache.RoleRegistry;
+import org.example.cache.SessionExistenceCache;
 import org.example.config.ChatProperties;
+import org.example.context.ContextMessage;
+import org.example.context.ContextWindowBuilder;
+import org.example.context.PromptPrefix;
 import org.example.entity.ConversationMessage;
 import org.example.entity.ConversationSession;
+import org.example.entity.ConversationSummary;
+import org.example.exception.ChatException;
+import org.example.exception.UpstreamException;
 import org.example.entity.RoleConfig;
 import org.example.repository.ConversationMessageRepository;
 import org.example.repository.ConversationSessionRepository;
+import org.example.repository.MessageBatchWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
@@ -14,46 +27,79 @@ import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * 聊天服务 - 支持多会话管理和上下文长度控制
  * 
  * 1. 无状态设计 - 不保存当前会话状态，所有操作都需要明确的 sessionId
- * 2. 上下文控制 - 限制历史消息为20对（40条消息），防止token超限
+ * 2. 上下文控制 - 限制历史消息为20对（40条消息），并按 token 预算裁剪，防止token超限
  * 3. 响应式编程 - 全面使用 Mono/Flux 进行异步操作
  * 4. 配置外部化 - 系统提示词和上下文长度通过配置文件管理
  */
 @Service
 public class ChatService {
 
+    private static final Logger log = LoggerFactory.getLogger(ChatService.class);
+
     private final ChatClient chatClient;
     private final ConversationSessionRepository sessionRepository;
     private final ConversationMessageRepository messageRepository;
     private final ChatProperties chatProperties;
     private final RoleConfigService roleConfigService;
+    private final ConversationWindowCache windowCache;
+    private final ContextWindowBuilder contextWindowBuilder;
+    private final MessageBatchWriter messageBatchWriter;
+    private final SessionExistenceCache sessionExistenceCache;
+    private final ConversationSummarizer conversationSummarizer;
+    private final SessionTurnQueue sessionTurnQueue;
+    private final UpstreamGuard upstreamGuard;
+    private final RoleRegistry roleRegistry;
+    private final PromptPrefixCache promptPrefixCache;
 
     public ChatService(
             ChatModel chatModel,
             ConversationSessionRepository sessionRepository,
             ConversationMessageRepository messageRepository,
             ChatProperties chatProperties,
-            RoleConfigService roleConfigService
+            RoleConfigService roleConfigService,
+            ConversationWindowCache windowCache,
+            ContextWindowBuilder contextWindowBuilder,
+            MessageBatchWriter messageBatchWriter,
+            SessionExistenceCache sessionExistenceCache,
+            ConversationSummarizer conversationSummarizer,
+            SessionTurnQueue sessionTurnQueue,
+            UpstreamGuard upstreamGuard,
+            RoleRegistry roleRegistry,
+            PromptPrefixCache promptPrefixCache
     ) {
         this.chatClient = ChatClient.builder(chatModel).build();
         this.sessionRepository = sessionRepository;
         this.messageRepository = messageRepository;
         this.chatProperties = chatProperties;
         this.roleConfigService = roleConfigService;
+        this.windowCache = windowCache;
+        this.contextWindowBuilder = contextWindowBuilder;
+        this.messageBatchWriter = messageBatchWriter;
+        this.sessionExistenceCache = sessionExistenceCache;
+        this.conversationSummarizer = conversationSummarizer;
+        this.sessionTurnQueue = sessionTurnQueue;
+        this.upstreamGuard = upstreamGuard;
+        this.roleRegistry = roleRegistry;
+        this.promptPrefixCache = promptPrefixCache;
     }
 
     /**
@@ -80,38 +126,32 @@ public class ChatService {
             return Mono.error(new IllegalArgumentException("sessionId 不能为空，请先创建会话"));
         }
         
-        return validateSessionExists(sessionId)
-                .flatMap(sid -> buildConversationHistory(sid, roleId)
+        // 同一会话的请求依次执行，避免并发请求读取相同的历史
+        return sessionTurnQueue.submit(sessionId, coalesceKey(false, roleId, userMessage), () -> validateSessionExists(sessionId)
+                .flatMap(sid -> buildConversationHistory(sid, roleId, userMessage)
                         .flatMap(history -> {
-                            // 添加用户消息到历史
-                            history.add(new UserMessage(userMessage));
-                            
-                            Prompt prompt = new Prompt(new ArrayList<>(history));
+                            Prompt prompt = new Prompt(history);
                             
-                            return Mono.fromCallable(() -> 
+                            return upstreamGuard.call(Mono.fromCallable(() -> 
                                     chatClient.prompt(prompt)
                                             .call()
                                             .content()
                             )
-                            .subscribeOn(Schedulers.boundedElastic())
+                            .subscribeOn(Schedulers.boundedElastic()))
                             .flatMap(response -> {
                                 if (response != null && !response.isEmpty()) {
-                                    // 先保存用户消息，再保存AI回复
-                                    return saveMessage(sid, MessageType.USER.getValue(), userMessage)
-                                            .then(saveMessage(sid, MessageType.ASSISTANT.getValue(), response))
+                                    // 用户消息和AI回复一次写入
+                                    return saveTurn(sid, userMessage, response)
                                             .thenReturn(response);
                                 }
                                 return Mono.justOrEmpty(response);
                             })
-                            .onErrorResume(TransientAiException.class, e -> {
-                                String errorMsg = extractErrorMessage(e);
-                                return Mono.just("【AI服务暂时不可用】" + errorMsg);
-                            })
-                            .onErrorResume(Exception.class, e -> 
+                            // 上游错误交给全局异常处理器，按错误类型返回对应的状态码
+                            .onErrorResume(e -> !(e instanceof UpstreamException), e -> 
                                 Mono.just("【请求失败】" + e.getMessage())
                             );
                         })
-                );
+                ));
     }
 
     /**
@@ -119,9 +159,9 @@ public class ChatService {
      * 
      * @param sessionId 会话ID，必须提供
      * @param userMessage 用户消息
-     * @return 流式AI回复
+     * @return 流式AI回复（SSE 事件）
      */
-    public Flux<String> chatStream(Long sessionId, String userMessage) {
+    public Flux<ServerSentEvent<String>> chatStream(Long sessionId, String userMessage) {
         return chatStream(sessionId, userMessage, null);
     }
 
@@ -131,44 +171,149 @@ public class ChatService {
      * @param sessionId 会话ID，必须提供
      * @param userMessage 用户消息
      * @param roleId 选择的角色ID（可选，如果为空则使用默认角色）
-     * @return 流式AI回复
+     * @return 流式AI回复（SSE 事件），开启增量持久化时第一个事件为 message-id
      */
-    public Flux<String> chatStream(Long sessionId, String userMessage, Long roleId) {
+    public Flux<ServerSentEvent<String>> chatStream(Long sessionId, String userMessage, Long roleId) {
         if (sessionId == null) {
             return Flux.error(new IllegalArgumentException("sessionId 不能为空，请先创建会话"));
         }
         
-        return validateSessionExists(sessionId)
-                .flatMapMany(sid -> buildConversationHistory(sid, roleId)
+        // 同一会话的请求依次执行，避免并发请求读取相同的历史
+        return sessionTurnQueue.submitMany(sessionId, coalesceKey(true, roleId, userMessage), () -> validateSessionExists(sessionId)
+                .flatMapMany(sid -> buildConversationHistory(sid, roleId, userMessage)
                         .flatMapMany(history -> {
-                            // 添加用户消息到历史
-                            history.add(new UserMessage(userMessage));
+                            Prompt prompt = new Prompt(history);
+                            Flux<ServerSentEvent<String>> stream = chatProperties.getStreamPersist().isEnabled()
+                                    ? streamWithCheckpoints(sid, userMessage, prompt)
+                                    : streamThenSave(sid, userMessage, prompt).map(ChatService::contentEvent);
                             
-                            Prompt prompt = new Prompt(new ArrayList<>(history));
-                            StringBuilder fullResponse = new StringBuilder();
-                            
-                            return chatClient.prompt(prompt)
-                                    .stream()
-                                    .content()
-                                    .doOnNext(fullResponse::append)
-                                    .doOnComplete(() -> {
-                                        // 流完成后保存消息
-                                        if (!fullResponse.isEmpty()) {
-                                            saveMessage(sid, MessageType.USER.getValue(), userMessage)
-                                                    .then(saveMessage(sid, MessageType.ASSISTANT.getValue(), fullResponse.toString()))
-                                                    .subscribeOn(Schedulers.boundedElastic())
-                                                    .subscribe();
-                                        }
-                                    })
-                                    .onErrorResume(TransientAiException.class, e -> {
-                                        String errorMsg = extractErrorMessage(e);
-                                        return Flux.just("【AI服务暂时不可用】" + errorMsg);
-                                    })
+                            return stream
+                                    .onErrorResume(UpstreamException.class, e -> 
+                                        Flux.just(contentEvent(e.toUserMessage()))
+                                    )
                                     .onErrorResume(Exception.class, e -> 
-                                        Flux.just("【请求失败】" + e.getMessage())
+                                        Flux.just(contentEvent("【请求失败】" + e.getMessage()))
                                     );
                         })
-                );
+                ));
+    }
+
+    /**
+     * 流式调用模型，流结束后一次性保存本轮对话
+     * 
+     * @param sessionId 会话ID
+     * @param userMessage 用户消息
+     * @param prompt 完整提示词
+     * @return 流式AI回复
+     */
+    private Flux<String> streamThenSave(Long sessionId, String userMessage, Prompt prompt) {
+        StringBuilder fullResponse = new StringBuilder();
+        return upstreamGuard.stream(chatClient.prompt(prompt)
+                        .stream()
+                        .content())
+                .doOnNext(fullResponse::append)
+                // 流完成后保存消息，保存结束后流才结束（不脱离订阅链，写入受背压约束）
+                .concatWith(Mono.defer(() -> fullResponse.isEmpty()
+                        ? Mono.<String>empty()
+                        : saveTurn(sessionId, userMessage, fullResponse.toString()).then(Mono.<String>empty())
+                ));
+    }
+
+    /**
+     * 流式调用模型，并按检查点增量保存AI回复
+     * 
+     * 流程：
+     * 1. 调用模型前先写入用户消息和一条 streaming 状态的占位回复（一次往返）
+     * 2. 生成过程中按字节阈值或时间间隔把新内容追加到占位回复
+     * 3. 流结束标记为 complete；客户端断开标记为 cancelled；出错标记为 failed，均保留已生成的内容
+     * 
+     * 第一个事件为 message-id（占位回复的消息ID），之后是内容片段。
+     * 断线后可通过 GET /sessions/{sessionId}/messages/{messageId} 查询已保存的部分内容。
+     * 
+     * @param sessionId 会话ID
+     * @param userMessage 用户消息
+     * @param prompt 完整提示词
+     * @return 流式AI回复（SSE 事件）
+     */
+    private Flux<ServerSentEvent<String>> streamWithCheckpoints(Long sessionId, String userMessage, Prompt prompt) {
+        List<ConversationMessage> rows = List.of(
+                ConversationMessage.of(sessionId, MessageType.USER.getValue(), userMessage,
+                        contextWindowBuilder.estimateTokens(userMessage)),
+                ConversationMessage.streaming(sessionId, MessageType.ASSISTANT.getValue())
+        );
+        
+        return messageBatchWriter.write(rows)
+                .flatMapMany(saved -> {
+                    ConversationMessage userRow = saved.get(0);
+                    StreamCheckpoint checkpoint = new StreamCheckpoint(
+                            saved.get(1).id(),
+                            messageRepository,
+                            contextWindowBuilder,
+                            chatProperties.getStreamPersist()
+                    );
+                    
+                    return upstreamGuard.stream(chatClient.prompt(prompt)
+                                    .stream()
+                                    .content())
+                            .concatMap(chunk -> checkpoint.append(chunk).thenReturn(contentEvent(chunk)))
+                            // 放在取消处理之前：客户端在收到消息ID前断开时，占位回复同样会被标记为 cancelled
+                            .startWith(messageIdEvent(saved.get(1).id()))
+                            .concatWith(Mono.defer(() -> 
+                                    finishStream(sessionId, userRow, checkpoint, ConversationMessage.STATUS_COMPLETE)
+                            ).then(Mono.<ServerSentEvent<String>>empty()))
+                            .onErrorResume(e -> 
+                                    finishStream(sessionId, userRow, checkpoint, ConversationMessage.STATUS_FAILED)
+                                            .onErrorResume(finishError -> Mono.empty())
+                                            .then(Mono.<ServerSentEvent<String>>error(e))
+                            )
+                            .doOnCancel(() -> 
+                                    // 下游已取消，只能脱离订阅链完成最后一次写入
+                                    finishStream(sessionId, userRow, checkpoint, ConversationMessage.STATUS_CANCELLED)
+                                            .subscribe(null, e -> log.warn("保存已取消的流式回复失败: {}", e.getMessage()))
+                            );
+                });
+    }
+
+    /**
+     * 内容片段事件（默认事件类型，EventSource 的 onmessage 接收）
+     * 
+     * @param chunk 内容片段
+     * @return SSE 事件
+     */
+    private static ServerSentEvent<String> contentEvent(String chunk) {
+        return ServerSentEvent.builder(chunk).build();
+    }
+
+    /**
+     * 消息ID事件：流式回复对应的消息ID，断线后用于查询已保存的部分内容
+     * 
+     * @param messageId 占位回复的消息ID
+     * @return SSE 事件
+     */
+    private static ServerSentEvent<String> messageIdEvent(Long messageId) {
+        return ServerSentEvent.builder(String.valueOf(messageId))
+                .event("message-id")
+                .build();
+    }
+
+    /**
+     * 结束流式回复：写入剩余内容和最终状态，并追加到内存窗口缓存
+     * 
+     * 失败和取消的回复不进入上下文，对应的用户消息也一并跳过（见 toContextMessages）。
+     * 
+     * @param sessionId 会话ID
+     * @param userRow 已保存的用户消息
+     * @param checkpoint 检查点
+     * @param status 最终状态
+     * @return 操作完成信号
+     */
+    private Mono<Void> finishStream(Long sessionId, ConversationMessage userRow, StreamCheckpoint checkpoint, String status) {
+        return checkpoint.finish(status)
+                .doOnNext(assistantRow -> {
+                    appendToWindow(sessionId, List.of(userRow, assistantRow));
+                    conversationSummarizer.requestSummary(sessionId);
+                })
+                .then();
     }
 
     /**
@@ -180,7 +325,8 @@ public class ChatService {
     public Mono<Long> createNewSession(String title) {
         String sessionTitle = (title == null || title.isBlank()) ? "新会话" : title;
         return sessionRepository.save(ConversationSession.create(sessionTitle))
-                .map(ConversationSession::id);
+                .map(ConversationSession::id)
+                .doOnNext(sessionExistenceCache::markPresent);
     }
 
     /**
@@ -196,6 +342,21 @@ public class ChatService {
         return messageRepository.findBySessionIdOrderByCreatedAtAsc(sessionId);
     }
 
+    /**
+     * 获取会话中的指定消息（可用于断线后获取流式回复已保存的部分内容）
+     * 
+     * @param sessionId 会话ID
+     * @param messageId 消息ID
+     * @return 消息
+     */
+    public Mono<ConversationMessage> getSessionMessage(Long sessionId, Long messageId) {
+        if (sessionId == null || messageId == null) {
+            return Mono.error(new IllegalArgumentException("sessionId 和 messageId 不能为空"));
+        }
+        return messageRepository.findByIdAndSessionId(messageId, sessionId)
+                .switchIfEmpty(Mono.error(new ChatException("消息不存在: " + messageId)));
+    }
+
     /**
      * 获取所有会话列表（按更新时间倒序）
      * 
@@ -205,6 +366,78 @@ public class ChatService {
         return sessionRepository.findAllByOrderByUpdatedAtDesc();
     }
 
+    /**
+     * 分页获取会话列表（按更新时间倒序，键集分页）
+     * 
+     * 翻页期间有新消息的会话会移到列表前端，可能在后续页中缺失，刷新第一页即可看到。
+     * 
+     * @param cursor 上一页返回的游标（为空表示第一页）
+     * @param size 每页条数（为空时使用默认值）
+     * @return 一页会话及下一页游标
+     */
+    public Mono<CursorPage<ConversationSession>> getSessionsPage(String cursor, Integer size) {
+        return Mono.defer(() -> {
+            int limit = resolvePageSize(size);
+            return fetchSessionPage(PageCursor.decode(cursor), limit)
+                    .map(sessions -> toCursorPage(sessions, limit, ConversationSession::updatedAt, ConversationSession::id));
+        });
+    }
+
+    /**
+     * 流式获取所有会话（按更新时间倒序）
+     * 
+     * 内部按页从数据库读取，下游消费完当前页后才查询下一页，单个请求占用的内存只与页大小有关。
+     * 
+     * @return 会话流
+     */
+    public Flux<ConversationSession> streamSessions() {
+        int limit = chatProperties.getPaging().getDefaultPageSize();
+        return fetchSessionPage(null, limit)
+                .expand(sessions -> sessions.size() < limit
+                        ? Mono.empty()
+                        : fetchSessionPage(lastCursor(sessions, ConversationSession::updatedAt, ConversationSession::id), limit))
+                .concatMapIterable(sessions -> sessions, 1);
+    }
+
+    /**
+     * 分页获取会话的消息（按创建时间正序，键集分页）
+     * 
+     * @param sessionId 会话ID
+     * @param cursor 上一页返回的游标（为空表示第一页）
+     * @param size 每页条数（为空时使用默认值）
+     * @return 一页消息及下一页游标
+     */
+    public Mono<CursorPage<ConversationMessage>> getSessionMessagesPage(Long sessionId, String cursor, Integer size) {
+        if (sessionId == null) {
+            return Mono.error(new IllegalArgumentException("sessionId 不能为空"));
+        }
+        return Mono.defer(() -> {
+            int limit = resolvePageSize(size);
+            return fetchMessagePage(sessionId, PageCursor.decode(cursor), limit)
+                    .map(messages -> toCursorPage(messages, limit, ConversationMessage::createdAt, ConversationMessage::id));
+        });
+    }
+
+    /**
+     * 流式获取会话的所有消息（按创建时间正序）
+     * 
+     * 内部按页从数据库读取，下游消费完当前页后才查询下一页，单个请求占用的内存只与页大小有关。
+     * 
+     * @param sessionId 会话ID
+     * @return 消息流
+     */
+    public Flux<ConversationMessage> streamSessionMessages(Long sessionId) {
+        if (sessionId == null) {
+            return Flux.error(new IllegalArgumentException("sessionId 不能为空"));
+        }
+        int limit = chatProperties.getPaging().getDefaultPageSize();
+        return fetchMessagePage(sessionId, null, limit)
+                .expand(messages -> messages.size() < limit
+                        ? Mono.empty()
+                        : fetchMessagePage(sessionId, lastCursor(messages, ConversationMessage::createdAt, ConversationMessage::id), limit))
+                .concatMapIterable(messages -> messages, 1);
+    }
+
     /**
      * 删除会话及其所有消息
      * 
@@ -217,7 +450,13 @@ public class ChatService {
         }
         
         return messageRepository.deleteBySessionId(sessionId)
-                .then(sessionRepository.deleteById(sessionId));
+                .then(sessionRepository.deleteById(sessionId))
+                .then(Mono.fromRunnable(() -> {
+                    windowCache.invalidate(sessionId);
+                    promptPrefixCache.invalidate(sessionId);
+                    conversationSummarizer.invalidate(sessionId);
+                    sessionExistenceCache.markAbsent(sessionId);
+                }));
     }
 
     /**
@@ -234,20 +473,110 @@ public class ChatService {
                 .switchIfEmpty(Mono.error(new RuntimeException("会话不存在: " + sessionId)));
     }
 
+    /**
+     * 获取运行时统计信息（缓存命中率等）
+     * 
+     * @return 各组件的统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowCache", windowCache.stats());
+        stats.put("batchWrite", messageBatchWriter.stats());
+        stats.put("sessionCache", sessionExistenceCache.stats());
+        stats.put("summary", conversationSummarizer.stats());
+        stats.put("turnQueue", sessionTurnQueue.stats());
+        stats.put("upstream", upstreamGuard.stats());
+        stats.put("promptPrefix", promptPrefixCache.stats());
+        stats.put("roleRegistry", roleConfigService.getRegistryStats());
+        stats.put("roleTemplateCache", roleConfigService.getTemplateCacheStats());
+        return stats;
+    }
+
+    private Mono<List<ConversationSession>> fetchSessionPage(PageCursor cursor, int limit) {
+        Flux<ConversationSession> page = cursor == null
+                ? sessionRepository.findFirstPage(limit)
+                : sessionRepository.findPageAfter(cursor.position(), cursor.id(), limit);
+        return page.collectList();
+    }
+
+    private Mono<List<ConversationMessage>> fetchMessagePage(Long sessionId, PageCursor cursor, int limit) {
+        Flux<ConversationMessage> page = cursor == null
+                ? messageRepository.findFirstPageBySessionId(sessionId, limit)
+                : messageRepository.findPageBySessionIdAfter(sessionId, cursor.position(), cursor.id(), limit);
+        return page.collectList();
+    }
+
+    /**
+     * 计算实际的每页条数
+     * 
+     * @param size 请求的每页条数
+     * @return 限制在 [1, maxPageSize] 内的条数
+     */
+    private int resolvePageSize(Integer size) {
+        ChatProperties.Paging paging = chatProperties.getPaging();
+        if (size == null) {
+            return paging.getDefaultPageSize();
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("size 必须大于 0");
+        }
+        return Math.min(size, paging.getMaxPageSize());
+    }
+
+    /**
+     * 组装分页结果：本页满页时以最后一行生成下一页游标
+     * 
+     * @param rows 本页数据
+     * @param limit 每页条数
+     * @param position 排序时间
+     * @param id 行ID
+     * @return 分页结果
+     */
+    private static <T> CursorPage<T> toCursorPage(
+            List<T> rows,
+            int limit,
+            Function<T, LocalDateTime> position,
+            Function<T, Long> id
+    ) {
+        String nextCursor = rows.size() < limit ? null : lastCursor(rows, position, id).encode();
+        return new CursorPage<>(rows, nextCursor);
+    }
+
+    private static <T> PageCursor lastCursor(List<T> rows, Function<T, LocalDateTime> position, Function<T, Long> id) {
+        T last = rows.get(rows.size() - 1);
+        return new PageCursor(position.apply(last), id.apply(last));
+    }
+
     /**
      * 验证会话是否存在
      * 
+     * 优先使用存在性缓存；未命中时查询数据库，或在开启 fold-into-history 时推迟到历史消息查询中一并校验。
+     * 
      * @param sessionId 会话ID
      * @return 验证通过的会话ID
      */
     private Mono<Long> validateSessionExists(Long sessionId) {
-        return sessionRepository.existsById(sessionId)
-                .flatMap(exists -> {
-                    if (exists) {
-                        return Mono.just(sessionId);
-                    }
-                    return Mono.error(new RuntimeException("会话不存在: " + sessionId));
-                });
+        return Mono.defer(() -> {
+            Boolean cached = sessionExistenceCache.lookup(sessionId);
+            if (cached != null) {
+                return cached
+                        ? Mono.just(sessionId)
+                        : Mono.error(new RuntimeException("会话不存在: " + sessionId));
+            }
+            if (sessionExistenceCache.isFoldIntoHistory()) {
+                // 存在性校验合并到随后的历史消息查询中
+                return Mono.just(sessionId);
+            }
+            return sessionRepository.existsById(sessionId)
+                    .flatMap(exists -> {
+                        if (exists) {
+                            sessionExistenceCache.markPresent(sessionId);
+                            return Mono.just(sessionId);
+                        }
+                        sessionExistenceCache.markAbsent(sessionId);
+                        return Mono.error(new RuntimeException("会话不存在: " + sessionId));
+                    });
+        });
     }
 
     /**
@@ -255,15 +584,15 @@ public class ChatService {
      * 
      * 策略：
      * 1. 使用动态角色配置构建系统消息
-     * 2. 从数据库获取该会话的所有历史消息
-     * 3. 如果消息数量超过限制，保留最近的 maxContextMessages 条
-     * 4. 使用动态角色配置处理用户和助手消息
+     * 2. 优先从内存窗口缓存读取最近的 maxContextMessages 条消息，未命中时回源数据库
+     * 3. 按 token 预算从最新的历史消息开始装填，丢弃放不下的旧消息
      * 
      * @param sessionId 会话ID
-     * @return 构建好的消息列表（包含系统消息）
+     * @param userMessage 本轮用户消息
+     * @return 构建好的消息列表（角色消息 + 历史消息 + 用户消息）
      */
-    private Mono<List<Message>> buildConversationHistory(Long sessionId) {
-        return buildConversationHistory(sessionId, null);
+    private Mono<List<Message>> buildConversationHistory(Long sessionId, String userMessage) {
+        return buildConversationHistory(sessionId, null, userMessage);
     }
 
     /**
@@ -272,52 +601,166 @@ public class ChatService {
      * 策略：
      * 1. 根据选择的角色ID构建系统消息
      * 2. 如果没有选择角色，使用所有启用的角色配置
-     * 3. 从数据库获取该会话的所有历史消息
-     * 4. 如果消息数量超过限制，保留最近的 maxContextMessages 条
+     * 3. 优先从内存窗口缓存读取最近的 maxContextMessages 条消息，未命中时回源数据库
+     * 4. 按 token 预算从最新的历史消息开始装填，丢弃放不下的旧消息
+     * 5. 已滑出窗口的旧消息由后台压缩为摘要，紧跟在角色消息之后
+     * 6. 启用前缀缓存时，同一 (会话, 角色) 复用已组装的前缀，只追加本轮用户消息
      * 
      * @param sessionId 会话ID
      * @param roleId 选择的角色ID（可选）
-     * @return 构建好的消息列表（包含系统消息）
-     */
-    private Mono<List<Message>> buildConversationHistory(Long sessionId, Long roleId) {
-        return buildDynamicRoleMessages(roleId)
-                .flatMap(dynamicMessages -> 
-                        messageRepository.findBySessionIdOrderByCreatedAtAsc(sessionId)
-                                .collectList()
-                                .map(messages -> {
-                                    List<Message> history = new ArrayList<>();
-                                    
-                                    // 1. 添加动态角色配置生成的消息
-                                    history.addAll(dynamicMessages);
-                                    
-                                    // 2. 处理历史消息（上下文截断）
-                                    List<ConversationMessage> contextMessages = messages;
-                                    int maxContextMessages = chatProperties.getMaxContextMessages();
-                                    
-                                    // 如果消息过多，只保留最近的 maxContextMessages 条
-                                    if (messages.size() > maxContextMessages) {
-                                        // 保留后 maxContextMessages 条
-                                        contextMessages = messages.subList(
-                                                messages.size() - maxContextMessages, 
-                                                messages.size()
-                                        );
-                                    }
-                                    
-                                    // 3. 转换为 Spring AI Message 对象
-                                    for (ConversationMessage msg : contextMessages) {
-                                        if (MessageType.USER.getValue().equals(msg.role())) {
-                                            history.add(new UserMessage(msg.content()));
-                                        } else if (MessageType.ASSISTANT.getValue().equals(msg.role())) {
-                                            history.add(new AssistantMessage(msg.content()));
-                                        }
-                                        // 系统消息已在开头添加，数据库中的系统消息忽略
-                                    }
-                                    
-                                    return history;
+     * @param userMessage 本轮用户消息
+     * @return 构建好的消息列表（角色消息 + 摘要 + 历史消息 + 用户消息）
+     */
+    private Mono<List<Message>> buildConversationHistory(Long sessionId, Long roleId, String userMessage) {
+        // 角色注册表未加载时角色可能来自数据库，无法判断前缀是否过期，不使用前缀缓存
+        long roleVersion = roleRegistry.version();
+        if (promptPrefixCache.isEnabled() && roleVersion > 0) {
+            return revalidateWindow(sessionId).then(conversationSummarizer.getSummary(sessionId)).flatMap(summary -> {
+                // 摘要更新后前缀中的摘要消息随之变化，以摘要覆盖到的消息ID作为版本
+                long summaryVersion = summary.coveredUntilId();
+                PromptPrefix cached = promptPrefixCache.get(sessionId, roleId, roleVersion, summaryVersion);
+                if (cached != null) {
+                    return Mono.just(contextWindowBuilder.build(cached, userMessage));
+                }
+                return buildDynamicRoleMessages(roleId)
+                        .flatMap(dynamicMessages -> loadContextMessages(sessionId)
+                                .map(contextMessages -> {
+                                    PromptPrefix prefix = promptPrefixCache.putIfAbsent(sessionId, roleId,
+                                            contextWindowBuilder.newPrefix(
+                                                    roleVersion,
+                                                    summaryVersion,
+                                                    withSummary(dynamicMessages, summary),
+                                                    contextMessages
+                                            ));
+                                    return contextWindowBuilder.build(prefix, userMessage);
                                 })
+                        );
+            });
+        }
+        
+        return revalidateWindow(sessionId)
+                .then(conversationSummarizer.getSummary(sessionId))
+                .flatMap(summary -> buildDynamicRoleMessages(roleId)
+                        .flatMap(dynamicMessages -> 
+                                loadContextMessages(sessionId)
+                                        .map(contextMessages -> contextWindowBuilder.build(
+                                                withSummary(dynamicMessages, summary),
+                                                contextMessages,
+                                                userMessage
+                                        ))
+                        )
                 );
     }
 
+    /**
+     * 在角色消息之后追加会话摘要
+     * 
+     * @param prefixMessages 角色消息
+     * @param summary 会话摘要
+     * @return 追加摘要后的消息列表；没有摘要时原样返回
+     */
+    private List<Message> withSummary(List<Message> prefixMessages, ConversationSummary summary) {
+        if (summary.isEmpty()) {
+            return prefixMessages;
+        }
+        List<Message> messages = new ArrayList<>(prefixMessages.size() + 1);
+        messages.addAll(prefixMessages);
+        messages.add(new SystemMessage("以下是本会话较早内容的摘要：\n" + summary.summary()));
+        return messages;
+    }
+
+    /**
+     * 获取会话的上下文窗口消息
+     * 
+     * @param sessionId 会话ID
+     * @return 按时间正序的消息列表（含 token 数）
+     */
+    private Mono<List<ContextMessage>> loadContextMessages(Long sessionId) {
+        return Mono.defer(() -> {
+            if (windowCache.isEnabled()) {
+                List<ContextMessage> cached = windowCache.get(sessionId);
+                if (cached != null) {
+                    return Mono.just(cached);
+                }
+            }
+            return loadRecentMessages(sessionId)
+                    .map(rows -> {
+                        List<ContextMessage> messages = toContextMessages(rows);
+                        if (windowCache.isEnabled()) {
+                            windowCache.put(sessionId, messages, ConversationWindowCache.Head.of(rows));
+                        }
+                        return messages;
+                    });
+        });
+    }
+
+    /**
+     * 多实例部署时校验本地缓存的上下文窗口是否仍是最新的
+     * 
+     * 查询会话最新一条消息的 (ID, 状态)，与窗口记录的版本比较：其他实例写入新消息或结束流式回复后
+     * 版本不一致，本地窗口被移除，本轮从数据库重新加载。查询走 (session_id, created_at, id) 索引，只读一行。
+     * 窗口不存在或已失效时，同一会话的提示词前缀也随之失效，随后与窗口一起重新构建。
+     * 
+     * @param sessionId 会话ID
+     * @return 完成信号
+     */
+    private Mono<Void> revalidateWindow(Long sessionId) {
+        if (!windowCache.isEnabled() || !windowCache.isValidate()) {
+            return Mono.empty();
+        }
+        return messageRepository.findRecentBySessionId(sessionId, 1)
+                .collectList()
+                .doOnNext(latest -> {
+                    if (!windowCache.validate(sessionId, ConversationWindowCache.Head.of(latest))) {
+                        // 前缀中的历史消息同样来自本地，一并失效
+                        promptPrefixCache.invalidate(sessionId);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * 读取会话最近的上下文消息（按时间正序）
+     * 
+     * 数据库按 created_at 倒序 + LIMIT 只取窗口内的行，再在内存中反转，
+     * 避免为了保留最近几十条消息而加载整个会话历史。
+     * 开启 fold-into-history 时改用会话表 LEFT JOIN 消息表的查询，同时完成会话存在性校验。
+     * 
+     * @param sessionId 会话ID
+     * @return 最近的 maxContextMessages 条消息（旧 -> 新）
+     */
+    private Mono<List<ConversationMessage>> loadRecentMessages(Long sessionId) {
+        int limit = chatProperties.getMaxContextMessages();
+        if (!sessionExistenceCache.isFoldIntoHistory()) {
+            return messageRepository.findRecentBySessionId(sessionId, limit)
+                    .collectList()
+                    .map(messages -> {
+                        Collections.reverse(messages);
+                        return messages;
+                    });
+        }
+        
+        return messageRepository.findRecentWithSession(sessionId, limit)
+                .collectList()
+                .flatMap(rows -> {
+                    // 无结果说明会话不存在
+                    if (rows.isEmpty()) {
+                        sessionExistenceCache.markAbsent(sessionId);
+                        return Mono.error(new RuntimeException("会话不存在: " + sessionId));
+                    }
+                    sessionExistenceCache.markPresent(sessionId);
+                    sessionExistenceCache.recordFoldedCheck();
+                    
+                    // 倒序遍历还原为正序，并跳过"会话存在但没有消息"的占位行
+                    List<ConversationMessage> messages = new ArrayList<>(rows.size());
+                    for (int i = rows.size() - 1; i >= 0; i--) {
+                        if (rows.get(i).id() != null) {
+                            messages.add(rows.get(i));
+                        }
+                    }
+                    return Mono.just(messages);
+                });
+    }
 
     /**
      * 构建动态角色消息 - 支持角色选择
@@ -331,14 +774,18 @@ public class ChatService {
     private Mono<List<Message>> buildDynamicRoleMessages(Long roleId) {
         Flux<RoleConfig> roleConfigsFlux;
         
-        if (roleId != null) {
+        // 优先从内存角色注册表解析，快照未加载或角色ID不在快照中时回源数据库
+        List<RoleConfig> registered = roleRegistry.resolve(roleId);
+        if (registered != null) {
+            roleConfigsFlux = Flux.fromIterable(registered);
+        } else if (roleId != null) {
             // 如果指定了角色ID，只使用该角色的配置
             roleConfigsFlux = roleConfigService.getRoleConfigById(roleId)
                     .filter(RoleConfig::enabled)
                     .flux();
         } else {
             // 如果没有指定角色ID，使用默认助手角色配置
-            roleConfigsFlux = roleConfigService.getRoleConfigByRoleName("默认助手")
+            roleConfigsFlux = roleConfigService.getRoleConfigByRoleName(RoleRegistry.DEFAULT_ROLE_NAME)
                     .filter(RoleConfig::enabled)
                     .flux()
                     .switchIfEmpty(roleConfigService.getAllEnabledRoleConfigs());
@@ -411,48 +858,118 @@ public class ChatService {
     }
 
     /**
-     * 保存消息到数据库
+     * 保存一轮对话（用户消息 + AI回复）
+     * 
+     * 两条消息与会话 updated_at 的更新合并为一条语句，经批量写入器一次往返落库，
+     * 成功后再追加到内存窗口缓存。
      * 
      * @param sessionId 会话ID
-     * @param role 角色（user/assistant）
-     * @param content 消息内容
+     * @param userMessage 用户消息
+     * @param response AI回复
      * @return 操作完成信号
      */
-    private Mono<Void> saveMessage(Long sessionId, String role, String content) {
-        return messageRepository.save(ConversationMessage.of(sessionId, role, content))
+    private Mono<Void> saveTurn(Long sessionId, String userMessage, String response) {
+        List<ConversationMessage> rows = List.of(
+                ConversationMessage.of(sessionId, MessageType.USER.getValue(), userMessage,
+                        contextWindowBuilder.estimateTokens(userMessage)),
+                ConversationMessage.of(sessionId, MessageType.ASSISTANT.getValue(), response,
+                        contextWindowBuilder.estimateTokens(response))
+        );
+        return messageBatchWriter.write(rows)
+                .doOnNext(saved -> {
+                    appendToWindow(sessionId, saved);
+                    conversationSummarizer.requestSummary(sessionId);
+                })
                 .then();
     }
 
     /**
-     * 从异常中提取错误信息
+     * 将已持久化的消息追加到内存窗口缓存和提示词前缀缓存（写穿透）
      * 
-     * @param e TransientAiException
-     * @return 提取的错误信息
+     * @param sessionId 会话ID
+     * @param saved 已保存的消息（按时间正序）
      */
-    private String extractErrorMessage(TransientAiException e) {
-        String message = e.getMessage();
-        if (message == null) {
-            return "未知错误";
+    private void appendToWindow(Long sessionId, List<ConversationMessage> saved) {
+        if (!windowCache.isEnabled() && !promptPrefixCache.isEnabled()) {
+            return;
         }
-        
-        // 尝试提取中文错误消息
-        java.util.regex.Pattern zhPattern = java.util.regex.Pattern.compile("\"message_zh\"\\s*:\\s*\"([^\"]+)\"");
-        java.util.regex.Matcher zhMatcher = zhPattern.matcher(message);
-        if (zhMatcher.find()) {
-            return zhMatcher.group(1);
+        List<ContextMessage> messages = toContextMessages(saved);
+        if (windowCache.isEnabled()) {
+            windowCache.append(sessionId, messages, ConversationWindowCache.Head.of(saved));
         }
-        
-        // 尝试提取英文错误消息
-        java.util.regex.Pattern msgPattern = java.util.regex.Pattern.compile("\"message\"\\s*:\\s*\"([^\"]+)\"");
-        java.util.regex.Matcher msgMatcher = msgPattern.matcher(message);
-        if (msgMatcher.find()) {
-            return msgMatcher.group(1);
+        promptPrefixCache.append(sessionId, messages);
+    }
+
+    /**
+     * 将一组数据库消息转换为上下文消息
+     * 
+     * 只有完整的一轮对话参与上下文：失败、取消和生成中的回复不参与，其前面的用户消息也一并跳过，
+     * 避免上下文中出现被截断的回复或连续两条用户消息。
+     * 系统消息已在开头添加，数据库中的系统消息忽略。
+     * 
+     * @param rows 按时间正序的数据库消息
+     * @return 上下文消息
+     */
+    private List<ContextMessage> toContextMessages(List<ConversationMessage> rows) {
+        List<ContextMessage> messages = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ConversationMessage row = rows.get(i);
+            boolean include = MessageType.USER.getValue().equals(row.role())
+                    ? i + 1 < rows.size() && isCompleteReply(rows.get(i + 1))
+                    : ConversationMessage.STATUS_COMPLETE.equals(row.status());
+            ContextMessage message = include ? toContextMessage(row) : null;
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    private static boolean isCompleteReply(ConversationMessage row) {
+        return MessageType.ASSISTANT.getValue().equals(row.role())
+                && ConversationMessage.STATUS_COMPLETE.equals(row.status());
+    }
+
+    /**
+     * 将数据库消息转换为上下文消息
+     * 
+     * 旧数据没有 token_count 时现场估算。
+     * 
+     * @param row 数据库消息
+     * @return 上下文消息；不参与上下文的角色返回 null
+     */
+    private ContextMessage toContextMessage(ConversationMessage row) {
+        // 生成中的占位回复和空内容不参与上下文
+        if (row.content() == null || row.content().isEmpty()
+                || ConversationMessage.STATUS_STREAMING.equals(row.status())) {
+            return null;
         }
         
-        // 截断过长的消息
-        if (message.length() > 200) {
-            return message.substring(0, 200) + "...";
+        Message message;
+        if (MessageType.USER.getValue().equals(row.role())) {
+            message = new UserMessage(row.content());
+        } else if (MessageType.ASSISTANT.getValue().equals(row.role())) {
+            message = new AssistantMessage(row.content());
+        } else {
+            return null;
         }
-        return message;
+        int tokenCount = row.tokenCount() != null
+                ? row.tokenCount()
+                : contextWindowBuilder.estimateTokens(row.content());
+        return new ContextMessage(message, tokenCount);
+    }
+
+    /**
+     * 生成请求合并键
+     * 
+     * 同一会话中调用方式、角色和用户消息都相同的请求视为相同请求。
+     * 
+     * @param stream 是否为流式请求
+     * @param roleId 角色ID（未指定角色时为 null）
+     * @param userMessage 用户消息
+     * @return 合并键
+     */
+    private String coalesceKey(boolean stream, Long roleId, String userMessage) {
+        return (stream ? "stream:" : "call:") + (roleId != null ? roleId : "default") + ":" + userMessage;
     }
 }
@@ -0,0 +1,297 @@
+package org.example.service;
+
+import org.example.config.ChatProperties;
+import org.example.entity.ConversationMessage;
+import org.example.entity.ConversationSummary;
+import org.example.repository.ConversationMessageRepository;
+import org.example.repository.ConversationSummaryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话摘要生成器
+ * 
+ * 会话消息超过上下文窗口后，旧消息会被裁掉。该组件在请求链路之外把滑出窗口的消息压缩为滚动摘要：
+ * 1. 触发 - 每轮对话保存后提交摘要任务，任务先检查滑出窗口的未摘要消息是否达到 minMessages
+ * 2. 去重 - 同一会话同一时刻最多一个任务排队或执行
+ * 3. 有界执行 - 任务进入有界队列，最多 concurrency 个任务同时调用模型，队列满时丢弃（下一轮会再次触发）
+ * 4. 摘要缓存 - 摘要按会话缓存在内存中，构建上下文时不增加数据库往返
+ * 5. 调用保护 - 模型调用经过 UpstreamGuard，与对话请求共用重试和熔断状态；熔断期间跳过摘要（下一轮会再次触发）
+ */
+@Component
+public class ConversationSummarizer {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationSummarizer.class);
+
+    private final ChatClient chatClient;
+    private final UpstreamGuard upstreamGuard;
+    private final ConversationMessageRepository messageRepository;
+    private final ConversationSummaryRepository summaryRepository;
+    private final ChatProperties chatProperties;
+    private final ChatProperties.Summary config;
+
+    private final BlockingQueue<Long> queue;
+    private final Set<Long> pendingSessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final Map<Long, ConversationSummary> summaries;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong summarizedMessages = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public ConversationSummarizer(
+            ChatModel chatModel,
+            ConversationMessageRepository messageRepository,
+            ConversationSummaryRepository summaryRepository,
+            ChatProperties chatProperties,
+            UpstreamGuard upstreamGuard
+    ) {
+        this.chatClient = ChatClient.builder(chatModel).build();
+        this.upstreamGuard = upstreamGuard;
+        this.messageRepository = messageRepository;
+        this.summaryRepository = summaryRepository;
+        this.chatProperties = chatProperties;
+        this.config = chatProperties.getSummary();
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        int maxSessions = chatProperties.getWindowCache().getMaxSessions();
+        this.summaries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ConversationSummary> eldest) {
+                return size() > maxSessions;
+            }
+        };
+    }
+
+    /**
+     * 获取会话的摘要
+     * 
+     * @param sessionId 会话ID
+     * @return 会话摘要；没有摘要或未启用时返回 ConversationSummary.none
+     */
+    public Mono<ConversationSummary> getSummary(Long sessionId) {
+        if (!config.isEnabled()) {
+            return Mono.just(ConversationSummary.none(sessionId));
+        }
+        return Mono.defer(() -> {
+            ConversationSummary cached;
+            synchronized (summaries) {
+                cached = summaries.get(sessionId);
+            }
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return summaryRepository.findById(sessionId)
+                    .defaultIfEmpty(ConversationSummary.none(sessionId))
+                    .doOnNext(this::cache);
+        });
+    }
+
+    /**
+     * 提交摘要任务（不等待执行结果）
+     * 
+     * @param sessionId 会话ID
+     */
+    public void requestSummary(Long sessionId) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (!pendingSessions.add(sessionId)) {
+            deduplicated.incrementAndGet();
+            return;
+        }
+        if (!queue.offer(sessionId)) {
+            pendingSessions.remove(sessionId);
+            dropped.incrementAndGet();
+            return;
+        }
+        drain();
+    }
+
+    /**
+     * 清除会话的摘要缓存（会话删除时调用，数据库中的摘要随会话级联删除）
+     * 
+     * @param sessionId 会话ID
+     */
+    public void invalidate(Long sessionId) {
+        synchronized (summaries) {
+            summaries.remove(sessionId);
+        }
+    }
+
+    /**
+     * 获取摘要统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        return new Stats(
+                runs.get(),
+                summarizedMessages.get(),
+                deduplicated.get(),
+                dropped.get(),
+                failures.get(),
+                skipped.get(),
+                queue.size(),
+                activeWorkers.get()
+        );
+    }
+
+    /**
+     * 在并发上限内启动排队中的任务
+     */
+    private void drain() {
+        while (!queue.isEmpty()) {
+            int active = activeWorkers.get();
+            if (active >= config.getConcurrency()) {
+                return;
+            }
+            if (!activeWorkers.compareAndSet(active, active + 1)) {
+                continue;
+            }
+            Long sessionId = queue.poll();
+            if (sessionId == null) {
+                activeWorkers.decrementAndGet();
+                continue;
+            }
+            summarize(sessionId)
+                    .doOnError(e -> {
+                        failures.incrementAndGet();
+                        log.warn("生成会话摘要失败: sessionId={}, {}", sessionId, e.getMessage());
+                    })
+                    .onErrorResume(e -> Mono.just(false))
+                    .defaultIfEmpty(false)
+                    .subscribe(hasMore -> {
+                        pendingSessions.remove(sessionId);
+                        activeWorkers.decrementAndGet();
+                        // 单次未处理完的消息继续排队
+                        if (hasMore) {
+                            requestSummary(sessionId);
+                        }
+                        drain();
+                    });
+        }
+    }
+
+    /**
+     * 把滑出窗口的未摘要消息合并进会话摘要
+     * 
+     * @param sessionId 会话ID
+     * @return 是否还有未处理的消息
+     */
+    private Mono<Boolean> summarize(Long sessionId) {
+        int limit = config.getMaxMessagesPerRun();
+        return getSummary(sessionId)
+                .flatMap(current -> messageRepository.findOutsideWindow(
+                                sessionId,
+                                current.coveredUntilId(),
+                                chatProperties.getMaxContextMessages(),
+                                limit
+                        )
+                        .collectList()
+                        .flatMap(messages -> {
+                            if (messages.size() < config.getMinMessages()) {
+                                return Mono.just(false);
+                            }
+                            if (upstreamGuard.isOpen()) {
+                                // 上游熔断中，跳过本次摘要，不让后台任务加重上游压力
+                                skipped.incrementAndGet();
+                                return Mono.just(false);
+                            }
+                            runs.incrementAndGet();
+                            Long coveredUntilId = messages.get(messages.size() - 1).id();
+                            return upstreamGuard.call(Mono.fromCallable(() -> callModel(current, messages))
+                                            .subscribeOn(Schedulers.boundedElastic()))
+                                    .flatMap(summary -> summaryRepository.upsert(sessionId, summary, coveredUntilId)
+                                            .doOnSuccess(updated -> {
+                                                summarizedMessages.addAndGet(messages.size());
+                                                if (updated != null && updated > 0) {
+                                                    cache(new ConversationSummary(sessionId, summary, coveredUntilId, LocalDateTime.now()));
+                                                } else {
+                                                    // 数据库中已有覆盖范围更靠后的摘要，下次重新读取
+                                                    invalidate(sessionId);
+                                                }
+                                            }))
+                                    .thenReturn(messages.size() == limit);
+                        }));
+    }
+
+    /**
+     * 调用模型生成新的摘要
+     * 
+     * @param current 已有摘要
+     * @param messages 新滑出窗口的消息（旧 -> 新）
+     * @return 新摘要
+     */
+    private String callModel(ConversationSummary current, List<ConversationMessage> messages) {
+        StringBuilder conversation = new StringBuilder();
+        for (ConversationMessage message : messages) {
+            String speaker = MessageType.USER.getValue().equals(message.role()) ? "用户" : "助手";
+            conversation.append(speaker).append("：").append(message.content()).append('\n');
+        }
+
+        String system = "你是对话摘要助手。请把已有摘要和新增的对话内容合并为一份新的摘要，"
+                + "保留用户的关键信息、偏好、已确认的结论和尚未解决的问题，"
+                + "使用第三人称陈述，不超过" + config.getMaxChars() + "字，只输出摘要正文。";
+        String user = "已有摘要：\n" + (current.isEmpty() ? "（无）" : current.summary())
+                + "\n\n新增对话：\n" + conversation;
+
+        String summary = chatClient.prompt()
+                .system(system)
+                .user(user)
+                .call()
+                .content();
+        if (summary == null || summary.isBlank()) {
+            throw new IllegalStateException("模型返回的摘要为空");
+        }
+        return summary.trim();
+    }
+
+    private void cache(ConversationSummary summary) {
+        synchronized (summaries) {
+            summaries.put(summary.sessionId(), summary);
+        }
+    }
+
+    /**
+     * 摘要统计信息
+     * 
+     * @param runs 调用模型生成摘要的次数
+     * @param summarizedMessages 已合并进摘要的消息数
+     * @param deduplicated 因同一会话已有任务而合并的请求数
+     * @param dropped 队列满时丢弃的任务数
+     * @param failures 失败的任务数
+     * @param skipped 上游熔断期间跳过的任务数
+     * @param queueDepth 当前排队的任务数
+     * @param activeWorkers 当前执行中的任务数
+     */
+    public record Stats(
+            long runs,
+            long summarizedMessages,
+            long deduplicated,
+            long dropped,
+            long failures,
+            long skipped,
+            int queueDepth,
+            int activeWorkers
+    ) {}
+}
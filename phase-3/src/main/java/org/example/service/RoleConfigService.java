@@ -1,14 +1,14 @@
 package org.example.service;
 
+import org.example.cache.RoleRegistry;
+import org.example.cache.RoleTemplateCache;
 import org.example.entity.RoleConfig;
 import org.example.repository.RoleConfigRepository;
 import org.springframework.ai.chat.messages.MessageType;
-import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,9 +21,17 @@ import java.util.Map;
 public class RoleConfigService {
 
     private final RoleConfigRepository roleConfigRepository;
+    private final RoleTemplateCache roleTemplateCache;
+    private final RoleRegistry roleRegistry;
 
-    public RoleConfigService(RoleConfigRepository roleConfigRepository) {
+    public RoleConfigService(
+            RoleConfigRepository roleConfigRepository,
+            RoleTemplateCache roleTemplateCache,
+            RoleRegistry roleRegistry
+    ) {
         this.roleConfigRepository = roleConfigRepository;
+        this.roleTemplateCache = roleTemplateCache;
+        this.roleRegistry = roleRegistry;
     }
 
     /**
@@ -69,7 +77,8 @@ public class RoleConfigService {
                     );
                     return roleConfigRepository.save(config);
                 }))
-                .cast(RoleConfig.class);
+                .cast(RoleConfig.class)
+                .flatMap(saved -> roleRegistry.refresh().thenReturn(saved));
     }
 
     /**
@@ -109,7 +118,9 @@ public class RoleConfigService {
                 .flatMap(config -> {
                     RoleConfig updated = config.update(roleName, description, templateContent, enabled, priority, tags);
                     return roleConfigRepository.save(updated);
-                });
+                })
+                .doOnSuccess(saved -> roleTemplateCache.invalidate(id))
+                .flatMap(saved -> roleRegistry.refresh().thenReturn(saved));
     }
 
     /**
@@ -125,7 +136,9 @@ public class RoleConfigService {
                         return Mono.error(new IllegalArgumentException("角色配置不存在: " + id));
                     }
                     return roleConfigRepository.deleteById(id);
-                });
+                })
+                .doOnSuccess(ignored -> roleTemplateCache.invalidate(id))
+                .then(roleRegistry.refresh());
     }
 
     /**
@@ -187,29 +200,33 @@ public class RoleConfigService {
     /**
      * 渲染角色模板
      * 
+     * 已编译的模板和固定变量集下的渲染结果由 RoleTemplateCache 缓存，
+     * 同一角色配置在未更新前不会重复解析模板。
+     * 
      * @param roleConfig 角色配置
      * @param variables 模板变量
      * @return 渲染后的内容
      */
     public Mono<String> renderRoleTemplate(RoleConfig roleConfig, Map<String, Object> variables) {
-        return Mono.fromCallable(() -> {
-            if (roleConfig.templateContent() == null || roleConfig.templateContent().trim().isEmpty()) {
-                return "";
-            }
+        return Mono.fromCallable(() -> roleTemplateCache.render(roleConfig, variables));
+    }
 
-            Map<String, Object> templateVariables = variables != null ? new HashMap<>(variables) : new HashMap<>();
-            
-            // 添加默认变量（使用putIfAbsent避免覆盖调用方传递的值）
-            templateVariables.putIfAbsent("roleName", roleConfig.roleName());
-            templateVariables.putIfAbsent("roleDescription", roleConfig.description());
-            templateVariables.putIfAbsent("roleType", roleConfig.roleType());
-            
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(roleConfig.templateContent())
-                    .build();
+    /**
+     * 获取角色注册表统计信息
+     * 
+     * @return 统计信息
+     */
+    public RoleRegistry.Stats getRegistryStats() {
+        return roleRegistry.stats();
+    }
             
-            return promptTemplate.render(templateVariables);
-        });
+    /**
+     * 获取角色模板缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public RoleTemplateCache.Stats getTemplateCacheStats() {
+        return roleTemplateCache.stats();
     }
 
     /**
@@ -0,0 +1,201 @@
+package org.example.service;
+
+import org.example.config.ChatProperties;
+import org.example.exception.UpstreamErrorKind;
+import org.example.exception.UpstreamErrorParser;
+import org.example.exception.UpstreamException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 模型调用保护
+ * 
+ * 包装每一次模型调用，失败时解析为带类型的 UpstreamException，并据此决定后续行为：
+ * 1. 重试 - 可重试的错误（限流、过载）按退避策略重试；已由 Spring AI 重试过的瞬时错误不再重复重试；
+ *    流式调用只在尚未输出任何内容时重试
+ * 2. 快速失败 - 连续 failureThreshold 次上游整体性错误（限流、过载、鉴权）后熔断 openDuration，
+ *    期间的请求不再调用上游，直接失败
+ * 3. 统计指标 - 按错误类型计数，并记录重试、熔断和快速失败次数
+ */
+@Component
+public class UpstreamGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    private final UpstreamErrorParser parser;
+    private final ChatProperties.Upstream config;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openUntil;
+    private volatile UpstreamErrorKind openKind = UpstreamErrorKind.OVERLOAD;
+
+    private final AtomicLongArray failures = new AtomicLongArray(UpstreamErrorKind.values().length);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong circuitOpened = new AtomicLong();
+    private final AtomicLong fastFailed = new AtomicLong();
+
+    public UpstreamGuard(UpstreamErrorParser parser, ChatProperties chatProperties) {
+        this.parser = parser;
+        this.config = chatProperties.getUpstream();
+    }
+
+    /**
+     * 保护一次非流式调用
+     * 
+     * @param call 模型调用
+     * @return 调用结果；失败时以 UpstreamException 结束
+     */
+    public <T> Mono<T> call(Mono<T> call) {
+        return Mono.defer(() -> {
+            UpstreamException open = checkOpen();
+            if (open != null) {
+                return Mono.error(open);
+            }
+            calls.incrementAndGet();
+            return call
+                    .onErrorMap(parser::parse)
+                    .retryWhen(retrySpec(null))
+                    .doOnSuccess(value -> recordSuccess())
+                    .doOnError(this::recordFailure);
+        });
+    }
+
+    /**
+     * 保护一次流式调用
+     * 
+     * @param stream 模型流式调用
+     * @return 内容流；失败时以 UpstreamException 结束
+     */
+    public <T> Flux<T> stream(Flux<T> stream) {
+        return Flux.defer(() -> {
+            UpstreamException open = checkOpen();
+            if (open != null) {
+                return Flux.error(open);
+            }
+            calls.incrementAndGet();
+            AtomicBoolean emitted = new AtomicBoolean();
+            return stream
+                    .doOnNext(item -> emitted.set(true))
+                    .onErrorMap(parser::parse)
+                    .retryWhen(retrySpec(emitted))
+                    .doOnComplete(this::recordSuccess)
+                    .doOnError(this::recordFailure);
+        });
+    }
+
+    /**
+     * 当前是否处于熔断状态（不计入快速失败次数）
+     * 
+     * @return 熔断期间返回 true
+     */
+    public boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+
+    /**
+     * 获取统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        Map<UpstreamErrorKind, Long> byKind = new LinkedHashMap<>();
+        for (UpstreamErrorKind kind : UpstreamErrorKind.values()) {
+            byKind.put(kind, failures.get(kind.ordinal()));
+        }
+        return new Stats(
+                calls.get(),
+                byKind,
+                retries.get(),
+                circuitOpened.get(),
+                fastFailed.get(),
+                isOpen()
+        );
+    }
+
+    /**
+     * 熔断期间返回快速失败的异常
+     */
+    private UpstreamException checkOpen() {
+        if (System.currentTimeMillis() >= openUntil) {
+            return null;
+        }
+        fastFailed.incrementAndGet();
+        return new UpstreamException(openKind, 0, null, "上游服务连续失败，已暂停调用，请稍后再试", null, true);
+    }
+
+    /**
+     * 重试策略
+     * 
+     * @param emitted 流式调用是否已输出内容（非流式调用为 null）
+     */
+    private Retry retrySpec(AtomicBoolean emitted) {
+        return Retry.backoff(config.getMaxRetries(), config.getRetryBackoff())
+                .filter(e -> (emitted == null || !emitted.get()) && shouldRetry(e))
+                .doBeforeRetry(signal -> retries.incrementAndGet())
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private boolean shouldRetry(Throwable error) {
+        if (!(error instanceof UpstreamException upstream) || !upstream.kind().retryable()) {
+            return false;
+        }
+        // 瞬时错误已按 spring.ai.retry 重试过，不再叠加重试
+        return !(upstream.getCause() instanceof TransientAiException);
+    }
+
+    private void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    private void recordFailure(Throwable error) {
+        if (!(error instanceof UpstreamException upstream) || upstream.fastFailed()) {
+            return;
+        }
+        failures.incrementAndGet(upstream.kind().ordinal());
+        if (!upstream.kind().tripsCircuit()) {
+            return;
+        }
+        int threshold = config.getFailureThreshold();
+        if (threshold > 0 && consecutiveFailures.incrementAndGet() >= threshold) {
+            openKind = upstream.kind();
+            openUntil = System.currentTimeMillis() + config.getOpenDuration().toMillis();
+            // 恢复调用后再失败一次立即重新熔断
+            consecutiveFailures.set(threshold - 1);
+            circuitOpened.incrementAndGet();
+            log.warn("上游连续失败，暂停调用 {}: kind={}, status={}, message={}",
+                    config.getOpenDuration(), upstream.kind(), upstream.status(), upstream.getMessage());
+        }
+    }
+
+    /**
+     * 模型调用统计信息
+     * 
+     * @param calls 调用次数（不含快速失败）
+     * @param failures 按错误类型统计的失败次数
+     * @param retries 重试次数
+     * @param circuitOpened 熔断次数
+     * @param fastFailed 熔断期间直接失败的请求数
+     * @param open 当前是否处于熔断状态
+     */
+    public record Stats(
+            long calls,
+            Map<UpstreamErrorKind, Long> failures,
+            long retries,
+            long circuitOpened,
+            long fastFailed,
+            boolean open
+    ) {}
+}
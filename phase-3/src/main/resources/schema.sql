@@ -12,12 +12,32 @@ CREATE TABLE IF NOT EXISTS conversation_messages (
     session_id BIGINT NOT NULL REFERENCES conversation_sessions(id) ON DELETE CASCADE,
     role VARCHAR(50) NOT NULL,
     content TEXT NOT NULL,
-    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    token_count INTEGER,
+    status VARCHAR(20) NOT NULL DEFAULT 'complete'
+);
+
+-- 缓存消息的估算 token 数，用于按 token 预算裁剪上下文（兼容已有的表结构）
+ALTER TABLE conversation_messages ADD COLUMN IF NOT EXISTS token_count INTEGER;
+-- 消息状态：complete / streaming / cancelled / failed，流式回复按检查点逐段追加内容
+ALTER TABLE conversation_messages ADD COLUMN IF NOT EXISTS status VARCHAR(20) NOT NULL DEFAULT 'complete';
+
+-- 会话摘要表：滑出上下文窗口的旧消息由后台压缩为滚动摘要
+CREATE TABLE IF NOT EXISTS conversation_summaries (
+    session_id BIGINT PRIMARY KEY REFERENCES conversation_sessions(id) ON DELETE CASCADE,
+    summary TEXT NOT NULL,
+    covered_until_id BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
 -- 创建索引以加速查询
 CREATE INDEX IF NOT EXISTS idx_messages_session_id ON conversation_messages(session_id);
-CREATE INDEX IF NOT EXISTS idx_sessions_updated_at ON conversation_sessions(updated_at DESC);
+-- 复合索引：按会话取最近 N 条消息（上下文窗口查询，反向扫描）和按 (created_at, id) 键集分页
+CREATE INDEX IF NOT EXISTS idx_messages_session_created_at ON conversation_messages(session_id, created_at, id);
+-- 复合索引：会话列表按 (updated_at, id) 键集分页，同时覆盖按 updated_at 排序的查询
+CREATE INDEX IF NOT EXISTS idx_sessions_updated_id ON conversation_sessions(updated_at DESC, id DESC);
+-- 旧的单列索引已被上面的复合索引覆盖，删除以免每次更新 updated_at 都要多维护一个索引
+DROP INDEX IF EXISTS idx_sessions_updated_at;
 
 
 -- 创建角色配置表
@@ -0,0 +1,434 @@
+package org.example.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PostConstruct;
+import org.example.config.StructuredOutputProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 结构化输出响应缓存
+ * 
+ * 相同的输入（端点、模型、响应格式、渲染后的提示词）得到的结构化结果直接复用，不再调用模型：
+ * 1. 内容寻址 - 缓存键是上述内容的 SHA-256，模板或变量任何变化都会得到新的键
+ * 2. 内存层 - 按内容总字符数限制大小，超出后按 LRU 淘汰
+ * 3. 磁盘层（可选）- 每个条目一个文件，重启后仍然有效，命中后提升到内存层
+ * 4. 过期时间 - 按端点单独配置，0 表示该端点不缓存
+ * 5. 统计指标 - 按端点记录内存命中、磁盘命中、未命中和合并加载次数
+ * 6. 合并加载 - 同一个键同一时刻只有一次加载在进行，其余未命中的请求等待并共享它的结果
+ * 
+ * 缓存的是解析、校验后的最终结果（JSON），命中时不会再触发修复或修正调用。
+ * 磁盘读写是阻塞的，直接调用 lookup / put 时需要在 boundedElastic 线程上执行。
+ */
+@Component
+public class StructuredResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(StructuredResponseCache.class);
+
+    private final StructuredOutputProperties.Cache config;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+
+    /**
+     * 内存层，按访问顺序排列（LRU），访问时对自身加锁
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryChars;
+
+    /**
+     * 进行中的加载，按缓存键索引；加载结束（成功、失败或取消）后移除
+     */
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StructuredResponseCache(StructuredOutputProperties properties, ObjectMapper objectMapper) {
+        this.config = properties.getCache();
+        this.objectMapper = objectMapper;
+        this.directory = config.getDisk().isEnabled() ? Paths.get(config.getDisk().getDirectory()) : null;
+    }
+
+    /**
+     * 启动时在后台清理磁盘上已过期的条目
+     */
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled() || directory == null) {
+            return;
+        }
+        Mono.fromRunnable(this::sweepDisk)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> logger.warn("清理磁盘缓存失败: {}", e.getMessage()));
+    }
+
+    /**
+     * 计算缓存键
+     * 
+     * @param endpoint 端点名称
+     * @param model 模型名称
+     * @param options 响应格式等影响输出的选项
+     * @param prompt 渲染后的提示词
+     * @return 缓存键（SHA-256 十六进制）
+     */
+    public String key(String endpoint, String model, String options, String prompt) {
+        MessageDigest digest = sha256();
+        for (String part : new String[]{endpoint, model, options, prompt}) {
+            digest.update((part != null ? part : "").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 查询缓存，未命中时加载并写入缓存
+     * 
+     * 缓存读写在 boundedElastic 线程上执行；加载逻辑是非阻塞的，取消订阅（例如超时）时随之取消。
+     * 同一个键已有加载在进行时不再调用 loader，等待该次加载的结果；该次加载被取消时重新查询，必要时自己加载。
+     * 
+     * @param endpoint 端点名称
+     * @param key 缓存键
+     * @param reader 结果类型的读取器
+     * @param loader 未命中时的加载逻辑（调用模型并解析）
+     * @return 结果
+     */
+    public <T> Mono<T> getOrLoad(String endpoint, String key, ObjectReader reader, Mono<T> loader) {
+        return Mono.fromCallable(() -> this.<T>lookup(endpoint, key, reader))
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(Mono.defer(() -> load(endpoint, key, reader, loader)));
+    }
+
+    /**
+     * 查询缓存
+     * 
+     * @param endpoint 端点名称
+     * @param key 缓存键
+     * @param reader 结果类型的读取器
+     * @return 缓存的结果；未命中时返回 null
+     */
+    public <T> T lookup(String endpoint, String key, ObjectReader reader) {
+        if (!isCacheable(endpoint)) {
+            return null;
+        }
+        Counters counter = counters(endpoint);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt() <= now) {
+                remove(key);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            T value = read(entry.json(), reader);
+            if (value != null) {
+                counter.memoryHits.incrementAndGet();
+                return value;
+            }
+        }
+
+        if (directory != null) {
+            entry = readDisk(key, now);
+            if (entry != null) {
+                T value = read(entry.json(), reader);
+                if (value != null) {
+                    putMemory(key, entry);
+                    counter.diskHits.incrementAndGet();
+                    return value;
+                }
+            }
+        }
+        counter.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     * 
+     * @param endpoint 端点名称
+     * @param key 缓存键
+     * @param value 结果
+     */
+    public void put(String endpoint, String key, Object value) {
+        if (value == null || !isCacheable(endpoint)) {
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            logger.warn("结果无法序列化，不写入缓存: {}", e.getMessage());
+            return;
+        }
+        Entry entry = new Entry(json, System.currentTimeMillis() + config.ttlFor(endpoint).toMillis());
+        putMemory(key, entry);
+        if (directory != null) {
+            writeDisk(key, entry);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        Map<String, EndpointStats> endpoints = new TreeMap<>();
+        long hits = 0;
+        long total = 0;
+        for (Map.Entry<String, Counters> e : counters.entrySet()) {
+            Counters counter = e.getValue();
+            long memoryHits = counter.memoryHits.get();
+            long diskHits = counter.diskHits.get();
+            long misses = counter.misses.get();
+            endpoints.put(e.getKey(), new EndpointStats(memoryHits, diskHits, misses, counter.coalesced.get(),
+                    ratio(memoryHits + diskHits, memoryHits + diskHits + misses)));
+            hits += memoryHits + diskHits;
+            total += memoryHits + diskHits + misses;
+        }
+        int size;
+        long chars;
+        synchronized (entries) {
+            size = entries.size();
+            chars = memoryChars;
+        }
+        return new Stats(ratio(hits, total), size, chars, evictions.get(), directory != null, endpoints);
+    }
+
+    /**
+     * 发起或加入该键的加载
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> load(String endpoint, String key, ObjectReader reader, Mono<T> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            counters(endpoint).coalesced.incrementAndGet();
+            // 等待方取消时不取消共享的加载
+            return Mono.fromFuture(existing, true)
+                    .map(value -> (T) value)
+                    .onErrorResume(CancellationException.class, e -> getOrLoad(endpoint, key, reader, loader));
+        }
+        return loader
+                .flatMap(value -> Mono.fromRunnable(() -> put(endpoint, key, value))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(value))
+                .doOnNext(flight::complete)
+                .doOnError(flight::completeExceptionally)
+                .doFinally(signal -> {
+                    inFlight.remove(key, flight);
+                    if (signal == SignalType.CANCEL) {
+                        flight.completeExceptionally(new CancellationException("加载已取消"));
+                    } else {
+                        flight.complete(null);
+                    }
+                });
+    }
+
+    private boolean isCacheable(String endpoint) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        Duration ttl = config.ttlFor(endpoint);
+        return ttl != null && ttl.toMillis() > 0;
+    }
+
+    private void putMemory(String key, Entry entry) {
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            memoryChars += entry.json().length();
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (memoryChars > config.getMaxMemoryChars() && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                if (evicted.getKey().equals(key)) {
+                    break;
+                }
+                memoryChars -= evicted.getValue().json().length();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 调用方需持有 entries 的锁
+     */
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            memoryChars -= removed.json().length();
+        }
+    }
+
+    private <T> T read(String json, ObjectReader reader) {
+        try {
+            return reader.readValue(json);
+        } catch (IOException e) {
+            logger.warn("缓存内容无法读取，视为未命中: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // ==================== 磁盘层 ====================
+
+    /**
+     * 条目文件：第一行是过期时间（毫秒时间戳），其余是结果 JSON
+     */
+    private Path file(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+
+    private Entry readDisk(String key, long now) {
+        Path file = file(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            long expiresAt = newline > 0 ? Long.parseLong(content.substring(0, newline)) : 0;
+            if (expiresAt <= now) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new Entry(content.substring(newline + 1), expiresAt);
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("读取磁盘缓存失败: {}, {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Entry entry) {
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(temp, entry.expiresAt() + "\n" + entry.json(), StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("写入磁盘缓存失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    private void sweepDisk() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        AtomicLong removed = new AtomicLong();
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            files.filter(path -> path.toString().endsWith(".json") || path.toString().endsWith(".tmp"))
+                    .forEach(path -> {
+                        String name = path.getFileName().toString();
+                        String key = name.substring(0, name.indexOf('.'));
+                        if (name.endsWith(".tmp") || readDisk(key, now) == null) {
+                            try {
+                                if (Files.deleteIfExists(path)) {
+                                    removed.incrementAndGet();
+                                }
+                            } catch (IOException e) {
+                                logger.debug("删除缓存文件失败: {}", path);
+                            }
+                        }
+                    });
+        } catch (IOException e) {
+            logger.warn("遍历磁盘缓存失败: {}", e.getMessage());
+        }
+        logger.info("磁盘缓存清理完成: 删除 {} 个过期条目", removed.get());
+    }
+
+    private Counters counters(String endpoint) {
+        return counters.computeIfAbsent(endpoint, ignored -> new Counters());
+    }
+
+    private static double ratio(long hits, long total) {
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 缓存条目
+     * 
+     * @param json 结果 JSON
+     * @param expiresAt 过期时间（毫秒时间戳）
+     */
+    private record Entry(String json, long expiresAt) {}
+
+    private static final class Counters {
+        private final AtomicLong memoryHits = new AtomicLong();
+        private final AtomicLong diskHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+    }
+
+    /**
+     * 单个端点的缓存统计
+     * 
+     * @param memoryHits 内存命中次数
+     * @param diskHits 磁盘命中次数
+     * @param misses 未命中次数
+     * @param coalesced 未命中后等待同一键进行中的加载、没有再调用模型的次数
+     * @param hitRatio 命中率
+     */
+    public record EndpointStats(long memoryHits, long diskHits, long misses, long coalesced, double hitRatio) {}
+
+    /**
+     * 响应缓存统计信息
+     * 
+     * @param hitRatio 总命中率
+     * @param memoryEntries 内存中的条目数
+     * @param memoryChars 内存中缓存内容的总字符数
+     * @param evictions 因容量淘汰的条目数
+     * @param diskEnabled 是否启用磁盘层
+     * @param endpoints 按端点的统计
+     */
+    public record Stats(
+            double hitRatio,
+            int memoryEntries,
+            long memoryChars,
+            long evictions,
+            boolean diskEnabled,
+            Map<String, EndpointStats> endpoints
+    ) {}
+}
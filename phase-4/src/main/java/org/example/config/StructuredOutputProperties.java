@@ -0,0 +1,249 @@
+package org.example.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 结构化输出配置属性
+ * 
+ * 配置项前缀: app.structured
+ * 可在 application.yml 中配置：
+ * app:
+ *   structured:
+ *     native-json: false
+ *     batch:
+ *       concurrency: 8
+ *       item-timeout: 60s
+ *       max-items: 1000
+ *       pack-size: 10
+ *     cache:
+ *       enabled: true
+ *       max-memory-chars: 16000000
+ *       default-ttl: 1h
+ *       ttl:
+ *         actor: 24h
+ *         topic: 6h
+ *       disk:
+ *         enabled: false
+ *         directory: ./cache/structured
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.structured")
+public class StructuredOutputProperties {
+
+    /**
+     * 是否使用模型原生的 JSON 输出模式
+     * 开启后 Bean 类型使用 JSON Schema 响应格式（不再在提示词中附带格式指令），Map 类型使用 JSON 对象模式；
+     * 只对 OpenAI 模型生效，且上游需要支持 response_format，不支持时保持关闭
+     */
+    private boolean nativeJson = false;
+
+    /**
+     * 批量提取配置
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 响应缓存配置
+     */
+    private Cache cache = new Cache();
+
+    public boolean isNativeJson() {
+        return nativeJson;
+    }
+
+    public void setNativeJson(boolean nativeJson) {
+        this.nativeJson = nativeJson;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 批量提取配置
+     */
+    public static class Batch {
+
+        /**
+         * 同时进行的模型调用数
+         */
+        private int concurrency = 8;
+
+        /**
+         * 单个条目的超时时间；打包调用的超时时间按条目数累加
+         */
+        private Duration itemTimeout = Duration.ofSeconds(60);
+
+        /**
+         * 单次请求最多包含的条目数
+         */
+        private int maxItems = 1000;
+
+        /**
+         * 打包模式下一次模型调用处理的条目数
+         */
+        private int packSize = 10;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Duration getItemTimeout() {
+            return itemTimeout;
+        }
+
+        public void setItemTimeout(Duration itemTimeout) {
+            this.itemTimeout = itemTimeout;
+        }
+
+        public int getMaxItems() {
+            return maxItems;
+        }
+
+        public void setMaxItems(int maxItems) {
+            this.maxItems = maxItems;
+        }
+
+        public int getPackSize() {
+            return packSize;
+        }
+
+        public void setPackSize(int packSize) {
+            this.packSize = packSize;
+        }
+    }
+
+    /**
+     * 响应缓存配置
+     */
+    public static class Cache {
+
+        /**
+         * 是否启用响应缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 内存中缓存内容的总字符数上限，超出后按 LRU 淘汰
+         */
+        private long maxMemoryChars = 16_000_000;
+
+        /**
+         * 未单独配置的端点使用的缓存时间
+         */
+        private Duration defaultTtl = Duration.ofHours(1);
+
+        /**
+         * 按端点配置的缓存时间（actor、product、topic、compare、suggestions、keywords、steps），0 表示不缓存
+         */
+        private Map<String, Duration> ttl = new HashMap<>();
+
+        /**
+         * 本地磁盘缓存配置
+         */
+        private Disk disk = new Disk();
+
+        /**
+         * 获取端点的缓存时间
+         * 
+         * @param endpoint 端点名称
+         * @return 缓存时间
+         */
+        public Duration ttlFor(String endpoint) {
+            return ttl.getOrDefault(endpoint, defaultTtl);
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxMemoryChars() {
+            return maxMemoryChars;
+        }
+
+        public void setMaxMemoryChars(long maxMemoryChars) {
+            this.maxMemoryChars = maxMemoryChars;
+        }
+
+        public Duration getDefaultTtl() {
+            return defaultTtl;
+        }
+
+        public void setDefaultTtl(Duration defaultTtl) {
+            this.defaultTtl = defaultTtl;
+        }
+
+        public Map<String, Duration> getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Map<String, Duration> ttl) {
+            this.ttl = ttl;
+        }
+
+        public Disk getDisk() {
+            return disk;
+        }
+
+        public void setDisk(Disk disk) {
+            this.disk = disk;
+        }
+    }
+
+    /**
+     * 本地磁盘缓存配置
+     */
+    public static class Disk {
+
+        /**
+         * 是否启用磁盘缓存（每个条目一个文件，重启后仍然有效）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓存目录
+         */
+        private String directory = "./cache/structured";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package org.example.controller;
 
+import org.example.cache.StructuredResponseCache;
+import org.example.converter.StructuredEvent;
 import org.example.entity.MovieActor;
 import org.example.entity.ProductInfo;
+import org.example.service.BatchExtractionService;
+import org.example.service.BatchExtractionService.BatchResult;
 import org.example.service.StructuredOutputService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -20,6 +26,13 @@ import java.util.Map;
  * 2. MapOutputConverter - 将 AI 输出转换为 Map 结构
  * 3. ListOutputConverter - 将 AI 输出转换为 List 结构
  * 
+ * 产品信息和演员信息另有批量版本（/api/structured/batch/*），并发处理多个条目并返回部分失败的结果。
+ * 
+ * 每个端点在 /api/structured/stream 下都有对应的 SSE 版本，字段或列表元素一生成完整就推送，
+ * 最后推送 done 事件（完整结果）；出错时推送 error 事件。
+ * 
+ * 响应缓存的命中率等统计信息见 /api/structured/cache/stats。
+ * 
  * 参考文档：https://docs.springframework.org.cn/spring-ai/reference/api/structured-output-converter.html
  * 
  * @author Spring AI Course
@@ -31,9 +44,15 @@ public class StructuredOutputController {
     private static final Logger logger = LoggerFactory.getLogger(StructuredOutputController.class);
 
     private final StructuredOutputService structuredOutputService;
+    private final BatchExtractionService batchExtractionService;
+    private final StructuredResponseCache responseCache;
 
-    public StructuredOutputController(StructuredOutputService structuredOutputService) {
+    public StructuredOutputController(StructuredOutputService structuredOutputService,
+                                      BatchExtractionService batchExtractionService,
+                                      StructuredResponseCache responseCache) {
         this.structuredOutputService = structuredOutputService;
+        this.batchExtractionService = batchExtractionService;
+        this.responseCache = responseCache;
     }
 
     // ==================== BeanOutputConverter API ====================
@@ -164,6 +183,144 @@ public class StructuredOutputController {
                 .doOnError(error -> logger.error("获取任务步骤失败: {}", error.getMessage()));
     }
 
+    // ==================== 批量 API ====================
+
+    /**
+     * 批量生成产品信息
+     * 
+     * @param request 产品描述列表，以及是否打包调用
+     * @return 按输入顺序排列的结果，失败的条目带错误信息
+     */
+    @PostMapping("/batch/product")
+    public Mono<ResponseEntity<BatchResult<ProductInfo>>> generateProductInfos(
+            @RequestBody BatchProductRequest request) {
+        logger.info("批量生成产品信息，条目数: {}, 打包: {}", sizeOf(request.descriptions()), request.packed());
+        return batchExtractionService.generateProductInfos(request.descriptions(), request.packed())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * 批量获取演员电影信息
+     * 
+     * @param request 演员名称列表，以及是否打包调用
+     * @return 按输入顺序排列的结果，失败的条目带错误信息
+     */
+    @PostMapping("/batch/actor")
+    public Mono<ResponseEntity<BatchResult<MovieActor>>> getActorMoviesBatch(
+            @RequestBody BatchActorRequest request) {
+        logger.info("批量获取演员信息，条目数: {}, 打包: {}", sizeOf(request.actorNames()), request.packed());
+        return batchExtractionService.getActorMovies(request.actorNames(), request.packed())
+                .map(ResponseEntity::ok);
+    }
+
+    private static int sizeOf(List<String> items) {
+        return items != null ? items.size() : 0;
+    }
+
+    // ==================== 缓存 API ====================
+
+    /**
+     * 获取响应缓存统计信息
+     * 
+     * @return 命中率、内存占用和按端点的命中次数
+     */
+    @GetMapping("/cache/stats")
+    public Mono<StructuredResponseCache.Stats> getCacheStats() {
+        return Mono.fromSupplier(responseCache::stats);
+    }
+
+    // ==================== 流式 API ====================
+
+    /**
+     * 流式获取演员电影信息
+     * 
+     * @param actorName 演员名称
+     * @return 结构化输出事件流
+     */
+    @GetMapping(value = "/stream/actor", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamActorMovies(@RequestParam String actorName) {
+        logger.info("流式获取演员信息: {}", actorName);
+        return structuredOutputService.streamActorMovies(actorName);
+    }
+
+    /**
+     * 流式生成产品信息
+     * 
+     * @param request 包含产品描述的请求
+     * @return 结构化输出事件流
+     */
+    @PostMapping(value = "/stream/product", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamProductInfo(@RequestBody ProductDescriptionRequest request) {
+        logger.info("流式生成产品信息，描述: {}", request.description());
+        return structuredOutputService.streamProductInfo(request.description());
+    }
+
+    /**
+     * 流式分析主题
+     * 
+     * @param topic 主题
+     * @return 结构化输出事件流
+     */
+    @GetMapping(value = "/stream/topic", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamAnalyzeTopic(@RequestParam String topic) {
+        logger.info("流式分析主题: {}", topic);
+        return structuredOutputService.streamAnalyzeTopic(topic);
+    }
+
+    /**
+     * 流式对比两个产品
+     * 
+     * @param product1 产品1名称
+     * @param product2 产品2名称
+     * @return 结构化输出事件流
+     */
+    @GetMapping(value = "/stream/compare", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamCompareProducts(
+            @RequestParam String product1,
+            @RequestParam String product2) {
+        logger.info("流式对比产品: {} vs {}", product1, product2);
+        return structuredOutputService.streamCompareProducts(product1, product2);
+    }
+
+    /**
+     * 流式获取建议列表
+     * 
+     * @param category 类别
+     * @param count 数量（可选，默认5）
+     * @return 结构化输出事件流
+     */
+    @GetMapping(value = "/stream/suggestions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamSuggestions(
+            @RequestParam String category,
+            @RequestParam(defaultValue = "5") int count) {
+        logger.info("流式获取建议列表，类别: {}, 数量: {}", category, count);
+        return structuredOutputService.streamSuggestions(category, count);
+    }
+
+    /**
+     * 流式提取关键词
+     * 
+     * @param request 包含文本和关键词数量的请求
+     * @return 结构化输出事件流
+     */
+    @PostMapping(value = "/stream/keywords", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamKeywords(@RequestBody KeywordExtractionRequest request) {
+        logger.info("流式提取关键词，文本长度: {}, 数量: {}", request.text().length(), request.count());
+        return structuredOutputService.streamKeywords(request.text(), request.count());
+    }
+
+    /**
+     * 流式获取任务步骤
+     * 
+     * @param task 任务描述
+     * @return 结构化输出事件流
+     */
+    @GetMapping(value = "/stream/steps", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredEvent> streamTaskSteps(@RequestParam String task) {
+        logger.info("流式获取任务步骤: {}", task);
+        return structuredOutputService.streamTaskSteps(task);
+    }
+
     // ==================== 请求/响应记录 ====================
 
     /**
@@ -177,4 +334,16 @@ public class StructuredOutputController {
      */
     public record KeywordExtractionRequest(String text, int count) {
     }
+
+    /**
+     * 批量产品信息请求
+     */
+    public record BatchProductRequest(List<String> descriptions, boolean packed) {
+    }
+
+    /**
+     * 批量演员信息请求
+     */
+    public record BatchActorRequest(List<String> actorNames, boolean packed) {
+    }
 }
@@ -0,0 +1,178 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量 JSON 解析器
+ * 
+ * 把模型流式输出的片段依次喂给 Jackson 的非阻塞解析器，值一旦完整就立即产生事件，
+ * 不必等整个响应生成完毕：
+ * 1. 根对象 - 每个顶层字段完整后产生 field 事件；值为数组的字段按元素产生 item 事件
+ * 2. 根数组 - 每个元素完整后产生 item 事件
+ * 
+ * 第一个 '{' 或 '[' 之前的内容（例如 ```json 代码块标记）被跳过，根值结束后的内容被忽略。
+ * 解析是尽力而为的：遇到非法 JSON 时停止增量解析，最终结果仍以转换器解析完整响应为准。
+ * 
+ * 每个流创建一个实例，非线程安全。
+ */
+public class IncrementalJsonParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalJsonParser.class);
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean started;
+    private boolean finished;
+    private boolean rootArray;
+
+    /**
+     * 当前所在的嵌套层级（不含正在捕获的值）：1 = 根，2 = 顶层字段的数组
+     */
+    private int depth;
+    private String field;
+    private int index;
+
+    /**
+     * 正在捕获的值，完整后转换为 JsonNode
+     */
+    private TokenBuffer capture;
+    private int nesting;
+    private boolean captureElement;
+
+    public IncrementalJsonParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建非阻塞 JSON 解析器", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * 输入一个输出片段
+     * 
+     * @param chunk 模型输出的片段
+     * @return 本片段使其完整的字段和元素
+     */
+    public List<StructuredEvent> feed(String chunk) {
+        if (finished || chunk == null || chunk.isEmpty()) {
+            return List.of();
+        }
+        if (!started) {
+            int start = firstJsonStart(chunk);
+            if (start < 0) {
+                return List.of();
+            }
+            chunk = chunk.substring(start);
+            started = true;
+        }
+
+        List<StructuredEvent> events = new ArrayList<>();
+        try {
+            byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!finished && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE) {
+                if (token == null) {
+                    finished = true;
+                } else {
+                    handle(token, events);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("增量解析中止，等待完整响应: {}", e.getMessage());
+            finished = true;
+        }
+        return events;
+    }
+
+    private void handle(JsonToken token, List<StructuredEvent> events) throws IOException {
+        if (capture != null) {
+            capture.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                nesting++;
+            } else if (token.isStructEnd()) {
+                nesting--;
+            }
+            if (nesting == 0) {
+                emitCaptured(events);
+            }
+            return;
+        }
+
+        if (depth == 0) {
+            // 根值：只有对象和数组可以增量输出
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth = 1;
+                rootArray = token == JsonToken.START_ARRAY;
+            } else {
+                finished = true;
+            }
+            return;
+        }
+        if (token.isStructEnd()) {
+            depth--;
+            finished = depth == 0;
+            return;
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            field = parser.currentName();
+            return;
+        }
+
+        boolean element = rootArray ? depth == 1 : depth == 2;
+        if (!element && token == JsonToken.START_ARRAY) {
+            // 顶层字段的数组：逐个元素输出
+            depth = 2;
+            index = 0;
+            return;
+        }
+        startCapture(token, element);
+        if (nesting == 0) {
+            emitCaptured(events);
+        }
+    }
+
+    private void startCapture(JsonToken token, boolean element) throws IOException {
+        capture = new TokenBuffer(parser);
+        capture.copyCurrentEvent(parser);
+        captureElement = element;
+        nesting = token.isStructStart() ? 1 : 0;
+    }
+
+    private void emitCaptured(List<StructuredEvent> events) throws IOException {
+        JsonNode value;
+        try (JsonParser captured = capture.asParser()) {
+            value = objectMapper.readTree(captured);
+        }
+        capture = null;
+        events.add(captureElement
+                ? StructuredEvent.item(rootArray ? null : field, index++, value)
+                : StructuredEvent.field(field, value));
+    }
+
+    private int firstJsonStart(String chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量列表解析器
+ * 
+ * 与 ListOutputConverter 一样按英文逗号切分模型输出，但在流式输出中每遇到一个逗号就立即产生
+ * 前一个元素的 item 事件，最后一个元素在 finish() 时产生。
+ * 
+ * 每个流创建一个实例，非线程安全。
+ */
+public class IncrementalListParser {
+
+    private final StringBuilder pending = new StringBuilder();
+    private int index;
+
+    /**
+     * 输入一个输出片段
+     * 
+     * @param chunk 模型输出的片段
+     * @return 本片段使其完整的元素
+     */
+    public List<StructuredEvent> feed(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return List.of();
+        }
+        List<StructuredEvent> events = new ArrayList<>();
+        int from = 0;
+        int comma;
+        while ((comma = chunk.indexOf(',', from)) >= 0) {
+            pending.append(chunk, from, comma);
+            emit(events);
+            from = comma + 1;
+        }
+        pending.append(chunk, from, chunk.length());
+        return events;
+    }
+
+    /**
+     * 输出结束，产生最后一个元素
+     * 
+     * @return 最后一个元素（为空时没有事件）
+     */
+    public List<StructuredEvent> finish() {
+        List<StructuredEvent> events = new ArrayList<>(1);
+        emit(events);
+        return events;
+    }
+
+    private void emit(List<StructuredEvent> events) {
+        String item = pending.toString().trim();
+        pending.setLength(0);
+        if (!item.isEmpty()) {
+            events.add(StructuredEvent.item(null, index++, item));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.example.converter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 模型输出中 JSON 的提取与修复
+ * 
+ * 模型返回的 JSON 常见的小问题：
+ * 1. 前后夹带说明文字或 Markdown 代码块标记 - extract() 只取第一个完整的 JSON 对象或数组
+ * 2. 输出被截断（达到 max tokens）- repair() 补齐未闭合的字符串、悬空的键和括号
+ * 
+ * 只做括号和字符串层面的扫描，不做完整的语法解析；尾随逗号、单引号等由宽松模式的 Jackson 解析处理。
+ */
+public final class JsonRepair {
+
+    private JsonRepair() {
+    }
+
+    /**
+     * 提取第一个完整的 JSON 对象或数组，忽略其前后的内容
+     * 
+     * @param text 模型输出
+     * @return JSON 文本；没有 JSON 或 JSON 不完整（被截断）时返回 null
+     */
+    public static String extract(String text) {
+        int start = start(text);
+        if (start < 0) {
+            return null;
+        }
+        Deque<Character> closers = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escape = false;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{' -> closers.push('}');
+                case '[' -> closers.push(']');
+                case '}', ']' -> {
+                    if (closers.isEmpty() || closers.peek() != c) {
+                        return null;
+                    }
+                    closers.pop();
+                    if (closers.isEmpty()) {
+                        return text.substring(start, i + 1);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 修复被截断的 JSON：闭合字符串，去掉末尾的逗号和不完整的值，为悬空的键补 null，再补齐括号
+     * 
+     * @param text 模型输出
+     * @return 修复后的 JSON 文本；没有 JSON 时返回 null
+     */
+    public static String repair(String text) {
+        int start = start(text);
+        if (start < 0) {
+            return null;
+        }
+        // 每层括号：闭合字符，以及对象当前是否处于"等待键"的位置
+        Deque<Character> closers = new ArrayDeque<>();
+        Deque<Boolean> keyPositions = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escape = false;
+        int end = text.length();
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{' -> {
+                    closers.push('}');
+                    keyPositions.push(true);
+                }
+                case '[' -> {
+                    closers.push(']');
+                    keyPositions.push(false);
+                }
+                case ':' -> replaceTop(keyPositions, false);
+                case ',' -> replaceTop(keyPositions, !closers.isEmpty() && closers.peek() == '}');
+                case '}', ']' -> {
+                    if (closers.isEmpty() || closers.peek() != c) {
+                        end = i;
+                    } else {
+                        closers.pop();
+                        keyPositions.pop();
+                        if (closers.isEmpty()) {
+                            return text.substring(start, i + 1);
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+            if (end != text.length()) {
+                break;
+            }
+        }
+
+        StringBuilder json = new StringBuilder(text.substring(start, end));
+        if (inString) {
+            if (escape) {
+                json.setLength(json.length() - 1);
+            }
+            json.append('"');
+        }
+        boolean inObject = !closers.isEmpty() && closers.peek() == '}';
+        // 只有键没有值，如 {"a":1,"b"
+        boolean danglingKey = inObject && Boolean.TRUE.equals(keyPositions.peek()) && lastSignificant(json) == '"';
+        trimIncompleteValue(json);
+        if (danglingKey) {
+            json.append(":null");
+        } else if (inObject && lastSignificant(json) == ':') {
+            json.append("null");
+        }
+        while (!closers.isEmpty()) {
+            json.append(closers.pop());
+        }
+        return json.toString();
+    }
+
+    /**
+     * 去掉末尾的空白、逗号，以及不完整的字面量（如 tru、12.）
+     */
+    private static void trimIncompleteValue(StringBuilder json) {
+        while (true) {
+            int length = json.length();
+            while (length > 0 && Character.isWhitespace(json.charAt(length - 1))) {
+                length--;
+            }
+            json.setLength(length);
+            if (length == 0) {
+                return;
+            }
+            char last = json.charAt(length - 1);
+            if (last == ',') {
+                json.setLength(length - 1);
+                continue;
+            }
+            if (Character.isLetterOrDigit(last) || last == '.' || last == '-' || last == '+') {
+                int from = length;
+                while (from > 0 && isLiteralChar(json.charAt(from - 1))) {
+                    from--;
+                }
+                String literal = json.substring(from, length);
+                if (!isCompleteLiteral(literal)) {
+                    json.setLength(from);
+                    // 去掉字面量后可能留下悬空的逗号
+                    continue;
+                }
+            }
+            return;
+        }
+    }
+
+    private static boolean isLiteralChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '+';
+    }
+
+    private static boolean isCompleteLiteral(String literal) {
+        if (literal.equals("true") || literal.equals("false") || literal.equals("null")) {
+            return true;
+        }
+        char last = literal.charAt(literal.length() - 1);
+        return Character.isDigit(last) && (Character.isDigit(literal.charAt(0)) || literal.charAt(0) == '-');
+    }
+
+    private static char lastSignificant(CharSequence json) {
+        for (int i = json.length() - 1; i >= 0; i--) {
+            char c = json.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static void replaceTop(Deque<Boolean> stack, boolean value) {
+        if (!stack.isEmpty()) {
+            stack.pop();
+            stack.push(value);
+        }
+    }
+
+    private static int start(String text) {
+        if (text == null) {
+            return -1;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 轻量的 JSON Schema 校验
+ * 
+ * 只支持 BeanOutputConverter 生成的 Schema 中用到的关键字：type、properties、required、items。
+ * 数值类型接受数字形式的字符串（Jackson 反序列化时会自动转换），与实际能否转换为目标类型保持一致。
+ */
+public final class JsonSchemaValidator {
+
+    /**
+     * 最多收集的错误数，错误描述会放进修复提示词，不需要全部列出
+     */
+    private static final int MAX_ERRORS = 10;
+
+    private JsonSchemaValidator() {
+    }
+
+    /**
+     * 校验 JSON 是否符合 Schema
+     * 
+     * @param value 待校验的 JSON
+     * @param schema JSON Schema
+     * @return 错误描述列表，为空表示校验通过
+     */
+    public static List<String> validate(JsonNode value, JsonNode schema) {
+        List<String> errors = new ArrayList<>();
+        validate(value, schema, "$", errors);
+        return errors;
+    }
+
+    private static void validate(JsonNode value, JsonNode schema, String path, List<String> errors) {
+        if (schema == null || errors.size() >= MAX_ERRORS) {
+            return;
+        }
+        JsonNode type = schema.get("type");
+        if (type != null && !matchesType(value, type)) {
+            errors.add(path + " 应为 " + (type.isArray() ? type.toString() : type.asText()) + "，实际为 " + value.getNodeType().name().toLowerCase(Locale.ROOT));
+            return;
+        }
+
+        if (value.isObject()) {
+            JsonNode required = schema.get("required");
+            if (required != null) {
+                for (JsonNode name : required) {
+                    JsonNode field = value.get(name.asText());
+                    if (field == null || field.isNull()) {
+                        errors.add(path + "." + name.asText() + " 缺失");
+                    }
+                }
+            }
+            JsonNode properties = schema.get("properties");
+            if (properties != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = properties.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> property = fields.next();
+                    JsonNode field = value.get(property.getKey());
+                    if (field != null && !field.isNull()) {
+                        validate(field, property.getValue(), path + "." + property.getKey(), errors);
+                    }
+                }
+            }
+        } else if (value.isArray()) {
+            JsonNode items = schema.get("items");
+            if (items != null) {
+                for (int i = 0; i < value.size(); i++) {
+                    validate(value.get(i), items, path + "[" + i + "]", errors);
+                }
+            }
+        }
+    }
+
+    private static boolean matchesType(JsonNode value, JsonNode type) {
+        if (type.isArray()) {
+            for (JsonNode candidate : type) {
+                if (matchesType(value, candidate.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return matchesType(value, type.asText());
+    }
+
+    private static boolean matchesType(JsonNode value, String type) {
+        return switch (type) {
+            case "object" -> value.isObject();
+            case "array" -> value.isArray();
+            case "string" -> value.isTextual();
+            case "boolean" -> value.isBoolean();
+            case "null" -> value.isNull();
+            case "integer" -> value.isIntegralNumber()
+                    || (value.isNumber() && value.decimalValue().stripTrailingZeros().scale() <= 0)
+                    || (value.isTextual() && isNumber(value.asText(), true));
+            case "number" -> value.isNumber() || (value.isTextual() && isNumber(value.asText(), false));
+            default -> true;
+        };
+    }
+
+    private static boolean isNumber(String text, boolean integral) {
+        try {
+            if (integral) {
+                Long.parseLong(text.trim());
+            } else {
+                Double.parseDouble(text.trim());
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
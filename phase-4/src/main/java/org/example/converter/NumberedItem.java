@@ -0,0 +1,11 @@
+package org.example.converter;
+
+/**
+ * 打包调用返回的数组元素：模型回显的条目编号和该条目的结果
+ * 
+ * 按编号而不是数组位置对应输入，模型漏掉、重复或调换条目时不会把结果错配给其他输入。
+ * 
+ * @param item 条目编号（与提示词中的编号一致，从 1 开始）
+ * @param result 该条目的结果
+ */
+public record NumberedItem<T>(Integer item, T result) {}
@@ -0,0 +1,144 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.example.entity.MovieActor;
+import org.example.entity.ProductInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.converter.ListOutputConverter;
+import org.springframework.ai.converter.MapOutputConverter;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 结构化输出转换器注册表
+ * 
+ * 转换器本身是无状态、线程安全的，但创建成本不低：
+ * 1. BeanOutputConverter - 构造时通过反射生成 JSON Schema，getFormat() 每次都会重新拼接格式指令
+ * 2. ListOutputConverter - 依赖的 DefaultConversionService 需要注册上百个内置转换器
+ * 
+ * 因此每种目标类型只在启动时创建一次转换器，同时缓存格式指令和 Jackson ObjectReader，
+ * 之后所有请求共享同一份实例。
+ */
+@Component
+public class OutputConverterRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputConverterRegistry.class);
+
+    /**
+     * 启动时预先注册的 Bean 类型
+     */
+    private static final List<Class<?>> PRELOADED_TYPES = List.of(MovieActor.class, ProductInfo.class);
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, BeanSpec<?>> beans = new ConcurrentHashMap<>();
+    private final Map<Class<?>, BeanSpec<?>> lists = new ConcurrentHashMap<>();
+
+    private final MapOutputConverter mapConverter = new MapOutputConverter();
+    private final String mapFormat = mapConverter.getFormat();
+
+    private final ListOutputConverter listConverter = new ListOutputConverter(new DefaultConversionService());
+    private final String listFormat = listConverter.getFormat();
+
+    public OutputConverterRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        for (Class<?> type : PRELOADED_TYPES) {
+            bean(type);
+        }
+        logger.info("结构化输出转换器已注册: {}", beans.keySet());
+    }
+
+    /**
+     * 获取 Bean 类型的转换器信息，未注册的类型在首次使用时创建并缓存
+     * 
+     * @param type 目标类型
+     * @return 转换器信息
+     */
+    @SuppressWarnings("unchecked")
+    public <T> BeanSpec<T> bean(Class<T> type) {
+        return (BeanSpec<T>) beans.computeIfAbsent(type, this::createBeanSpec);
+    }
+
+    /**
+     * 获取带编号的元素列表类型的转换器信息（用于一次调用返回多个条目，每个元素回显条目编号），
+     * 首次使用时创建并缓存
+     * 
+     * @param elementType 元素类型
+     * @return 转换器信息
+     */
+    @SuppressWarnings("unchecked")
+    public <T> BeanSpec<List<NumberedItem<T>>> numberedListOf(Class<T> elementType) {
+        return (BeanSpec<List<NumberedItem<T>>>) lists.computeIfAbsent(elementType, this::createNumberedListSpec);
+    }
+
+    public MapOutputConverter mapConverter() {
+        return mapConverter;
+    }
+
+    public String mapFormat() {
+        return mapFormat;
+    }
+
+    public ListOutputConverter listConverter() {
+        return listConverter;
+    }
+
+    public String listFormat() {
+        return listFormat;
+    }
+
+    private <T> BeanSpec<T> createBeanSpec(Class<T> type) {
+        BeanOutputConverter<T> converter = new BeanOutputConverter<>(type, objectMapper);
+        String format = converter.getFormat();
+        logger.debug("生成 {} 的格式指令: {}", type.getSimpleName(), format);
+        return new BeanSpec<>(converter, format, converter.getJsonSchema(), readSchema(converter.getJsonSchema()),
+                objectMapper.readerFor(type));
+    }
+
+    private <T> BeanSpec<List<NumberedItem<T>>> createNumberedListSpec(Class<T> elementType) {
+        ResolvableType itemType = ResolvableType.forClassWithGenerics(NumberedItem.class, elementType);
+        ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, itemType);
+        BeanOutputConverter<List<NumberedItem<T>>> converter =
+                new BeanOutputConverter<>(ParameterizedTypeReference.forType(listType.getType()), objectMapper);
+        JavaType javaType = objectMapper.getTypeFactory().constructCollectionType(List.class,
+                objectMapper.getTypeFactory().constructParametricType(NumberedItem.class, elementType));
+        return new BeanSpec<>(converter, converter.getFormat(), converter.getJsonSchema(),
+                readSchema(converter.getJsonSchema()), objectMapper.readerFor(javaType));
+    }
+
+    private JsonNode readSchema(String schema) {
+        try {
+            return objectMapper.readTree(schema);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("无法解析生成的 JSON Schema", e);
+        }
+    }
+
+    /**
+     * Bean 类型的转换器信息
+     * 
+     * @param converter 转换器
+     * @param format 格式指令（包含 JSON Schema），用于填充提示词中的 {format}
+     * @param schema JSON Schema 文本
+     * @param schemaTree 解析后的 JSON Schema，用于校验模型输出
+     * @param reader 目标类型的 Jackson 读取器，用于直接解析已是纯 JSON 的内容
+     */
+    public record BeanSpec<T>(
+            BeanOutputConverter<T> converter,
+            String format,
+            String schema,
+            JsonNode schemaTree,
+            ObjectReader reader
+    ) {}
+}
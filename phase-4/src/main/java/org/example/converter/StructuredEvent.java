@@ -0,0 +1,36 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 流式结构化输出事件
+ * 
+ * - field：顶层字段的值已完整生成
+ * - item：数组（顶层字段的数组或根数组）中的一个元素已完整生成
+ * - done：完整响应已生成，value 为转换器解析出的最终结果
+ * - error：生成或解析失败，value 为错误信息
+ * 
+ * @param type 事件类型
+ * @param field 字段名（根数组的元素为 null）
+ * @param index 元素在数组中的下标（只有 item 事件有）
+ * @param value 字段值、元素值、最终结果或错误信息
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StructuredEvent(String type, String field, Integer index, Object value) {
+
+    public static StructuredEvent field(String field, Object value) {
+        return new StructuredEvent("field", field, null, value);
+    }
+
+    public static StructuredEvent item(String field, int index, Object value) {
+        return new StructuredEvent("item", field, index, value);
+    }
+
+    public static StructuredEvent done(Object value) {
+        return new StructuredEvent("done", null, null, value);
+    }
+
+    public static StructuredEvent error(String message) {
+        return new StructuredEvent("error", null, null, message);
+    }
+}
@@ -0,0 +1,223 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.example.converter.OutputConverterRegistry.BeanSpec;
+import org.example.exception.StructuredOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 容错的结构化输出解析
+ * 
+ * 在转换器之前增加一层容错处理，模型输出有小问题时不必让客户端重新发起整个请求：
+ * 1. 提取 - 去掉 Markdown 代码块标记和前后的说明文字，只取第一个完整的 JSON
+ * 2. 修复 - 输出被截断时补齐字符串、悬空的键和括号；尾随逗号、单引号等由宽松模式的 Jackson 解析
+ * 3. 校验 - 按目标类型的 JSON Schema 检查字段是否齐全、类型是否正确
+ * 4. 修正调用 - 以上都失败时，把原始输出和错误信息交给模型修正（不重新生成内容），只修正一次
+ * 
+ * parse / parseMap 的修正调用是阻塞的，调用方需要在 boundedElastic 线程上执行；
+ * parseAsync / parseMapAsync 以流式方式发起修正调用，可以随超时一起取消。
+ */
+@Component
+public class StructuredOutputParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(StructuredOutputParser.class);
+
+    private static final String FIX_PROMPT = """
+            下面的 JSON 没有通过校验，错误如下：
+            {errors}
+
+            请只修正格式和类型问题，不要改写已有的内容，使其符合下面的 JSON Schema。
+            只返回修正后的 JSON，不要包含任何解释或 Markdown 代码块。
+
+            JSON Schema：
+            {schema}
+
+            原始 JSON：
+            {json}
+            """;
+
+    /**
+     * Map 类型没有具体的 Schema，只要求是 JSON 对象
+     */
+    private static final String OBJECT_SCHEMA = "{\"type\": \"object\"}";
+
+    private final ChatClient chatClient;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader lenientReader;
+    private final JsonNode objectSchema;
+    private final PromptTemplate fixTemplate;
+
+    public StructuredOutputParser(ChatModel chatModel, ObjectMapper objectMapper) {
+        this.chatClient = ChatClient.builder(chatModel).build();
+        this.objectMapper = objectMapper;
+        this.lenientReader = objectMapper.reader()
+                .with(JsonReadFeature.ALLOW_TRAILING_COMMA)
+                .with(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+                .with(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+                .with(JsonReadFeature.ALLOW_JAVA_COMMENTS);
+        this.objectSchema = objectMapper.createObjectNode().put("type", "object");
+        this.fixTemplate = PromptTemplate.builder()
+                .template(FIX_PROMPT)
+                .build();
+    }
+
+    /**
+     * 把模型输出解析为 Bean 类型（包括 List 类型）
+     * 
+     * @param response 模型输出
+     * @param spec 目标类型的转换器信息
+     * @return 解析结果
+     * @throws StructuredOutputException 修正后仍无法解析
+     */
+    public <T> T parse(String response, BeanSpec<T> spec) {
+        return parse(response, spec.schema(), spec.schemaTree(), spec.reader());
+    }
+
+    /**
+     * 把模型输出解析为 Map
+     * 
+     * @param response 模型输出
+     * @return 解析结果
+     * @throws StructuredOutputException 修正后仍无法解析
+     */
+    public Map<String, Object> parseMap(String response) {
+        return parse(response, OBJECT_SCHEMA, objectSchema, objectMapper.readerForMapOf(Object.class));
+    }
+
+    /**
+     * 把模型输出解析为 Bean 类型，修正调用以流式方式进行（取消订阅时中止调用，不占用线程）
+     * 
+     * @param response 模型输出
+     * @param spec 目标类型的转换器信息
+     * @return 解析结果；修正后仍无法解析时以 StructuredOutputException 结束
+     */
+    public <T> Mono<T> parseAsync(String response, BeanSpec<T> spec) {
+        return parseAsync(response, spec.schema(), spec.schemaTree(), spec.reader());
+    }
+
+    /**
+     * 把模型输出解析为 Map，修正调用以流式方式进行
+     * 
+     * @param response 模型输出
+     * @return 解析结果；修正后仍无法解析时以 StructuredOutputException 结束
+     */
+    public Mono<Map<String, Object>> parseMapAsync(String response) {
+        return parseAsync(response, OBJECT_SCHEMA, objectSchema, objectMapper.readerForMapOf(Object.class));
+    }
+
+    private <T> T parse(String response, String schema, JsonNode schemaTree, ObjectReader reader) {
+        Attempt<T> attempt = tryParse(response, schemaTree, reader);
+        if (attempt.value() != null) {
+            return attempt.value();
+        }
+
+        logger.info("结构化输出无法直接解析，请求模型修正: {}", attempt.error());
+        String fixed = chatClient.prompt(fixPrompt(response, schema, attempt))
+                .call()
+                .content();
+        return retry(fixed, schemaTree, reader);
+    }
+
+    private <T> Mono<T> parseAsync(String response, String schema, JsonNode schemaTree, ObjectReader reader) {
+        return Mono.defer(() -> {
+            Attempt<T> attempt = tryParse(response, schemaTree, reader);
+            if (attempt.value() != null) {
+                return Mono.just(attempt.value());
+            }
+
+            logger.info("结构化输出无法直接解析，请求模型修正: {}", attempt.error());
+            return chatClient.prompt(fixPrompt(response, schema, attempt))
+                    .stream()
+                    .content()
+                    .collect(Collectors.joining())
+                    .map(fixed -> retry(fixed, schemaTree, reader));
+        });
+    }
+
+    /**
+     * 修正调用的提示词：原始输出（或提取出的 JSON）、错误信息和 JSON Schema
+     */
+    private Prompt fixPrompt(String response, String schema, Attempt<?> attempt) {
+        String json = attempt.json() != null ? attempt.json() : response;
+        return new Prompt(fixTemplate.createMessage(Map.of(
+                "errors", attempt.error(),
+                "schema", schema,
+                "json", json == null ? "" : json
+        )));
+    }
+
+    /**
+     * 解析修正后的输出，仍失败时抛出异常
+     */
+    private <T> T retry(String fixed, JsonNode schemaTree, ObjectReader reader) {
+        Attempt<T> retry = tryParse(fixed, schemaTree, reader);
+        if (retry.value() != null) {
+            return retry.value();
+        }
+        throw new StructuredOutputException("AI 输出无法解析为结构化结果: " + retry.error());
+    }
+
+    /**
+     * 不调用模型的解析：提取、修复、校验、转换
+     */
+    private <T> Attempt<T> tryParse(String response, JsonNode schemaTree, ObjectReader reader) {
+        if (response == null || response.isBlank()) {
+            return Attempt.failed(null, "响应为空");
+        }
+        String json = JsonRepair.extract(response);
+        if (json == null) {
+            json = JsonRepair.repair(response);
+            if (json == null) {
+                return Attempt.failed(null, "响应中没有 JSON");
+            }
+            logger.debug("修复了不完整的 JSON，原始长度: {}", response.length());
+        }
+
+        JsonNode tree;
+        try {
+            tree = lenientReader.readTree(json);
+        } catch (JsonProcessingException e) {
+            return Attempt.failed(json, "JSON 语法错误: " + e.getOriginalMessage());
+        }
+        List<String> errors = JsonSchemaValidator.validate(tree, schemaTree);
+        if (!errors.isEmpty()) {
+            return Attempt.failed(json, String.join("；", errors));
+        }
+        try {
+            T value = reader.readValue(tree);
+            return value != null ? new Attempt<>(value, json, null) : Attempt.failed(json, "结果为空");
+        } catch (IOException e) {
+            return Attempt.failed(json, "类型转换失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 一次解析的结果
+     * 
+     * @param value 解析结果（失败时为 null）
+     * @param json 提取或修复后的 JSON，修正调用时使用
+     * @param error 错误描述
+     */
+    private record Attempt<T>(T value, String json, String error) {
+
+        static <T> Attempt<T> failed(String json, String error) {
+            return new Attempt<>(null, json, error);
+        }
+    }
+}
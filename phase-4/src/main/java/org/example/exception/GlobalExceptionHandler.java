@@ -66,6 +66,30 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(error);
     }
     
+    /**
+     * 处理结构化输出解析异常
+     * 
+     * @param ex 异常
+     * @param exchange 请求交换对象
+     * @return 502 Bad Gateway
+     */
+    @ExceptionHandler(StructuredOutputException.class)
+    public ResponseEntity<ErrorResponse> handleStructuredOutputException(
+            StructuredOutputException ex, 
+            ServerWebExchange exchange) {
+        
+        log.warn("结构化输出解析失败: {}", ex.getMessage());
+        
+        ErrorResponse error = ErrorResponse.of(
+                HttpStatus.BAD_GATEWAY.value(),
+                HttpStatus.BAD_GATEWAY.getReasonPhrase(),
+                ex.getMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(error);
+    }
+    
     /**
      * 处理资源不存在异常
      * 
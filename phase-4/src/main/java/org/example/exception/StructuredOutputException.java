@@ -0,0 +1,17 @@
+package org.example.exception;
+
+/**
+ * 结构化输出解析异常
+ * 
+ * 模型输出经过提取、修复和修正调用后仍无法解析为目标类型时抛出
+ */
+public class StructuredOutputException extends ChatException {
+
+    public StructuredOutputException(String message) {
+        super(message);
+    }
+
+    public StructuredOutputException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,299 @@
+package org.example.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.example.config.StructuredOutputProperties;
+import org.example.converter.NumberedItem;
+import org.example.converter.OutputConverterRegistry;
+import org.example.converter.OutputConverterRegistry.BeanSpec;
+import org.example.converter.StructuredOutputParser;
+import org.example.entity.MovieActor;
+import org.example.entity.ProductInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 批量结构化提取服务
+ * 
+ * 一次请求处理多个条目（产品描述、演员名称），用于批量补全等离线任务：
+ * 1. 并发 - 条目并发调用模型，同时进行的调用数由 concurrency 限制，结果按输入顺序返回
+ * 2. 超时 - 每个条目单独计时，超时只影响该条目；模型以流式方式调用，超时时同时取消上游请求
+ * 3. 部分失败 - 失败的条目带错误信息返回，不影响其他条目
+ * 4. 打包 - 可选地把 packSize 个条目放进一次模型调用，按 JSON 数组返回，减少调用次数和重复的提示词开销
+ * 
+ * 打包模式总是在提示词中附带格式指令（原生 JSON Schema 模式要求根类型为对象）。
+ * 数组的每个元素回显条目编号，结果按编号对应输入；缺失或重复的编号对应的条目标记为失败。
+ */
+@Service
+public class BatchExtractionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchExtractionService.class);
+
+    private static final String PRODUCT_PACK_PROMPT = """
+            根据以下编号的产品描述，分别生成完整的产品信息：
+            {items}
+
+            每个产品请生成一个合理的产品名称、详细描述、价格、类别和库存数量。
+            返回一个 JSON 数组，每个产品对应一个元素：item 为该产品描述的编号，result 为该产品的信息。
+            每个编号必须恰好出现一次。
+            {format}
+            """;
+
+    private static final String ACTOR_PACK_PROMPT = """
+            为以下编号的演员分别生成电影作品信息：
+            {items}
+
+            每位演员包含最著名的5部电影和获得的3个重要奖项。
+            返回一个 JSON 数组，每位演员对应一个元素：item 为该演员的编号，result 为该演员的信息。
+            每个编号必须恰好出现一次。
+            {format}
+            """;
+
+    private final ChatClient chatClient;
+    private final StructuredOutputService structuredOutputService;
+    private final StructuredOutputParser outputParser;
+    private final StructuredOutputProperties.Batch config;
+
+    private final Pack<ProductInfo> productPack;
+    private final Pack<MovieActor> actorPack;
+
+    public BatchExtractionService(ChatModel chatModel,
+                                  StructuredOutputService structuredOutputService,
+                                  OutputConverterRegistry converters,
+                                  StructuredOutputParser outputParser,
+                                  StructuredOutputProperties properties) {
+        this.chatClient = ChatClient.builder(chatModel).build();
+        this.structuredOutputService = structuredOutputService;
+        this.outputParser = outputParser;
+        this.config = properties.getBatch();
+        this.productPack = Pack.of(PRODUCT_PACK_PROMPT, converters.numberedListOf(ProductInfo.class));
+        this.actorPack = Pack.of(ACTOR_PACK_PROMPT, converters.numberedListOf(MovieActor.class));
+    }
+
+    /**
+     * 批量生成产品信息
+     * 
+     * @param descriptions 产品描述列表
+     * @param packed 是否把多个条目打包到一次模型调用中
+     * @return 按输入顺序排列的结果
+     */
+    public Mono<BatchResult<ProductInfo>> generateProductInfos(List<String> descriptions, boolean packed) {
+        return run(descriptions, packed, structuredOutputService::generateProductInfo, productPack);
+    }
+
+    /**
+     * 批量获取演员电影信息
+     * 
+     * @param actorNames 演员名称列表
+     * @param packed 是否把多个条目打包到一次模型调用中
+     * @return 按输入顺序排列的结果
+     */
+    public Mono<BatchResult<MovieActor>> getActorMovies(List<String> actorNames, boolean packed) {
+        return run(actorNames, packed, structuredOutputService::getActorMovies, actorPack);
+    }
+
+    private <T> Mono<BatchResult<T>> run(List<String> inputs,
+                                         boolean packed,
+                                         Function<String, Mono<T>> single,
+                                         Pack<T> pack) {
+        return Mono.defer(() -> {
+            if (inputs == null || inputs.isEmpty()) {
+                return Mono.error(new IllegalArgumentException("批量请求的条目不能为空"));
+            }
+            if (inputs.size() > config.getMaxItems()) {
+                return Mono.error(new IllegalArgumentException(
+                        "批量请求最多包含 " + config.getMaxItems() + " 个条目，当前为 " + inputs.size()));
+            }
+
+            long start = System.currentTimeMillis();
+            int concurrency = Math.max(1, config.getConcurrency());
+            Flux<ItemResult<T>> results = packed && config.getPackSize() > 1
+                    ? Flux.fromIterable(chunks(inputs, config.getPackSize()))
+                            .flatMapSequential(chunk -> callPacked(chunk, pack), concurrency)
+                            .concatMapIterable(Function.identity())
+                    : Flux.range(0, inputs.size())
+                            .flatMapSequential(index -> callSingle(index, inputs.get(index), single), concurrency);
+
+            return results.collectList()
+                    .map(BatchResult::of)
+                    .doOnNext(result -> logger.info("批量提取完成: total={}, succeeded={}, failed={}, packed={}, 耗时={}ms",
+                            result.total(), result.succeeded(), result.failed(), packed,
+                            System.currentTimeMillis() - start));
+        });
+    }
+
+    /**
+     * 单个条目一次模型调用（超时取消订阅时，流式的模型调用随之中止）
+     */
+    private <T> Mono<ItemResult<T>> callSingle(int index, String input, Function<String, Mono<T>> single) {
+        Duration timeout = config.getItemTimeout();
+        return single.apply(input)
+                .timeout(timeout)
+                .map(value -> ItemResult.ok(index, input, value))
+                .switchIfEmpty(Mono.fromSupplier(() -> ItemResult.failed(index, input, "模型未返回结果")))
+                .onErrorResume(e -> Mono.just(ItemResult.failed(index, input, errorMessage(e, timeout))));
+    }
+
+    /**
+     * 多个条目打包为一次模型调用，返回的数组按元素中回显的编号对应输入
+     */
+    private <T> Mono<List<ItemResult<T>>> callPacked(Chunk chunk, Pack<T> pack) {
+        Duration timeout = config.getItemTimeout().multipliedBy(chunk.inputs().size());
+        Prompt prompt = new Prompt(pack.template().createMessage(Map.of("items", numbered(chunk.inputs()))));
+        return chatClient.prompt(prompt)
+                .stream()
+                .content()
+                .collect(Collectors.joining())
+                .flatMap(response -> outputParser.parseAsync(response, pack.spec()))
+                .timeout(timeout)
+                .defaultIfEmpty(List.of())
+                .map(values -> toResults(chunk, values))
+                .onErrorResume(e -> {
+                    logger.warn("打包调用失败: offset={}, size={}, error={}",
+                            chunk.offset(), chunk.inputs().size(), e.getMessage());
+                    return Mono.just(failAll(chunk, errorMessage(e, timeout)));
+                });
+    }
+
+    /**
+     * 按回显的编号把结果对应到输入；编号缺失、越界的元素被忽略，同一编号出现多次时该条目标记为失败
+     */
+    private <T> List<ItemResult<T>> toResults(Chunk chunk, List<NumberedItem<T>> values) {
+        int size = chunk.inputs().size();
+        List<T> matched = new ArrayList<>(Collections.nCopies(size, null));
+        int[] counts = new int[size];
+        int ignored = 0;
+        for (NumberedItem<T> value : values) {
+            Integer item = value != null ? value.item() : null;
+            if (item == null || item < 1 || item > size) {
+                ignored++;
+                continue;
+            }
+            counts[item - 1]++;
+            matched.set(item - 1, value.result());
+        }
+        if (ignored > 0) {
+            logger.warn("打包调用返回了 {} 个编号无效的结果: offset={}, size={}", ignored, chunk.offset(), size);
+        }
+
+        List<ItemResult<T>> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = chunk.offset() + i;
+            String input = chunk.inputs().get(i);
+            if (counts[i] > 1) {
+                results.add(ItemResult.failed(index, input, "模型对该条目返回了多个结果"));
+            } else if (matched.get(i) == null) {
+                results.add(ItemResult.failed(index, input, "模型未返回该条目的结果"));
+            } else {
+                results.add(ItemResult.ok(index, input, matched.get(i)));
+            }
+        }
+        return results;
+    }
+
+    private <T> List<ItemResult<T>> failAll(Chunk chunk, String error) {
+        List<ItemResult<T>> results = new ArrayList<>(chunk.inputs().size());
+        for (int i = 0; i < chunk.inputs().size(); i++) {
+            results.add(ItemResult.failed(chunk.offset() + i, chunk.inputs().get(i), error));
+        }
+        return results;
+    }
+
+    private static List<Chunk> chunks(List<String> inputs, int size) {
+        List<Chunk> chunks = new ArrayList<>((inputs.size() + size - 1) / size);
+        for (int offset = 0; offset < inputs.size(); offset += size) {
+            chunks.add(new Chunk(offset, inputs.subList(offset, Math.min(inputs.size(), offset + size))));
+        }
+        return chunks;
+    }
+
+    private static String numbered(List<String> inputs) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < inputs.size(); i++) {
+            builder.append(i + 1).append(". ").append(inputs.get(i)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String errorMessage(Throwable error, Duration timeout) {
+        if (error instanceof TimeoutException) {
+            return "调用超时（" + timeout.toSeconds() + "s）";
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    /**
+     * 单个条目的结果
+     * 
+     * @param index 条目在输入中的下标
+     * @param input 输入内容
+     * @param value 提取结果（失败时为 null）
+     * @param error 错误信息（成功时为 null）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ItemResult<T>(int index, String input, T value, String error) {
+
+        static <T> ItemResult<T> ok(int index, String input, T value) {
+            return new ItemResult<>(index, input, value, null);
+        }
+
+        static <T> ItemResult<T> failed(int index, String input, String error) {
+            return new ItemResult<>(index, input, null, error);
+        }
+    }
+
+    /**
+     * 批量提取结果
+     * 
+     * @param total 条目总数
+     * @param succeeded 成功数
+     * @param failed 失败数
+     * @param items 按输入顺序排列的各条目结果
+     */
+    public record BatchResult<T>(int total, int succeeded, int failed, List<ItemResult<T>> items) {
+
+        static <T> BatchResult<T> of(List<ItemResult<T>> items) {
+            int failed = 0;
+            for (ItemResult<T> item : items) {
+                if (item.error() != null) {
+                    failed++;
+                }
+            }
+            return new BatchResult<>(items.size(), items.size() - failed, failed, items);
+        }
+    }
+
+    /**
+     * 一次打包调用的输入
+     */
+    private record Chunk(int offset, List<String> inputs) {}
+
+    /**
+     * 打包调用的提示词模板和数组转换器
+     */
+    private record Pack<T>(PromptTemplate template, BeanSpec<List<NumberedItem<T>>> spec) {
+
+        static <T> Pack<T> of(String text, BeanSpec<List<NumberedItem<T>>> spec) {
+            PromptTemplate template = PromptTemplate.builder()
+                    .template(text)
+                    .variables(Map.of("format", spec.format()))
+                    .build();
+            return new Pack<>(template, spec);
+        }
+    }
+}
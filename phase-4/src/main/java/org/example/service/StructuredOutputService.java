@@ -1,5 +1,15 @@
 package org.example.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.example.cache.StructuredResponseCache;
+import org.example.config.StructuredOutputProperties;
+import org.example.converter.IncrementalJsonParser;
+import org.example.converter.IncrementalListParser;
+import org.example.converter.OutputConverterRegistry;
+import org.example.converter.OutputConverterRegistry.BeanSpec;
+import org.example.converter.StructuredEvent;
+import org.example.converter.StructuredOutputParser;
 import org.example.entity.MovieActor;
 import org.example.entity.ProductInfo;
 import org.slf4j.Logger;
@@ -7,17 +17,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.converter.BeanOutputConverter;
-import org.springframework.ai.converter.ListOutputConverter;
-import org.springframework.ai.converter.MapOutputConverter;
-import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.ResponseFormat;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 结构化输出转换器服务
@@ -27,6 +40,15 @@ import java.util.Map;
  * 2. MapOutputConverter - 将 AI 输出转换为 Map 结构
  * 3. ListOutputConverter - 将 AI 输出转换为 List 结构
  * 
+ * 转换器、格式指令和提示词模板都只在启动时创建一次（见 OutputConverterRegistry），
+ * 每次请求只填充用户输入并调用模型。JSON 输出经 StructuredOutputParser 容错解析（提取、修复、校验，必要时请求模型修正）。
+ * 
+ * 每个方法都有对应的流式版本（stream 前缀），边生成边增量解析，字段或列表元素一完整就输出；
+ * 开启 app.structured.native-json 后，Bean 和 Map 类型使用模型原生的 JSON 输出模式。
+ * 
+ * 相同输入的结果由 StructuredResponseCache 缓存（键为端点、模型、响应格式和渲染后提示词的哈希），
+ * 命中时不调用模型；流式方法命中时直接输出 done 事件。
+ * 
  * 参考文档：https://docs.springframework.org.cn/spring-ai/reference/api/structured-output-converter.html
  * 
  * @author Spring AI Course
@@ -36,10 +58,123 @@ public class StructuredOutputService {
 
     private static final Logger logger = LoggerFactory.getLogger(StructuredOutputService.class);
 
-    private final ChatClient chatClient;
+    private static final String ACTOR_PROMPT = """
+            为演员 {actor} 生成电影作品信息。
+            包含该演员最著名的5部电影和获得的3个重要奖项。
+            {format}
+            """;
+
+    private static final String PRODUCT_PROMPT = """
+            根据以下产品描述生成完整的产品信息：
+            {description}
+            
+            请生成一个合理的产品名称、详细描述、价格、类别和库存数量。
+            {format}
+            """;
+
+    private static final String TOPIC_PROMPT = """
+            分析以下主题，并以键值对形式返回相关信息：
+            主题：{topic}
+            
+            请返回以下信息（JSON格式）：
+            - 定义（definition）
+            - 重要性（importance）
+            - 相关概念（relatedConcepts，数组形式）
+            - 应用场景（applications，数组形式）
+            
+            {format}
+            """;
+
+    private static final String COMPARE_PROMPT = """
+            对比以下两个产品，返回对比结果：
+            产品1：{product1}
+            产品2：{product2}
+            
+            请包含以下对比维度（JSON格式）：
+            - 价格对比（priceComparison）
+            - 功能对比（featureComparison）
+            - 优缺点（prosAndCons，对象形式）
+            - 推荐场景（recommendedScenarios，数组形式）
+            
+            {format}
+            """;
+
+    private static final String SUGGESTIONS_PROMPT = """
+            列出 {count} 个关于 {category} 的建议。
+            请以逗号分隔的列表形式返回。
+            {format}
+            """;
+
+    private static final String KEYWORDS_PROMPT = """
+            从以下文本中提取 {count} 个最重要的关键词：
+            
+            文本：{text}
+            
+            请以逗号分隔的列表形式返回这些关键词。
+            {format}
+            """;
+
+    private static final String STEPS_PROMPT = """
+            为完成以下任务提供详细的步骤列表：
+            任务：{task}
+            
+            请以逗号分隔的列表形式返回每个步骤（每个步骤应该简洁明了）。
+            {format}
+            """;
 
-    public StructuredOutputService(ChatModel chatModel) {
+    private final ChatClient chatClient;
+    private final OutputConverterRegistry converters;
+    private final StructuredOutputParser outputParser;
+    private final StructuredResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader mapReader;
+    private final ObjectReader listReader;
+    private final String model;
+    private final boolean nativeJson;
+
+    private final BeanSpec<MovieActor> actorSpec;
+    private final BeanSpec<ProductInfo> productSpec;
+
+    // 预先绑定 {format} 的提示词模板（及原生 JSON 模式的响应格式），请求时只需补充用户输入
+    private final PromptSpec actorPrompt;
+    private final PromptSpec productPrompt;
+    private final PromptSpec topicPrompt;
+    private final PromptSpec comparePrompt;
+    private final PromptSpec suggestionsPrompt;
+    private final PromptSpec keywordsPrompt;
+    private final PromptSpec stepsPrompt;
+
+    public StructuredOutputService(ChatModel chatModel,
+                                   OutputConverterRegistry converters,
+                                   StructuredOutputParser outputParser,
+                                   StructuredResponseCache responseCache,
+                                   StructuredOutputProperties properties,
+                                   ObjectMapper objectMapper) {
         this.chatClient = ChatClient.builder(chatModel).build();
+        this.converters = converters;
+        this.outputParser = outputParser;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+        this.mapReader = objectMapper.readerForMapOf(Object.class);
+        this.listReader = objectMapper.readerForListOf(String.class);
+        // 模型名称参与缓存键，切换模型后不会命中旧结果
+        this.model = chatModel.getDefaultOptions() != null ? chatModel.getDefaultOptions().getModel() : null;
+        this.actorSpec = converters.bean(MovieActor.class);
+        this.productSpec = converters.bean(ProductInfo.class);
+
+        // 原生 JSON 模式只对 OpenAI 模型生效
+        this.nativeJson = properties.isNativeJson() && chatModel instanceof OpenAiChatModel;
+        if (properties.isNativeJson() && !nativeJson) {
+            logger.warn("当前模型不支持原生 JSON 模式，继续在提示词中附带格式指令: {}", chatModel.getClass().getSimpleName());
+        }
+
+        this.actorPrompt = beanPrompt("actor", ACTOR_PROMPT, actorSpec);
+        this.productPrompt = beanPrompt("product", PRODUCT_PROMPT, productSpec);
+        this.topicPrompt = mapPrompt("topic", TOPIC_PROMPT);
+        this.comparePrompt = mapPrompt("compare", COMPARE_PROMPT);
+        this.suggestionsPrompt = listPrompt("suggestions", SUGGESTIONS_PROMPT);
+        this.keywordsPrompt = listPrompt("keywords", KEYWORDS_PROMPT);
+        this.stepsPrompt = listPrompt("steps", STEPS_PROMPT);
     }
 
     // ==================== BeanOutputConverter 示例 ====================
@@ -54,39 +189,13 @@ public class StructuredOutputService {
      * @return 包含演员信息的 MovieActor 对象
      */
     public Mono<MovieActor> getActorMovies(String actorName) {
-        return Mono.fromCallable(() -> {
-            // 创建 BeanOutputConverter，指定目标类型为 MovieActor
-            BeanOutputConverter<MovieActor> converter = new BeanOutputConverter<>(MovieActor.class);
-
-            // 获取格式化指令，这会生成基于 MovieActor 类的 JSON Schema
-            String format = converter.getFormat();
-            logger.debug("生成的格式指令: {}", format);
-
-            // 构建提示词模板，包含用户输入和格式占位符
-            String userPrompt = """
-                    为演员 {actor} 生成电影作品信息。
-                    包含该演员最著名的5部电影和获得的3个重要奖项。
-                    {format}
-                    """;
-
-            // 使用 PromptTemplate 构建提示词，替换变量和格式指令
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("actor", actorName, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            // 调用 AI 模型
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
+        // 使用预先绑定格式指令的模板，只替换用户输入；相同输入的结果直接从缓存返回
+        return call(actorPrompt, Map.of("actor", actorName), actorSpec.reader(), response -> {
             logger.debug("AI 原始响应: {}", response);
 
             // 使用转换器将 JSON 响应转换为 MovieActor 对象
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+            return outputParser.parseAsync(response, actorSpec);
+        });
     }
 
     /**
@@ -96,33 +205,8 @@ public class StructuredOutputService {
      * @return 包含产品详细信息的 ProductInfo 对象
      */
     public Mono<ProductInfo> generateProductInfo(String productDescription) {
-        return Mono.fromCallable(() -> {
-            // 创建 BeanOutputConverter，指定目标类型为 ProductInfo
-            BeanOutputConverter<ProductInfo> converter = new BeanOutputConverter<>(ProductInfo.class);
-
-            String format = converter.getFormat();
-
-            String userPrompt = """
-                    根据以下产品描述生成完整的产品信息：
-                    {description}
-                    
-                    请生成一个合理的产品名称、详细描述、价格、类别和库存数量。
-                    {format}
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("description", productDescription, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+        return call(productPrompt, Map.of("description", productDescription), productSpec.reader(),
+                response -> outputParser.parseAsync(response, productSpec));
     }
 
     // ==================== MapOutputConverter 示例 ====================
@@ -137,42 +221,12 @@ public class StructuredOutputService {
      * @return 包含主题相关信息的 Map
      */
     public Mono<Map<String, Object>> analyzeTopic(String topic) {
-        return Mono.fromCallable(() -> {
-            // 创建 MapOutputConverter
-            MapOutputConverter converter = new MapOutputConverter();
-
-            String format = converter.getFormat();
-            logger.debug("Map 格式指令: {}", format);
-
-            String userPrompt = """
-                    分析以下主题，并以键值对形式返回相关信息：
-                    主题：{topic}
-                    
-                    请返回以下信息（JSON格式）：
-                    - 定义（definition）
-                    - 重要性（importance）
-                    - 相关概念（relatedConcepts，数组形式）
-                    - 应用场景（applications，数组形式）
-                    
-                    {format}
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("topic", topic, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
+        return call(topicPrompt, Map.of("topic", topic), mapReader, response -> {
             logger.debug("AI 原始响应: {}", response);
 
             // 转换为 Map
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+            return outputParser.parseMapAsync(response);
+        });
     }
 
     /**
@@ -183,37 +237,8 @@ public class StructuredOutputService {
      * @return 包含对比结果的 Map
      */
     public Mono<Map<String, Object>> compareProducts(String product1, String product2) {
-        return Mono.fromCallable(() -> {
-            MapOutputConverter converter = new MapOutputConverter();
-            String format = converter.getFormat();
-
-            String userPrompt = """
-                    对比以下两个产品，返回对比结果：
-                    产品1：{product1}
-                    产品2：{product2}
-                    
-                    请包含以下对比维度（JSON格式）：
-                    - 价格对比（priceComparison）
-                    - 功能对比（featureComparison）
-                    - 优缺点（prosAndCons，对象形式）
-                    - 推荐场景（recommendedScenarios，数组形式）
-                    
-                    {format}
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("product1", product1, "product2", product2, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+        return call(comparePrompt, Map.of("product1", product1, "product2", product2), mapReader,
+                outputParser::parseMapAsync);
     }
 
     // ==================== ListOutputConverter 示例 ====================
@@ -229,35 +254,12 @@ public class StructuredOutputService {
      * @return 包含列表项的 List
      */
     public Mono<List<String>> getSuggestions(String category, int count) {
-        return Mono.fromCallable(() -> {
-            // 创建 ListOutputConverter，使用默认的 ConversionService
-            ListOutputConverter converter = new ListOutputConverter(new DefaultConversionService());
-
-            String format = converter.getFormat();
-            logger.debug("List 格式指令: {}", format);
-
-            String userPrompt = """
-                    列出 {count} 个关于 {category} 的建议。
-                    请以逗号分隔的列表形式返回。
-                    {format}
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("count", String.valueOf(count), "category", category, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
+        return call(suggestionsPrompt, Map.of("count", String.valueOf(count), "category", category), listReader, response -> {
             logger.debug("AI 原始响应: {}", response);
 
             // 转换为 List
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+            return Mono.fromCallable(() -> converters.listConverter().convert(response));
+        });
     }
 
     /**
@@ -268,32 +270,8 @@ public class StructuredOutputService {
      * @return 关键词列表
      */
     public Mono<List<String>> extractKeywords(String text, int keywordCount) {
-        return Mono.fromCallable(() -> {
-            ListOutputConverter converter = new ListOutputConverter(new DefaultConversionService());
-            String format = converter.getFormat();
-
-            String userPrompt = """
-                    从以下文本中提取 {count} 个最重要的关键词：
-                    
-                    文本：{text}
-                    
-                    请以逗号分隔的列表形式返回这些关键词。
-                    {format}
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("count", String.valueOf(keywordCount), "text", text, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+        return call(keywordsPrompt, Map.of("count", String.valueOf(keywordCount), "text", text), listReader,
+                response -> Mono.fromCallable(() -> converters.listConverter().convert(response)));
     }
 
     /**
@@ -303,30 +281,259 @@ public class StructuredOutputService {
      * @return 步骤列表
      */
     public Mono<List<String>> getTaskSteps(String task) {
-        return Mono.fromCallable(() -> {
-            ListOutputConverter converter = new ListOutputConverter(new DefaultConversionService());
-            String format = converter.getFormat();
-
-            String userPrompt = """
-                    为完成以下任务提供详细的步骤列表：
-                    任务：{task}
-                    
-                    请以逗号分隔的列表形式返回每个步骤（每个步骤应该简洁明了）。
-                    {format}
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(userPrompt)
-                    .variables(Map.of("task", task, "format", format))
-                    .build();
-
-            Prompt prompt = new Prompt(promptTemplate.createMessage());
-
-            String response = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-
-            return converter.convert(response);
-        }).subscribeOn(Schedulers.boundedElastic());
+        return call(stepsPrompt, Map.of("task", task), listReader,
+                response -> Mono.fromCallable(() -> converters.listConverter().convert(response)));
+    }
+
+    /**
+     * 调用模型并转换完整响应，结果经过响应缓存
+     * 
+     * 模型以流式方式调用，收齐后再转换：不占用线程等待，取消订阅（例如批量任务的条目超时）时同时中止上游调用。
+     * 
+     * @param spec 提示词
+     * @param variables 用户输入
+     * @param reader 缓存结果的读取器
+     * @param converter 完整响应的转换器
+     * @return 转换结果
+     */
+    private <T> Mono<T> call(PromptSpec spec,
+                             Map<String, Object> variables,
+                             ObjectReader reader,
+                             Function<String, Mono<T>> converter) {
+        return Mono.defer(() -> {
+            Prompt prompt = spec.create(variables);
+            Mono<T> load = chatClient.prompt(prompt)
+                    .stream()
+                    .content()
+                    .collect(Collectors.joining())
+                    .flatMap(converter);
+            return responseCache.getOrLoad(spec.endpoint(), cacheKey(spec, prompt), reader, load);
+        });
+    }
+
+    // ==================== 流式输出 ====================
+
+    /**
+     * 流式获取演员电影信息，movies、awards 中的每一项生成后立即输出
+     * 
+     * @param actorName 演员名称
+     * @return 结构化输出事件流，最后一个事件为完整的 MovieActor
+     */
+    public Flux<StructuredEvent> streamActorMovies(String actorName) {
+        return streamJson(actorPrompt, Map.of("actor", actorName), actorSpec.reader(),
+                response -> outputParser.parse(response, actorSpec));
+    }
+
+    /**
+     * 流式生成产品信息，每个字段生成后立即输出
+     * 
+     * @param productDescription 产品描述
+     * @return 结构化输出事件流，最后一个事件为完整的 ProductInfo
+     */
+    public Flux<StructuredEvent> streamProductInfo(String productDescription) {
+        return streamJson(productPrompt, Map.of("description", productDescription), productSpec.reader(),
+                response -> outputParser.parse(response, productSpec));
+    }
+
+    /**
+     * 流式分析主题
+     * 
+     * @param topic 主题
+     * @return 结构化输出事件流，最后一个事件为完整的 Map
+     */
+    public Flux<StructuredEvent> streamAnalyzeTopic(String topic) {
+        return streamJson(topicPrompt, Map.of("topic", topic), mapReader, outputParser::parseMap);
+    }
+
+    /**
+     * 流式对比两个产品
+     * 
+     * @param product1 产品1名称
+     * @param product2 产品2名称
+     * @return 结构化输出事件流，最后一个事件为完整的 Map
+     */
+    public Flux<StructuredEvent> streamCompareProducts(String product1, String product2) {
+        return streamJson(comparePrompt, Map.of("product1", product1, "product2", product2), mapReader,
+                outputParser::parseMap);
+    }
+
+    /**
+     * 流式获取建议列表
+     * 
+     * @param category 类别
+     * @param count 数量
+     * @return 结构化输出事件流，最后一个事件为完整的 List
+     */
+    public Flux<StructuredEvent> streamSuggestions(String category, int count) {
+        return streamList(suggestionsPrompt, Map.of("count", String.valueOf(count), "category", category));
+    }
+
+    /**
+     * 流式提取关键词
+     * 
+     * @param text 文本内容
+     * @param keywordCount 关键词数量
+     * @return 结构化输出事件流，最后一个事件为完整的 List
+     */
+    public Flux<StructuredEvent> streamKeywords(String text, int keywordCount) {
+        return streamList(keywordsPrompt, Map.of("count", String.valueOf(keywordCount), "text", text));
+    }
+
+    /**
+     * 流式获取任务步骤，每个步骤生成后立即输出
+     * 
+     * @param task 任务描述
+     * @return 结构化输出事件流，最后一个事件为完整的 List
+     */
+    public Flux<StructuredEvent> streamTaskSteps(String task) {
+        return streamList(stepsPrompt, Map.of("task", task));
+    }
+
+    /**
+     * 流式调用模型并增量解析 JSON 输出
+     * 
+     * @param spec 提示词
+     * @param variables 用户输入
+     * @param reader 缓存结果的读取器
+     * @param converter 完整响应的转换器，结果作为 done 事件输出
+     */
+    private Flux<StructuredEvent> streamJson(PromptSpec spec,
+                                             Map<String, Object> variables,
+                                             ObjectReader reader,
+                                             Function<String, ?> converter) {
+        Prompt prompt = spec.create(variables);
+        String key = cacheKey(spec, prompt);
+        return cached(spec, key, reader).switchIfEmpty(Flux.defer(() -> {
+            IncrementalJsonParser parser = new IncrementalJsonParser(objectMapper);
+            StringBuilder response = new StringBuilder();
+            return chatClient.prompt(prompt)
+                    .stream()
+                    .content()
+                    .doOnNext(response::append)
+                    .concatMapIterable(parser::feed)
+                    // 解析失败时可能发起修正调用，不能在事件循环线程上执行
+                    .concatWith(Mono.fromCallable(() -> done(spec, key, converter.apply(response.toString())))
+                            .subscribeOn(Schedulers.boundedElastic()));
+        })).onErrorResume(this::errorEvent);
+    }
+
+    /**
+     * 流式调用模型并增量切分逗号分隔的列表输出
+     * 
+     * @param spec 提示词
+     * @param variables 用户输入
+     */
+    private Flux<StructuredEvent> streamList(PromptSpec spec, Map<String, Object> variables) {
+        Prompt prompt = spec.create(variables);
+        String key = cacheKey(spec, prompt);
+        return cached(spec, key, listReader).switchIfEmpty(Flux.defer(() -> {
+            IncrementalListParser parser = new IncrementalListParser();
+            StringBuilder response = new StringBuilder();
+            return chatClient.prompt(prompt)
+                    .stream()
+                    .content()
+                    .doOnNext(response::append)
+                    .concatMapIterable(parser::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(parser.finish())))
+                    .concatWith(Mono.fromCallable(() ->
+                                    done(spec, key, converters.listConverter().convert(response.toString())))
+                            .subscribeOn(Schedulers.boundedElastic()));
+        })).onErrorResume(this::errorEvent);
+    }
+
+    /**
+     * 查询缓存，命中时只输出 done 事件（磁盘层读取是阻塞的）
+     */
+    private Flux<StructuredEvent> cached(PromptSpec spec, String key, ObjectReader reader) {
+        return Mono.fromCallable(() -> responseCache.lookup(spec.endpoint(), key, reader))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(StructuredEvent::done)
+                .flux();
+    }
+
+    /**
+     * 写入缓存并生成 done 事件
+     */
+    private StructuredEvent done(PromptSpec spec, String key, Object value) {
+        responseCache.put(spec.endpoint(), key, value);
+        return StructuredEvent.done(value);
+    }
+
+    private String cacheKey(PromptSpec spec, Prompt prompt) {
+        return responseCache.key(spec.endpoint(), model, spec.optionsKey(), prompt.getContents());
+    }
+
+    private Flux<StructuredEvent> errorEvent(Throwable error) {
+        logger.error("流式结构化输出失败: {}", error.getMessage());
+        return Flux.just(StructuredEvent.error(error.getMessage()));
+    }
+
+    // ==================== 提示词构建 ====================
+
+    /**
+     * Bean 类型的提示词：原生 JSON 模式下使用 JSON Schema 响应格式，不再附带格式指令
+     */
+    private PromptSpec beanPrompt(String endpoint, String text, BeanSpec<?> spec) {
+        if (!nativeJson) {
+            return new PromptSpec(endpoint, template(text, spec.format()), null, "");
+        }
+        ResponseFormat responseFormat = ResponseFormat.builder()
+                .type(ResponseFormat.Type.JSON_SCHEMA)
+                .jsonSchema(spec.schema())
+                .build();
+        return new PromptSpec(endpoint, template(text, ""),
+                OpenAiChatOptions.builder().responseFormat(responseFormat).build(), "json_schema:" + spec.schema());
+    }
+
+    /**
+     * Map 类型的提示词：原生 JSON 模式下使用 JSON 对象响应格式
+     */
+    private PromptSpec mapPrompt(String endpoint, String text) {
+        PromptTemplate template = template(text, converters.mapFormat());
+        if (!nativeJson) {
+            return new PromptSpec(endpoint, template, null, "");
+        }
+        ResponseFormat responseFormat = ResponseFormat.builder()
+                .type(ResponseFormat.Type.JSON_OBJECT)
+                .build();
+        return new PromptSpec(endpoint, template, OpenAiChatOptions.builder().responseFormat(responseFormat).build(), "json_object");
+    }
+
+    /**
+     * List 类型的提示词：逗号分隔的文本输出，不使用原生 JSON 模式
+     */
+    private PromptSpec listPrompt(String endpoint, String text) {
+        return new PromptSpec(endpoint, template(text, converters.listFormat()), null, "");
+    }
+
+    /**
+     * 创建预先绑定格式指令的提示词模板
+     * 
+     * @param text 提示词文本
+     * @param format 格式指令
+     * @return 提示词模板
+     */
+    private static PromptTemplate template(String text, String format) {
+        return PromptTemplate.builder()
+                .template(text)
+                .variables(Map.of("format", format))
+                .build();
+    }
+
+    /**
+     * 预先构建的提示词
+     * 
+     * @param endpoint 端点名称，用于缓存过期时间和统计
+     * @param template 已绑定格式指令的提示词模板
+     * @param options 原生 JSON 模式的响应格式（未开启时为 null）
+     * @param optionsKey 响应格式的描述，参与缓存键
+     */
+    private record PromptSpec(String endpoint, PromptTemplate template, ChatOptions options, String optionsKey) {
+
+        Prompt create(Map<String, Object> variables) {
+            return options != null
+                    ? new Prompt(template.createMessage(variables), options)
+                    : new Prompt(template.createMessage(variables));
+        }
     }
 }
@@ -0,0 +1,439 @@
+package org.example.cache;
+
+import jakarta.annotation.PostConstruct;
+import org.example.config.MultimodalProperties;
+import org.example.image.PreparedImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 图片分析结果缓存
+ * 
+ * 用户经常重复提交同一张商品图或截图，相同的图片和提示词直接返回上次的结果，不再调用视觉模型：
+ * 1. 精确命中 - 缓存键是模型、操作、提示词和原图内容 SHA-256 的哈希
+ * 2. 近似命中（可选）- 同一操作和提示词下，感知哈希的相似度不低于 min-similarity 的图片视为同一张
+ *    （如重新压缩、缩放过的同一张照片）；只对 near-duplicate-operations 中的操作生效
+ * 3. 内存层 - 按结果总字符数限制大小，超出后按 LRU 淘汰
+ * 4. 磁盘层（可选）- 每个条目一个文件，重启后仍然有效，命中后提升到内存层；只支持精确命中
+ * 5. 统计指标 - 按操作记录精确命中、近似命中、磁盘命中和未命中次数
+ * 
+ * 近似匹配在同一操作和提示词的条目中线性查找（64 位异或 + bitCount），条目数受内存上限约束。
+ * 磁盘读写是阻塞的，调用方需要在 boundedElastic 线程上执行。
+ */
+@Component
+public class ImageResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageResultCache.class);
+
+    private final MultimodalProperties.Cache config;
+    private final String model;
+    private final Path directory;
+    private final int maxDistance;
+
+    /**
+     * 内存层，按访问顺序排列（LRU），访问时对自身加锁
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryChars;
+
+    /**
+     * 近似匹配索引：操作和提示词的哈希 -> (缓存键 -> 感知哈希)，与 entries 一同加锁
+     */
+    private final Map<String, Map<String, Long>> similarIndex = new HashMap<>();
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ImageResultCache(MultimodalProperties properties, ChatModel chatModel) {
+        this.config = properties.getCache();
+        this.model = chatModel.getDefaultOptions() != null ? chatModel.getDefaultOptions().getModel() : null;
+        this.directory = config.getDisk().isEnabled() ? Paths.get(config.getDisk().getDirectory()) : null;
+        // 相似度按 64 位中相同的位数计算，换算为允许的最大汉明距离
+        this.maxDistance = (int) Math.floor((1 - config.getMinSimilarity()) * 64);
+    }
+
+    /**
+     * 启动时在后台清理磁盘上已过期的条目
+     */
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled() || directory == null) {
+            return;
+        }
+        Mono.fromRunnable(this::sweepDisk)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> logger.warn("清理磁盘缓存失败: {}", e.getMessage()));
+    }
+
+    /**
+     * 查询缓存，未命中时加载并写入缓存
+     * 
+     * @param operation 操作名称（如 analyze、text、extract）
+     * @param prompt 发送给模型的提示词
+     * @param image 预处理后的图片
+     * @param loader 未命中时的加载逻辑（调用模型）
+     * @return 分析结果
+     */
+    public String getOrLoad(String operation, String prompt, PreparedImage image, Supplier<String> loader) {
+        String cached = get(operation, prompt, image);
+        if (cached != null) {
+            return cached;
+        }
+        String value = loader.get();
+        put(operation, prompt, image, value);
+        return value;
+    }
+
+    /**
+     * 查询缓存（启用磁盘缓存时可能读取文件）
+     * 
+     * @param operation 操作名称
+     * @param prompt 发送给模型的提示词
+     * @param image 预处理后的图片
+     * @return 缓存的结果；未命中或未启用缓存时返回 null
+     */
+    public String get(String operation, String prompt, PreparedImage image) {
+        if (!isCacheable()) {
+            return null;
+        }
+        String group = hash(model, operation, prompt);
+        return lookup(operation, group, hash(group, image.contentHash()), similarityHash(operation, image));
+    }
+
+    /**
+     * 写入缓存，流式输出时在完整结果生成后调用（启用磁盘缓存时会写文件）
+     * 
+     * @param operation 操作名称
+     * @param prompt 发送给模型的提示词
+     * @param image 预处理后的图片
+     * @param value 完整的结果
+     */
+    public void put(String operation, String prompt, PreparedImage image, String value) {
+        if (!isCacheable() || value == null) {
+            return;
+        }
+        String group = hash(model, operation, prompt);
+        String key = hash(group, image.contentHash());
+        Entry entry = new Entry(value, System.currentTimeMillis() + config.getTtl().toMillis(), group,
+                similarityHash(operation, image));
+        putMemory(key, entry);
+        if (directory != null) {
+            writeDisk(key, entry);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     * 
+     * @return 统计信息
+     */
+    public Stats stats() {
+        Map<String, OperationStats> operations = new TreeMap<>();
+        long hits = 0;
+        long total = 0;
+        for (Map.Entry<String, Counters> e : counters.entrySet()) {
+            Counters counter = e.getValue();
+            long exactHits = counter.exactHits.get();
+            long similarHits = counter.similarHits.get();
+            long diskHits = counter.diskHits.get();
+            long misses = counter.misses.get();
+            long operationHits = exactHits + similarHits + diskHits;
+            operations.put(e.getKey(), new OperationStats(exactHits, similarHits, diskHits, misses,
+                    ratio(operationHits, operationHits + misses)));
+            hits += operationHits;
+            total += operationHits + misses;
+        }
+        int size;
+        long chars;
+        synchronized (entries) {
+            size = entries.size();
+            chars = memoryChars;
+        }
+        return new Stats(ratio(hits, total), size, chars, evictions.get(), config.isNearDuplicate(),
+                directory != null, operations);
+    }
+
+    private boolean isCacheable() {
+        return config.isEnabled() && config.getTtl() != null && config.getTtl().toMillis() > 0;
+    }
+
+    /**
+     * 获取用于近似匹配的感知哈希；操作不在 near-duplicate-operations 中时返回 null，
+     * 该操作的条目既不参与近似查找，也不进入近似索引
+     */
+    private Long similarityHash(String operation, PreparedImage image) {
+        Set<String> operations = config.getNearDuplicateOperations();
+        return operations != null && operations.contains(operation) ? image.perceptualHash() : null;
+    }
+
+    private String lookup(String operation, String group, String key, Long perceptualHash) {
+        Counters counter = counters.computeIfAbsent(operation, ignored -> new Counters());
+        long now = System.currentTimeMillis();
+
+        synchronized (entries) {
+            Entry entry = live(key, now);
+            if (entry != null) {
+                counter.exactHits.incrementAndGet();
+                return entry.value();
+            }
+            if (config.isNearDuplicate() && perceptualHash != null) {
+                entry = findSimilar(group, perceptualHash, now);
+                if (entry != null) {
+                    counter.similarHits.incrementAndGet();
+                    return entry.value();
+                }
+            }
+        }
+
+        if (directory != null) {
+            Entry entry = readDisk(key, group, perceptualHash, now);
+            if (entry != null) {
+                putMemory(key, entry);
+                counter.diskHits.incrementAndGet();
+                return entry.value();
+            }
+        }
+        counter.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 调用方需持有 entries 的锁
+     */
+    private Entry live(String key, long now) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt() <= now) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 查找同组中感知哈希最接近的条目，调用方需持有 entries 的锁
+     */
+    private Entry findSimilar(String group, long perceptualHash, long now) {
+        Map<String, Long> candidates = similarIndex.get(group);
+        if (candidates == null) {
+            return null;
+        }
+        String bestKey = null;
+        int bestDistance = maxDistance + 1;
+        for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            int distance = Long.bitCount(candidate.getValue() ^ perceptualHash);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestKey = candidate.getKey();
+            }
+        }
+        return bestKey != null ? live(bestKey, now) : null;
+    }
+
+    private void putMemory(String key, Entry entry) {
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            memoryChars += entry.value().length();
+            if (entry.perceptualHash() != null) {
+                similarIndex.computeIfAbsent(entry.group(), ignored -> new HashMap<>()).put(key, entry.perceptualHash());
+            }
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (memoryChars > config.getMaxMemoryChars() && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                if (evicted.getKey().equals(key)) {
+                    break;
+                }
+                eldest.remove();
+                unindex(evicted.getKey(), evicted.getValue());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 调用方需持有 entries 的锁
+     */
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            unindex(key, removed);
+        }
+    }
+
+    private void unindex(String key, Entry entry) {
+        memoryChars -= entry.value().length();
+        if (entry.perceptualHash() != null) {
+            Map<String, Long> group = similarIndex.get(entry.group());
+            if (group != null) {
+                group.remove(key);
+                if (group.isEmpty()) {
+                    similarIndex.remove(entry.group());
+                }
+            }
+        }
+    }
+
+    // ==================== 磁盘层 ====================
+
+    /**
+     * 条目文件：第一行是过期时间（毫秒时间戳），其余是分析结果
+     */
+    private Path file(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    private Entry readDisk(String key, String group, Long perceptualHash, long now) {
+        Path file = file(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            long expiresAt = newline > 0 ? Long.parseLong(content.substring(0, newline)) : 0;
+            if (expiresAt <= now) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new Entry(content.substring(newline + 1), expiresAt, group, perceptualHash);
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("读取磁盘缓存失败: {}, {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Entry entry) {
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(temp, entry.expiresAt() + "\n" + entry.value(), StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("写入磁盘缓存失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    private void sweepDisk() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        AtomicLong removed = new AtomicLong();
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            files.filter(path -> path.toString().endsWith(".txt") || path.toString().endsWith(".tmp"))
+                    .forEach(path -> {
+                        String name = path.getFileName().toString();
+                        String key = name.substring(0, name.indexOf('.'));
+                        if (name.endsWith(".tmp") || readDisk(key, null, null, now) == null) {
+                            try {
+                                if (Files.deleteIfExists(path)) {
+                                    removed.incrementAndGet();
+                                }
+                            } catch (IOException e) {
+                                logger.debug("删除缓存文件失败: {}", path);
+                            }
+                        }
+                    });
+        } catch (IOException e) {
+            logger.warn("遍历磁盘缓存失败: {}", e.getMessage());
+        }
+        logger.info("磁盘缓存清理完成: 删除 {} 个过期条目", removed.get());
+    }
+
+    private static String hash(String... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String part : parts) {
+            digest.update((part != null ? part : "").getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static double ratio(long hits, long total) {
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 缓存条目
+     * 
+     * @param value 分析结果
+     * @param expiresAt 过期时间（毫秒时间戳）
+     * @param group 操作和提示词的哈希，用于近似匹配
+     * @param perceptualHash 图片的感知哈希（没有时为 null）
+     */
+    private record Entry(String value, long expiresAt, String group, Long perceptualHash) {}
+
+    private static final class Counters {
+        private final AtomicLong exactHits = new AtomicLong();
+        private final AtomicLong similarHits = new AtomicLong();
+        private final AtomicLong diskHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+    }
+
+    /**
+     * 单个操作的缓存统计
+     * 
+     * @param exactHits 内存精确命中次数
+     * @param similarHits 近似重复命中次数
+     * @param diskHits 磁盘命中次数
+     * @param misses 未命中次数
+     * @param hitRatio 命中率
+     */
+    public record OperationStats(long exactHits, long similarHits, long diskHits, long misses, double hitRatio) {}
+
+    /**
+     * 图片结果缓存统计信息
+     * 
+     * @param hitRatio 总命中率
+     * @param memoryEntries 内存中的条目数
+     * @param memoryChars 内存中缓存结果的总字符数
+     * @param evictions 因容量淘汰的条目数
+     * @param nearDuplicate 是否启用近似命中
+     * @param diskEnabled 是否启用磁盘层
+     * @param operations 按操作的统计
+     */
+    public record Stats(
+            double hitRatio,
+            int memoryEntries,
+            long memoryChars,
+            long evictions,
+            boolean nearDuplicate,
+            boolean diskEnabled,
+            Map<String, OperationStats> operations
+    ) {}
+}
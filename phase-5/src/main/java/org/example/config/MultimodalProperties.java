@@ -0,0 +1,488 @@
+package org.example.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 多模态配置属性
+ * 
+ * 配置项前缀: app.multimodal
+ * 可在 application.yml 中配置：
+ * app:
+ *   multimodal:
+ *     upload:
+ *       max-size: 10MB
+ *       memory-threshold: 4MB
+ *       spill-directory:
+ *     preprocess:
+ *       enabled: true
+ *       max-edge: 1568
+ *       model-max-edge:
+ *         gpt-4o: 2048
+ *       quality: 0.85
+ *       max-pixels: 50000000
+ *       threads: 4
+ *       queue-size: 256
+ *     compare:
+ *       default-mode: auto
+ *       single-shot-max-images: 4
+ *       concurrency: 4
+ *       item-timeout: 60s
+ *       reduce-timeout: 120s
+ *     cache:
+ *       enabled: true
+ *       max-memory-chars: 8000000
+ *       ttl: 24h
+ *       near-duplicate: false
+ *       near-duplicate-operations: analyze,describe
+ *       min-similarity: 0.95
+ *       disk:
+ *         enabled: false
+ *         directory: ./cache/multimodal
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.multimodal")
+public class MultimodalProperties {
+
+    /**
+     * 图片上传配置
+     */
+    private Upload upload = new Upload();
+
+    /**
+     * 图片预处理配置
+     */
+    private Preprocess preprocess = new Preprocess();
+
+    /**
+     * 多图对比配置
+     */
+    private Compare compare = new Compare();
+
+    /**
+     * 图片分析结果缓存配置
+     */
+    private Cache cache = new Cache();
+
+    public Upload getUpload() {
+        return upload;
+    }
+
+    public void setUpload(Upload upload) {
+        this.upload = upload;
+    }
+
+    public Preprocess getPreprocess() {
+        return preprocess;
+    }
+
+    public void setPreprocess(Preprocess preprocess) {
+        this.preprocess = preprocess;
+    }
+
+    public Compare getCompare() {
+        return compare;
+    }
+
+    public void setCompare(Compare compare) {
+        this.compare = compare;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 图片上传配置
+     */
+    public static class Upload {
+
+        /**
+         * 单张图片的大小上限，超出时请求返回 400
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(10);
+
+        /**
+         * 内存中保存的大小上限，超出后转存到临时文件
+         */
+        private DataSize memoryThreshold = DataSize.ofMegabytes(4);
+
+        /**
+         * 临时文件目录，为空时使用系统临时目录
+         */
+        private String spillDirectory;
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public DataSize getMemoryThreshold() {
+            return memoryThreshold;
+        }
+
+        public void setMemoryThreshold(DataSize memoryThreshold) {
+            this.memoryThreshold = memoryThreshold;
+        }
+
+        public String getSpillDirectory() {
+            return spillDirectory;
+        }
+
+        public void setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+    }
+
+    /**
+     * 图片预处理配置
+     */
+    public static class Preprocess {
+
+        /**
+         * 是否在调用模型前缩放并重新编码图片，关闭时只识别真实格式，按原样发送（包括 EXIF 等元数据）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 图片长边的最大像素数，超出时等比缩小
+         */
+        private int maxEdge = 1568;
+
+        /**
+         * 按模型配置的长边上限，键为模型名称前缀（最长前缀优先），未匹配时使用 maxEdge
+         */
+        private Map<String, Integer> modelMaxEdge = new HashMap<>();
+
+        /**
+         * JPEG 编码质量（0-1）
+         */
+        private float quality = 0.85f;
+
+        /**
+         * 允许解码的最大像素数（宽 x 高），防止超大尺寸图片耗尽内存
+         */
+        private long maxPixels = 50_000_000;
+
+        /**
+         * 预处理线程数
+         */
+        private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        /**
+         * 等待预处理的最大任务数，超出时请求失败
+         */
+        private int queueSize = 256;
+
+        /**
+         * 获取模型的长边上限
+         * 
+         * @param model 模型名称
+         * @return 长边上限
+         */
+        public int maxEdgeFor(String model) {
+            if (model == null) {
+                return maxEdge;
+            }
+            String matched = null;
+            for (String prefix : modelMaxEdge.keySet()) {
+                if (model.startsWith(prefix) && (matched == null || prefix.length() > matched.length())) {
+                    matched = prefix;
+                }
+            }
+            return matched != null ? modelMaxEdge.get(matched) : maxEdge;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEdge() {
+            return maxEdge;
+        }
+
+        public void setMaxEdge(int maxEdge) {
+            this.maxEdge = maxEdge;
+        }
+
+        public Map<String, Integer> getModelMaxEdge() {
+            return modelMaxEdge;
+        }
+
+        public void setModelMaxEdge(Map<String, Integer> modelMaxEdge) {
+            this.modelMaxEdge = modelMaxEdge;
+        }
+
+        public float getQuality() {
+            return quality;
+        }
+
+        public void setQuality(float quality) {
+            this.quality = quality;
+        }
+
+        public long getMaxPixels() {
+            return maxPixels;
+        }
+
+        public void setMaxPixels(long maxPixels) {
+            this.maxPixels = maxPixels;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+    }
+
+    /**
+     * 多图对比方式
+     */
+    public enum CompareMode {
+
+        /**
+         * 所有图片放进一次模型调用
+         */
+        SINGLE,
+
+        /**
+         * 先并发描述每张图片，再基于文字描述做一次对比（map-reduce）
+         */
+        MAP_REDUCE,
+
+        /**
+         * 图片数不超过 single-shot-max-images 时使用 SINGLE，否则使用 MAP_REDUCE
+         */
+        AUTO
+    }
+
+    /**
+     * 多图对比配置
+     */
+    public static class Compare {
+
+        /**
+         * 调用方未指定时的对比方式
+         */
+        private CompareMode defaultMode = CompareMode.AUTO;
+
+        /**
+         * AUTO 模式下一次调用处理的最大图片数，超出时使用 map-reduce
+         */
+        private int singleShotMaxImages = 4;
+
+        /**
+         * map-reduce 模式下同时描述的图片数
+         */
+        private int concurrency = 4;
+
+        /**
+         * 单张图片描述的超时时间，超时的图片在对比中标记为描述失败
+         */
+        private Duration itemTimeout = Duration.ofSeconds(60);
+
+        /**
+         * map-reduce 模式下基于描述进行对比的调用的超时时间，超时后整个对比请求失败
+         */
+        private Duration reduceTimeout = Duration.ofSeconds(120);
+
+        public CompareMode getDefaultMode() {
+            return defaultMode;
+        }
+
+        public void setDefaultMode(CompareMode defaultMode) {
+            this.defaultMode = defaultMode;
+        }
+
+        public int getSingleShotMaxImages() {
+            return singleShotMaxImages;
+        }
+
+        public void setSingleShotMaxImages(int singleShotMaxImages) {
+            this.singleShotMaxImages = singleShotMaxImages;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Duration getItemTimeout() {
+            return itemTimeout;
+        }
+
+        public void setItemTimeout(Duration itemTimeout) {
+            this.itemTimeout = itemTimeout;
+        }
+
+        public Duration getReduceTimeout() {
+            return reduceTimeout;
+        }
+
+        public void setReduceTimeout(Duration reduceTimeout) {
+            this.reduceTimeout = reduceTimeout;
+        }
+    }
+
+    /**
+     * 图片分析结果缓存配置
+     */
+    public static class Cache {
+
+        /**
+         * 是否启用结果缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 内存中缓存结果的总字符数上限，超出后按 LRU 淘汰
+         */
+        private long maxMemoryChars = 8_000_000;
+
+        /**
+         * 缓存时间，0 表示不缓存
+         */
+        private Duration ttl = Duration.ofHours(24);
+
+        /**
+         * 是否把近似重复的图片（感知哈希相近）视为命中
+         */
+        private boolean nearDuplicate = false;
+
+        /**
+         * 允许近似命中的操作，默认只有图片分析和描述；
+         * 文字识别和结构化提取的结果依赖图片中的具体文字、数字，近似的图片可能得出不同的结果，只做精确命中
+         */
+        private Set<String> nearDuplicateOperations = new HashSet<>(Set.of("analyze", "describe"));
+
+        /**
+         * 近似重复的最低相似度（0-1），按感知哈希相同的位数计算
+         */
+        private double minSimilarity = 0.95;
+
+        /**
+         * 本地磁盘缓存配置
+         */
+        private Disk disk = new Disk();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxMemoryChars() {
+            return maxMemoryChars;
+        }
+
+        public void setMaxMemoryChars(long maxMemoryChars) {
+            this.maxMemoryChars = maxMemoryChars;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public boolean isNearDuplicate() {
+            return nearDuplicate;
+        }
+
+        public void setNearDuplicate(boolean nearDuplicate) {
+            this.nearDuplicate = nearDuplicate;
+        }
+
+        public Set<String> getNearDuplicateOperations() {
+            return nearDuplicateOperations;
+        }
+
+        public void setNearDuplicateOperations(Set<String> nearDuplicateOperations) {
+            this.nearDuplicateOperations = nearDuplicateOperations;
+        }
+
+        public double getMinSimilarity() {
+            return minSimilarity;
+        }
+
+        public void setMinSimilarity(double minSimilarity) {
+            this.minSimilarity = minSimilarity;
+        }
+
+        public Disk getDisk() {
+            return disk;
+        }
+
+        public void setDisk(Disk disk) {
+            this.disk = disk;
+        }
+    }
+
+    /**
+     * 本地磁盘缓存配置
+     */
+    public static class Disk {
+
+        /**
+         * 是否启用磁盘缓存（每个条目一个文件，重启后仍然有效）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓存文件目录
+         */
+        private String directory = "./cache/multimodal";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+}
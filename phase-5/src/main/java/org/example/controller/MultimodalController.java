@@ -1,20 +1,25 @@
 package org.example.controller;
 
+import org.example.cache.ImageResultCache;
+import org.example.config.MultimodalProperties.CompareMode;
+import org.example.image.ImageUpload;
+import org.example.image.ImageUploadReader;
 import org.example.service.MultimodalService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
 
 /**
  * 多模态 AI REST 控制器
@@ -27,6 +32,10 @@ import java.util.List;
  * 5. 图片文字分析 - OCR + 理解
  * 6. 创意描述生成 - 基于图片生成故事/诗歌等
  * 
+ * 图片分析、视觉问答、文字分析和创意描述另有 /stream 结尾的流式版本（text/event-stream），边生成边返回。
+ * 
+ * 上传的图片由 ImageUploadReader 直接从请求体读取到内存（过大时转存到临时文件），不经过磁盘中转。
+ * 
  * 参考文档：https://docs.springframework.org.cn/spring-ai/reference/api/multimodality.html
  * 
  * @author Spring AI Course
@@ -38,9 +47,11 @@ public class MultimodalController {
     private static final Logger logger = LoggerFactory.getLogger(MultimodalController.class);
 
     private final MultimodalService multimodalService;
+    private final ImageUploadReader imageUploadReader;
 
-    public MultimodalController(MultimodalService multimodalService) {
+    public MultimodalController(MultimodalService multimodalService, ImageUploadReader imageUploadReader) {
         this.multimodalService = multimodalService;
+        this.imageUploadReader = imageUploadReader;
     }
 
     // ==================== 基础图片分析 API ====================
@@ -69,12 +80,7 @@ public class MultimodalController {
 
         logger.info("收到图片分析请求，文件名: {}, 问题: {}", image.filename(), question);
 
-        return saveFilePartToTemp(image)
-                .flatMap(tempPath -> {
-                    Resource imageResource = new FileSystemResource(tempPath.toFile());
-                    return multimodalService.analyzeImage(imageResource, question)
-                            .doFinally(signal -> cleanupTempFile(tempPath));
-                })
+        return withImage(image, imageResource -> multimodalService.analyzeImage(imageResource, question))
                 .map(ResponseEntity::ok)
                 .doOnSuccess(result -> logger.info("图片分析成功"))
                 .doOnError(error -> logger.error("图片分析失败: {}", error.getMessage()));
@@ -137,12 +143,7 @@ public class MultimodalController {
         
         logger.info("收到视觉问答请求，问题: {}", question);
 
-        return saveFilePartToTemp(image)
-                .flatMap(tempPath -> {
-                    Resource imageResource = new FileSystemResource(tempPath.toFile());
-                    return multimodalService.visualQuestionAnswering(imageResource, question)
-                            .doFinally(signal -> cleanupTempFile(tempPath));
-                })
+        return withImage(image, imageResource -> multimodalService.visualQuestionAnswering(imageResource, question))
                 .map(ResponseEntity::ok)
                 .doOnSuccess(result -> logger.info("视觉问答成功"))
                 .doOnError(error -> logger.error("视觉问答失败: {}", error.getMessage()));
@@ -162,40 +163,29 @@ public class MultimodalController {
      *   -F "images=@/path/to/image2.png" \
      *   -F "prompt=对比这两张图片的差异"
      * 
+     * 图片较多时可以指定 mode=map-reduce：先并发描述每张图片，再基于描述做对比，
+     * 不指定时按 app.multimodal.compare.default-mode 选择。
+     * 
      * @param images 上传的多张图片文件
      * @param prompt 对比分析提示词（可选）
+     * @param mode 对比方式：single(一次调用), map-reduce(先描述再对比), auto(按图片数选择)，可选
      * @return 对比分析结果
      */
     @PostMapping("/compare")
     public Mono<ResponseEntity<String>> compareImages(
             @RequestPart("images") List<FilePart> images,
-            @RequestPart("prompt") String prompt) {
+            @RequestPart("prompt") String prompt,
+            @RequestPart(value = "mode", required = false) String mode) {
         
-        logger.info("收到图片对比请求，图片数量: {}", images.size());
+        logger.info("收到图片对比请求，图片数量: {}, 对比方式: {}", images.size(), mode);
 
         if (images.size() < 2) {
             return Mono.just(ResponseEntity.badRequest()
                     .body("请至少上传两张图片进行对比"));
         }
 
-        return Mono.fromCallable(() -> images.stream()
-                .map(this::saveFilePartToTemp)
-                .toList())
-                .flatMap(tempPathMonos -> 
-                    Mono.zip(tempPathMonos, objects -> 
-                        java.util.Arrays.stream(objects)
-                                .map(obj -> (Path) obj)
-                                .toList()
-                    )
-                )
-                .flatMap(tempPaths -> {
-                    List<Resource> imageResources = tempPaths.stream()
-                            .map(path -> (Resource) new FileSystemResource(path.toFile()))
-                            .toList();
-                    
-                    return multimodalService.compareImages(imageResources, prompt)
-                            .doFinally(signal -> tempPaths.forEach(this::cleanupTempFile));
-                })
+        CompareMode compareMode = parseCompareMode(mode);
+        return withImages(images, imageResources -> multimodalService.compareImages(imageResources, prompt, compareMode))
                 .map(ResponseEntity::ok)
                 .doOnSuccess(result -> logger.info("图片对比成功"))
                 .doOnError(error -> logger.error("图片对比失败: {}", error.getMessage()));
@@ -228,12 +218,8 @@ public class MultimodalController {
         
         logger.info("收到结构化信息提取请求");
 
-        return saveFilePartToTemp(image)
-                .flatMap(tempPath -> {
-                    Resource imageResource = new FileSystemResource(tempPath.toFile());
-                    return multimodalService.extractStructuredInfo(imageResource, extractionPrompt, outputFormat)
-                            .doFinally(signal -> cleanupTempFile(tempPath));
-                })
+        return withImage(image, imageResource ->
+                        multimodalService.extractStructuredInfo(imageResource, extractionPrompt, outputFormat))
                 .map(ResponseEntity::ok)
                 .doOnSuccess(result -> logger.info("结构化信息提取成功"))
                 .doOnError(error -> logger.error("结构化信息提取失败: {}", error.getMessage()));
@@ -262,12 +248,7 @@ public class MultimodalController {
         
         logger.info("收到图片文字分析请求，类型: {}", type);
 
-        return saveFilePartToTemp(image)
-                .flatMap(tempPath -> {
-                    Resource imageResource = new FileSystemResource(tempPath.toFile());
-                    return multimodalService.analyzeImageText(imageResource, type)
-                            .doFinally(signal -> cleanupTempFile(tempPath));
-                })
+        return withImage(image, imageResource -> multimodalService.analyzeImageText(imageResource, type))
                 .map(ResponseEntity::ok)
                 .doOnSuccess(result -> logger.info("图片文字分析成功"))
                 .doOnError(error -> logger.error("图片文字分析失败: {}", error.getMessage()));
@@ -296,53 +277,170 @@ public class MultimodalController {
         
         logger.info("收到创意描述请求，风格: {}", style);
 
-        return saveFilePartToTemp(image)
-                .flatMap(tempPath -> {
-                    Resource imageResource = new FileSystemResource(tempPath.toFile());
-                    return multimodalService.creativeDescription(imageResource, style)
-                            .doFinally(signal -> cleanupTempFile(tempPath));
-                })
+        return withImage(image, imageResource -> multimodalService.creativeDescription(imageResource, style))
                 .map(ResponseEntity::ok)
                 .doOnSuccess(result -> logger.info("创意描述生成成功"))
                 .doOnError(error -> logger.error("创意描述生成失败: {}", error.getMessage()));
     }
 
+    // ==================== 流式 API ====================
+
+    /**
+     * 流式分析单张图片内容
+     * 
+     * 示例请求：
+     * curl -N -X POST http://localhost:8080/api/multimodal/analyze/stream \
+     *   -F "image=@/path/to/your/image.png" \
+     *   -F "question=这张图片里有什么？"
+     * 
+     * @param image 上传的图片文件
+     * @param question 关于图片的问题（可选）
+     * @return 模型生成的内容片段
+     */
+    @PostMapping(value = "/analyze/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> streamAnalyzeImage(
+            @RequestPart("image") FilePart image,
+            @RequestPart(value = "question", required = false) String question) {
+
+        logger.info("收到流式图片分析请求，文件名: {}, 问题: {}", image.filename(), question);
+
+        return withImageStream(image, imageResource -> multimodalService.streamAnalyzeImage(imageResource, question))
+                .doOnError(error -> logger.error("流式图片分析失败: {}", error.getMessage()));
+    }
+
+    /**
+     * 流式视觉问答
+     * 
+     * @param image 上传的图片文件
+     * @param question 关于图片的具体问题
+     * @return 模型生成的内容片段
+     */
+    @PostMapping(value = "/vqa/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> streamVisualQuestionAnswering(
+            @RequestPart("image") FilePart image,
+            @RequestPart("question") String question) {
+
+        logger.info("收到流式视觉问答请求，问题: {}", question);
+
+        return withImageStream(image, imageResource ->
+                        multimodalService.streamVisualQuestionAnswering(imageResource, question))
+                .doOnError(error -> logger.error("流式视觉问答失败: {}", error.getMessage()));
+    }
+
+    /**
+     * 流式分析图片中的文字
+     * 
+     * @param image 上传的图片文件
+     * @param type 分析类型：extract(提取), summarize(总结), translate(翻译), analyze(分析)
+     * @return 模型生成的内容片段
+     */
+    @PostMapping(value = "/text/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> streamAnalyzeImageText(
+            @RequestPart("image") FilePart image,
+            @RequestPart(value = "type", required = false) String type) {
+
+        logger.info("收到流式图片文字分析请求，类型: {}", type);
+
+        return withImageStream(image, imageResource -> multimodalService.streamAnalyzeImageText(imageResource, type))
+                .doOnError(error -> logger.error("流式图片文字分析失败: {}", error.getMessage()));
+    }
+
+    /**
+     * 流式生成图片的创意描述
+     * 
+     * @param image 上传的图片文件
+     * @param style 创意风格：story(故事), poem(诗歌), marketing(营销), social(社交媒体)
+     * @return 模型生成的内容片段
+     */
+    @PostMapping(value = "/creative/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> streamCreativeDescription(
+            @RequestPart("image") FilePart image,
+            @RequestPart(value = "style", required = false) String style) {
+
+        logger.info("收到流式创意描述请求，风格: {}", style);
+
+        return withImageStream(image, imageResource -> multimodalService.streamCreativeDescription(imageResource, style))
+                .doOnError(error -> logger.error("流式创意描述生成失败: {}", error.getMessage()));
+    }
+
+    // ==================== 缓存 API ====================
+
+    /**
+     * 获取图片结果缓存统计信息
+     * 
+     * @return 命中率、内存占用和按操作的命中次数
+     */
+    @GetMapping("/cache/stats")
+    public Mono<ImageResultCache.Stats> getCacheStats() {
+        return Mono.fromSupplier(multimodalService::getCacheStats);
+    }
+
     // ==================== 辅助方法 ====================
 
     /**
-     * 将 FilePart 保存到临时文件
+     * 读取上传的图片并执行操作，操作结束（成功、失败或取消）后释放图片
      * 
      * @param filePart 上传的文件
-     * @return 临时文件路径
+     * @param action 使用图片资源的操作
+     * @return 操作结果
      */
-    private Mono<Path> saveFilePartToTemp(FilePart filePart) {
-        return Mono.fromCallable(() -> Files.createTempDirectory("multimodal_"))
-                .flatMap(tempDir -> {
-                    Path tempFile = tempDir.resolve(filePart.filename());
-                    return filePart.transferTo(tempFile.toFile())
-                            .then(Mono.fromCallable(() -> {
-                                logger.debug("文件已保存到临时路径: {}", tempFile);
-                                return tempFile;
-                            }));
-                })
-                .subscribeOn(Schedulers.boundedElastic());
+    private <T> Mono<T> withImage(FilePart filePart, Function<Resource, Mono<T>> action) {
+        return imageUploadReader.read(filePart)
+                .flatMap(upload -> action.apply(upload.resource())
+                        .doFinally(signal -> upload.release()));
     }
 
     /**
-     * 清理临时文件
+     * 解析对比方式，支持 map-reduce 和 map_reduce 两种写法
      * 
-     * @param path 临时文件路径
+     * @param mode 对比方式，为空时返回 null（使用默认方式）
+     * @return 对比方式
      */
-    private void cleanupTempFile(Path path) {
+    private static CompareMode parseCompareMode(String mode) {
+        if (mode == null || mode.isBlank()) {
+            return null;
+        }
         try {
-            Files.deleteIfExists(path);
-            Files.deleteIfExists(path.getParent());
-            logger.debug("临时文件已清理: {}", path);
-        } catch (Exception e) {
-            logger.warn("清理临时文件失败: {}", path, e);
+            return CompareMode.valueOf(mode.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的对比方式: " + mode + "，可选值: single, map-reduce, auto");
         }
     }
 
+    /**
+     * 读取上传的图片并执行流式操作，流结束（完成、失败或客户端断开）后释放图片
+     * 
+     * @param filePart 上传的文件
+     * @param action 使用图片资源的流式操作
+     * @return 操作输出的元素
+     */
+    private <T> Flux<T> withImageStream(FilePart filePart, Function<Resource, Flux<T>> action) {
+        return imageUploadReader.read(filePart)
+                .flatMapMany(upload -> action.apply(upload.resource())
+                        .doFinally(signal -> upload.release()));
+    }
+
+    /**
+     * 读取多张上传的图片并执行操作，操作结束后释放所有已读取的图片
+     * 
+     * @param fileParts 上传的文件列表
+     * @param action 使用图片资源列表的操作
+     * @return 操作结果
+     */
+    private <T> Mono<T> withImages(List<FilePart> fileParts, Function<List<Resource>, Mono<T>> action) {
+        return Mono.defer(() -> {
+            // concatMap 逐个读取，列表只在当前链路上串行访问
+            List<ImageUpload> uploads = new ArrayList<>(fileParts.size());
+            return Flux.fromIterable(fileParts)
+                    .concatMap(imageUploadReader::read)
+                    .doOnNext(uploads::add)
+                    .map(ImageUpload::resource)
+                    .collectList()
+                    .flatMap(action)
+                    .doFinally(signal -> uploads.forEach(ImageUpload::release));
+        });
+    }
+
     // ==================== 请求/响应记录类 ====================
 
     /**
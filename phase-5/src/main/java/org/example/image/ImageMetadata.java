@@ -0,0 +1,194 @@
+package org.example.image;
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 图片元数据处理
+ * 
+ * 1. EXIF 方向 - 从 JPEG 的 APP1 段读取 Orientation 标签，解码时忽略了元数据，需要在编码前按该标签旋转像素
+ * 2. WebP 元数据 - ImageIO 无法解码 WebP，只能在 RIFF 容器层面删除 EXIF、XMP 块，图像数据保持不变
+ */
+final class ImageMetadata {
+
+    /**
+     * EXIF Orientation 标签
+     */
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    /**
+     * VP8X 块标志位中的 EXIF 和 XMP 标志
+     */
+    private static final int VP8X_EXIF_FLAG = 0x08;
+    private static final int VP8X_XMP_FLAG = 0x04;
+
+    private ImageMetadata() {
+    }
+
+    /**
+     * 读取 JPEG 的 EXIF 方向
+     * 
+     * @param data JPEG 数据（至少包含 APP1 段，通常是文件开头的 64KB）
+     * @return 方向（1-8）；没有 EXIF、不是 JPEG 或无法解析时返回 1
+     */
+    static int orientation(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            return 1;
+        }
+        int offset = 2;
+        while (offset + 4 <= data.length) {
+            if ((data[offset] & 0xFF) != 0xFF) {
+                return 1;
+            }
+            int marker = data[offset + 1] & 0xFF;
+            // 扫描数据（SOS）或文件结束（EOI）之后不会再有 APP 段
+            if (marker == 0xDA || marker == 0xD9) {
+                return 1;
+            }
+            int length = readShort(data, offset + 2, false);
+            if (marker == 0xE1 && isExifHeader(data, offset + 4)) {
+                return tiffOrientation(data, offset + 10, Math.min(data.length, offset + 2 + length));
+            }
+            offset += 2 + length;
+        }
+        return 1;
+    }
+
+    /**
+     * 按 EXIF 方向旋转或翻转图片，使像素方向与拍摄时的显示方向一致
+     * 
+     * @param source 解码后的图片
+     * @param orientation EXIF 方向（1-8）
+     * @return 旋转后的图片；方向为 1 或无效时返回原图
+     */
+    static BufferedImage orient(BufferedImage source, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return source;
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        // 5-8 需要交换宽高
+        boolean transposed = orientation >= 5;
+        BufferedImage target = new BufferedImage(transposed ? height : width, transposed ? width : height,
+                BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            source.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                // 2 水平翻转，3 旋转 180°，4 垂直翻转，5 沿主对角线翻转，
+                // 6 顺时针旋转 90°，7 沿副对角线翻转，8 逆时针旋转 90°
+                int targetX = switch (orientation) {
+                    case 2, 3 -> width - 1 - x;
+                    case 4 -> x;
+                    case 5, 8 -> y;
+                    default -> height - 1 - y;
+                };
+                int targetY = switch (orientation) {
+                    case 2 -> y;
+                    case 3, 4 -> height - 1 - y;
+                    case 5, 6 -> x;
+                    default -> width - 1 - x;
+                };
+                target.setRGB(targetX, targetY, row[x]);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * 删除 WebP 中的 EXIF 和 XMP 块，并清除 VP8X 中对应的标志位
+     * 
+     * @param data WebP 数据
+     * @return 不含 EXIF、XMP 的 WebP 数据
+     * @throws IllegalArgumentException RIFF 结构损坏
+     */
+    static byte[] stripWebp(byte[] data) {
+        byte[] result = new byte[data.length];
+        System.arraycopy(data, 0, result, 0, 12);
+        int length = 12;
+        int offset = 12;
+        while (offset + 8 <= data.length) {
+            String fourCc = new String(data, offset, 4, StandardCharsets.US_ASCII);
+            long size = readInt(data, offset + 4, true) & 0xFFFFFFFFL;
+            if (offset + 8 + size > data.length) {
+                throw new IllegalArgumentException("WebP 图片已损坏");
+            }
+            // 块按偶数字节对齐，最后一个块可能省略填充字节
+            int next = (int) Math.min(data.length, offset + 8 + size + (size & 1));
+            if (!"EXIF".equals(fourCc) && !"XMP ".equals(fourCc)) {
+                System.arraycopy(data, offset, result, length, next - offset);
+                if ("VP8X".equals(fourCc) && size > 0) {
+                    result[length + 8] &= (byte) ~(VP8X_EXIF_FLAG | VP8X_XMP_FLAG);
+                }
+                length += next - offset;
+            }
+            offset = next;
+        }
+        writeIntLittleEndian(result, 4, length - 8);
+        return length == result.length ? result : Arrays.copyOf(result, length);
+    }
+
+    private static boolean isExifHeader(byte[] data, int offset) {
+        return offset + 6 <= data.length
+                && data[offset] == 'E' && data[offset + 1] == 'x' && data[offset + 2] == 'i' && data[offset + 3] == 'f'
+                && data[offset + 4] == 0 && data[offset + 5] == 0;
+    }
+
+    /**
+     * 在 TIFF 结构的第一个 IFD 中查找 Orientation 标签
+     * 
+     * @param data 数据
+     * @param tiff TIFF 头的起始位置
+     * @param end APP1 段的结束位置
+     */
+    private static int tiffOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return 1;
+        }
+        boolean littleEndian;
+        if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 1;
+        }
+        long ifd = readInt(data, tiff + 4, littleEndian) & 0xFFFFFFFFL;
+        if (ifd < 8 || tiff + ifd + 2 > end) {
+            return 1;
+        }
+        int entries = tiff + (int) ifd;
+        int count = readShort(data, entries, littleEndian);
+        for (int i = 0; i < count; i++) {
+            int entry = entries + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, littleEndian) == ORIENTATION_TAG) {
+                int value = readShort(data, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int first = data[offset] & 0xFF;
+        int second = data[offset + 1] & 0xFF;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int high = readShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        int low = readShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    private static void writeIntLittleEndian(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >>> 8);
+        data[offset + 2] = (byte) (value >>> 16);
+        data[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,372 @@
+package org.example.image;
+
+import org.example.config.MultimodalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 图片预处理
+ * 
+ * 调用多模态模型前缩小图片，减少上传时间、Base64 膨胀和图片 token 消耗：
+ * 1. 格式识别 - 按文件头（magic bytes）识别真实格式并设置正确的 MIME 类型，不再一律标记为 PNG
+ * 2. 缩放 - 长边超过 max-edge（可按模型配置）时等比缩小；超大图片解码时先降采样，减少内存占用
+ * 3. 重新编码 - 统一编码为 JPEG，只写像素数据，原图的 EXIF 等元数据不会带入；JPEG 的 EXIF 方向在编码前应用到像素上
+ * 4. 指纹 - 计算原图内容的 SHA-256 和缩放后图片的感知哈希（dHash），供结果缓存使用
+ * 
+ * 解码和编码是 CPU 密集的阻塞操作，在独立的有界线程池上执行，不占用事件循环和 boundedElastic 线程。
+ * 转存到临时文件的大图片直接从文件解码，不会再整体读回内存。
+ * 
+ * 开启预处理时不会发送可解码图片的原始字节：无需缩小的 PNG、GIF、BMP 重新编码为 JPEG 后变大时，
+ * 改为无损编码为 PNG（不写任何附加块）；无法解码的图片返回 400。
+ * JDK 自带的 ImageIO 不支持 WebP，WebP 图片不缩放，只在容器层面删除 EXIF、XMP 块后发送。
+ */
+@Component
+public class ImagePreprocessor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    private static final MimeType IMAGE_WEBP = MimeType.valueOf("image/webp");
+    private static final MimeType IMAGE_BMP = MimeType.valueOf("image/bmp");
+
+    /**
+     * 临时文件需要读取的文件头长度：用于识别格式和读取 JPEG 的 EXIF 方向（APP1 段最长 64KB）
+     */
+    private static final int HEADER_LENGTH = 64 * 1024;
+
+    private final MultimodalProperties.Preprocess config;
+    private final int maxEdge;
+    private final Scheduler scheduler;
+
+    public ImagePreprocessor(MultimodalProperties properties, ChatModel chatModel) {
+        this.config = properties.getPreprocess();
+        String model = chatModel.getDefaultOptions() != null ? chatModel.getDefaultOptions().getModel() : null;
+        this.maxEdge = config.maxEdgeFor(model);
+        this.scheduler = Schedulers.newBoundedElastic(config.getThreads(), config.getQueueSize(), "image-preprocess");
+        // 默认情况下 ImageIO 会用临时文件缓存流数据，这里的数据在内存中或本身就是文件，不需要
+        ImageIO.setUseCache(false);
+        logger.info("图片预处理: enabled={}, model={}, maxEdge={}, quality={}", config.isEnabled(), model, maxEdge, config.getQuality());
+    }
+
+    /**
+     * 预处理单张图片
+     * 
+     * @param resource 图片资源
+     * @return 预处理后的图片
+     */
+    public Mono<PreparedImage> prepare(Resource resource) {
+        return Mono.fromCallable(() -> resource.isFile() ? prepareFile(resource) : prepareBytes(resource.getContentAsByteArray()))
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * 预处理多张图片，结果顺序与输入一致
+     * 
+     * @param resources 图片资源列表
+     * @return 预处理后的图片列表
+     */
+    public Mono<List<PreparedImage>> prepareAll(List<Resource> resources) {
+        return Flux.fromIterable(resources)
+                .flatMapSequential(this::prepare)
+                .collectList();
+    }
+
+    /**
+     * 预处理内存中的图片
+     */
+    private PreparedImage prepareBytes(byte[] data) {
+        return prepare(data, data.length, new ByteArrayResource(data),
+                () -> new ByteArrayInputStream(data),
+                () -> ImageIO.createImageInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * 预处理转存到临时文件的图片：按文件头识别格式、流式计算哈希、直接从文件解码，不把整个文件读入内存
+     */
+    private PreparedImage prepareFile(Resource resource) throws IOException {
+        File file = resource.getFile();
+        byte[] header;
+        try (InputStream stream = new FileInputStream(file)) {
+            header = stream.readNBytes(HEADER_LENGTH);
+        }
+        return prepare(header, file.length(), resource,
+                () -> new FileInputStream(file),
+                () -> ImageIO.createImageInputStream(file));
+    }
+
+    /**
+     * 预处理一张图片
+     * 
+     * @param header 图片开头的字节（HEADER_LENGTH 字节，不足时为整个图片）
+     * @param size 图片大小
+     * @param original 原图
+     * @param content 读取原图内容，用于计算哈希
+     * @param image 打开原图的 ImageInputStream，用于解码
+     */
+    private PreparedImage prepare(byte[] header, long size, Resource original, Source<InputStream> content,
+                                  Source<ImageInputStream> image) {
+        MimeType mimeType = sniff(header);
+        if (mimeType == null) {
+            throw new IllegalArgumentException("无法识别的图片格式，支持 PNG、JPEG、GIF、BMP、WebP");
+        }
+        String contentHash = sha256(content);
+        if (!config.isEnabled()) {
+            return PreparedImage.original(mimeType, original, size, contentHash, null);
+        }
+        if (IMAGE_WEBP.equals(mimeType)) {
+            byte[] stripped = ImageMetadata.stripWebp(readAll(content));
+            return new PreparedImage(IMAGE_WEBP, new ByteArrayResource(stripped), -1, -1, size, stripped.length,
+                    contentHash, null);
+        }
+
+        long start = System.nanoTime();
+        try (ImageInputStream input = image.open()) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("图片无法解码: " + mimeType);
+            }
+            ImageReader reader = readers.next();
+            BufferedImage decoded;
+            int longEdge;
+            try {
+                // 忽略元数据，只读取像素
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > config.getMaxPixels()) {
+                    throw new IllegalArgumentException("图片尺寸过大: " + width + "x" + height);
+                }
+                longEdge = Math.max(width, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // 远大于目标尺寸时解码阶段就降采样，保留至少两倍目标尺寸再平滑缩小
+                int subsampling = longEdge / (maxEdge * 2);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+
+            // 解码时忽略了元数据，按 EXIF 方向旋转后再编码，否则手机竖拍的照片会以横向发送给模型
+            int orientation = MimeTypeUtils.IMAGE_JPEG.equals(mimeType) ? ImageMetadata.orientation(header) : 1;
+            BufferedImage scaled = ImageMetadata.orient(scale(decoded, maxEdge), orientation);
+            long perceptualHash = dHash(scaled);
+            MimeType encodedType = MimeTypeUtils.IMAGE_JPEG;
+            byte[] encoded = encodeJpeg(scaled, config.getQuality());
+            // 无需缩小的非 JPEG 图片（如纯色截图的 PNG）编码为 JPEG 后可能更大，此时无损编码为 PNG
+            if (longEdge <= maxEdge && encoded.length >= size && !MimeTypeUtils.IMAGE_JPEG.equals(mimeType)) {
+                encodedType = MimeTypeUtils.IMAGE_PNG;
+                encoded = encodePng(scaled);
+            }
+            logger.debug("图片预处理完成: {} {}B -> {} {}x{} {}B, 耗时 {}ms", mimeType, size, encodedType,
+                    scaled.getWidth(), scaled.getHeight(), encoded.length, (System.nanoTime() - start) / 1_000_000);
+            return new PreparedImage(encodedType, new ByteArrayResource(encoded),
+                    scaled.getWidth(), scaled.getHeight(), size, encoded.length, contentHash, perceptualHash);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("图片无法解码: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 等比缩小到长边不超过 maxEdge，并转换为不透明的 RGB 图片（透明区域填充白色）
+     * 
+     * 缩小比例较大时逐次减半，避免一次缩小导致的锯齿
+     */
+    private static BufferedImage scale(BufferedImage source, int maxEdge) {
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage current = source;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    /**
+     * 差值哈希（dHash）：缩小为 9x8 的灰度图，每行相邻像素比较亮度得到 64 位
+     * 
+     * 对缩放、重新压缩和轻微的颜色变化不敏感，两张图片哈希的汉明距离越小越相似
+     */
+    private static long dHash(BufferedImage image) {
+        // 按区域求平均亮度（双线性插值一次缩小到 9x8 只会采样少数像素，结果不稳定）
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[9 * 8];
+        int[] counts = new int[9 * 8];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cellY = y * 8 / height;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int luma = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                int cell = cellY * 9 + x * 9 / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                int cell = y * 9 + x;
+                long left = counts[cell] > 0 ? sums[cell] / counts[cell] : 0;
+                long right = counts[cell + 1] > 0 ? sums[cell + 1] / counts[cell + 1] : 0;
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    private static String sha256(Source<InputStream> content) {
+        try (InputStream stream = content.open()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取图片失败", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 无损编码为 PNG，不写入文本、EXIF 等附加块
+     */
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(image.getWidth() * image.getHeight());
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), null);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] readAll(Source<InputStream> content) {
+        try (InputStream stream = content.open()) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取图片失败", e);
+        }
+    }
+
+    /**
+     * 按文件头识别图片格式
+     * 
+     * @param data 图片数据
+     * @return MIME 类型；无法识别时返回 null
+     */
+    static MimeType sniff(byte[] data) {
+        if (startsWith(data, 0, 0x89, 'P', 'N', 'G')) {
+            return MimeTypeUtils.IMAGE_PNG;
+        }
+        if (startsWith(data, 0, 0xFF, 0xD8, 0xFF)) {
+            return MimeTypeUtils.IMAGE_JPEG;
+        }
+        if (startsWith(data, 0, 'G', 'I', 'F', '8')) {
+            return MimeTypeUtils.IMAGE_GIF;
+        }
+        if (startsWith(data, 0, 'R', 'I', 'F', 'F') && startsWith(data, 8, 'W', 'E', 'B', 'P')) {
+            return IMAGE_WEBP;
+        }
+        if (startsWith(data, 0, 'B', 'M')) {
+            return IMAGE_BMP;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... magic) {
+        if (data.length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((data[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    /**
+     * 按需打开原图的读取流（内存中的字节数组或临时文件）
+     */
+    @FunctionalInterface
+    private interface Source<T extends Closeable> {
+        T open() throws IOException;
+    }
+}
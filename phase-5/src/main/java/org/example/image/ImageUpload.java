@@ -0,0 +1,40 @@
+package org.example.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 已读取的上传图片
+ * 
+ * 小图片保存在内存中（ByteArrayResource），大图片保存在唯一命名的临时文件中（FileSystemResource）。
+ * 使用完毕后需要调用 release() 删除临时文件。
+ * 
+ * @param filename 客户端提供的文件名（只用于日志，不参与临时文件命名）
+ * @param resource 图片内容
+ * @param size 图片大小（字节）
+ * @param spillFile 临时文件路径（保存在内存中时为 null）
+ */
+public record ImageUpload(String filename, Resource resource, long size, Path spillFile) {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageUpload.class);
+
+    /**
+     * 释放图片占用的临时文件
+     */
+    public void release() {
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spillFile);
+            logger.debug("临时文件已清理: {}", spillFile);
+        } catch (IOException e) {
+            logger.warn("清理临时文件失败: {}", spillFile, e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.image;
+
+import org.example.config.MultimodalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 上传图片读取器
+ * 
+ * 直接读取 FilePart 的 DataBuffer，不再先写临时文件再读回：
+ * 1. 内存 - 不超过 memory-threshold 的图片复制到一个字节数组中，DataBuffer 复制后立即释放
+ * 2. 转存 - 超过阈值后转存到唯一命名的临时文件（不使用客户端文件名），请求结束后删除
+ * 3. 大小上限 - 超过 max-size 时立即停止读取并返回 400
+ * 
+ * 只有写临时文件时才切换到 boundedElastic 线程，内存读取在当前线程完成。
+ */
+@Component
+public class ImageUploadReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageUploadReader.class);
+
+    /**
+     * 未知大小时内存缓冲区的初始容量
+     */
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final long maxSize;
+    private final long memoryThreshold;
+    private final Path spillDirectory;
+
+    public ImageUploadReader(MultimodalProperties properties) {
+        MultimodalProperties.Upload config = properties.getUpload();
+        this.maxSize = config.getMaxSize().toBytes();
+        this.memoryThreshold = Math.min(config.getMemoryThreshold().toBytes(), maxSize);
+        this.spillDirectory = StringUtils.hasText(config.getSpillDirectory())
+                ? Paths.get(config.getSpillDirectory())
+                : null;
+    }
+
+    /**
+     * 读取上传的图片
+     * 
+     * @param filePart 上传的文件
+     * @return 图片内容，使用完毕后需要调用 ImageUpload.release()
+     */
+    public Mono<ImageUpload> read(FilePart filePart) {
+        return Mono.defer(() -> {
+            UploadSink sink = new UploadSink(filePart.filename(), filePart.headers().getContentLength());
+            return filePart.content()
+                    .concatMap(buffer -> sink.needsDisk(buffer.readableByteCount())
+                            ? Mono.fromRunnable(() -> sink.write(buffer)).subscribeOn(Schedulers.boundedElastic())
+                            : Mono.fromRunnable(() -> sink.write(buffer)))
+                    .then(Mono.fromCallable(sink::finish))
+                    .doOnError(error -> sink.discard())
+                    .doOnCancel(sink::discard);
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * 单次上传的写入状态，concatMap 保证写入是串行的
+     */
+    private final class UploadSink {
+
+        private final String filename;
+        private byte[] bytes;
+        private long size;
+        private Path spillFile;
+        private FileChannel channel;
+
+        UploadSink(String filename, long contentLength) {
+            this.filename = filename;
+            // 已知大小且在内存阈值内时一次分配到位，结束时不需要再复制
+            this.bytes = new byte[contentLength > 0 && contentLength <= memoryThreshold
+                    ? (int) contentLength
+                    : (int) Math.min(INITIAL_CAPACITY, memoryThreshold)];
+        }
+
+        boolean needsDisk(int length) {
+            return channel != null || size + length > memoryThreshold;
+        }
+
+        void write(DataBuffer buffer) {
+            try {
+                int length = buffer.readableByteCount();
+                if (size + length > maxSize) {
+                    throw new IllegalArgumentException("图片大小超过限制: " + maxSize / 1024 / 1024 + "MB");
+                }
+                if (needsDisk(length)) {
+                    writeToDisk(buffer);
+                } else {
+                    if (size + length > bytes.length) {
+                        bytes = Arrays.copyOf(bytes, (int) Math.min(memoryThreshold, Math.max(size + length, bytes.length * 2L)));
+                    }
+                    buffer.read(bytes, (int) size, length);
+                }
+                size += length;
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        private void writeToDisk(DataBuffer buffer) {
+            try {
+                if (channel == null) {
+                    spillFile = spillDirectory != null
+                            ? Files.createTempFile(Files.createDirectories(spillDirectory), "upload-", ".tmp")
+                            : Files.createTempFile("upload-", ".tmp");
+                    channel = FileChannel.open(spillFile, StandardOpenOption.WRITE);
+                    writeFully(ByteBuffer.wrap(bytes, 0, (int) size));
+                    bytes = null;
+                    logger.debug("上传图片超过内存阈值，转存到临时文件: {}", spillFile);
+                }
+                try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                    while (iterator.hasNext()) {
+                        writeFully(iterator.next());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入临时文件失败", e);
+            }
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        ImageUpload finish() throws IOException {
+            if (channel != null) {
+                channel.close();
+                return new ImageUpload(filename, new FileSystemResource(spillFile), size, spillFile);
+            }
+            byte[] content = bytes.length == size ? bytes : Arrays.copyOf(bytes, (int) size);
+            return new ImageUpload(filename, new ByteArrayResource(content, "upload " + filename), size, null);
+        }
+
+        /**
+         * 读取失败或取消时关闭并删除临时文件
+         */
+        void discard() {
+            bytes = null;
+            if (spillFile == null) {
+                return;
+            }
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                logger.warn("清理临时文件失败: {}", spillFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.image;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.MimeType;
+
+/**
+ * 预处理后的图片，可直接作为多模态请求的媒体数据
+ * 
+ * @param mimeType 图片的真实格式
+ * @param resource 图片内容
+ * @param width 宽度（未解码时为 -1）
+ * @param height 高度（未解码时为 -1）
+ * @param originalSize 原始大小（字节）
+ * @param size 预处理后的大小（字节）
+ * @param contentHash 原始图片内容的 SHA-256（十六进制）
+ * @param perceptualHash 感知哈希（64 位 dHash，相似图片的哈希只有少数位不同；未解码时为 null）
+ */
+public record PreparedImage(MimeType mimeType,
+                            Resource resource,
+                            int width,
+                            int height,
+                            long originalSize,
+                            long size,
+                            String contentHash,
+                            Long perceptualHash) {
+
+    /**
+     * 未经缩放和重新编码的原始图片
+     */
+    static PreparedImage original(MimeType mimeType, Resource resource, long size, String contentHash, Long perceptualHash) {
+        return new PreparedImage(mimeType, resource, -1, -1, size, size, contentHash, perceptualHash);
+    }
+}
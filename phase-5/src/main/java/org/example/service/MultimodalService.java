@@ -1,16 +1,24 @@
 package org.example.service;
 
+import org.example.cache.ImageResultCache;
+import org.example.config.MultimodalProperties;
+import org.example.config.MultimodalProperties.CompareMode;
+import org.example.image.ImagePreprocessor;
+import org.example.image.PreparedImage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * 多模态 AI 服务
@@ -24,6 +32,11 @@ import java.util.List;
  * - Google: Gemini 1.5 Pro/Flash
  * - 开源: LLaVA, BakLLaVA, Llama 3.2
  * 
+ * 图片在调用模型前经过 ImagePreprocessor 预处理：识别真实格式、按模型限制缩小并重新编码为 JPEG。
+ * 图片分析、文字分析和结构化提取的结果由 ImageResultCache 缓存，重复提交同一张图片时不再调用模型。
+ * 多图对比支持 map-reduce 模式：先并发描述每张图片（描述同样被缓存），再基于文字描述做一次对比。
+ * 图片分析、视觉问答、文字分析和创意描述提供流式版本，模型生成的内容边生成边返回，不占用 boundedElastic 线程。
+ * 
  * 参考文档：https://docs.springframework.org.cn/spring-ai/reference/api/multimodality.html
  * 
  * @author Spring AI Course
@@ -33,10 +46,39 @@ public class MultimodalService {
 
     private static final Logger logger = LoggerFactory.getLogger(MultimodalService.class);
 
+    /**
+     * map-reduce 对比中描述单张图片的提示词，与具体的对比问题无关，描述结果可以跨请求复用
+     */
+    private static final String DESCRIBE_PROMPT = """
+            请详细、客观地描述这张图片，包括：主要物体及其数量、场景、颜色、图中的文字、构图和风格。
+            描述将用于之后与其他图片进行对比，请尽量包含可以区分图片的细节，只输出描述内容。
+            """;
+
+    /**
+     * map-reduce 对比中基于各图片描述进行对比的提示词
+     */
+    private static final String REDUCE_PROMPT = """
+            以下是 %d 张图片的文字描述（按上传顺序编号）：
+
+            %s
+            请根据这些描述完成以下任务：
+            %s
+            对比时请用编号指代图片；描述失败的图片请说明无法参与对比。
+            """;
+
     private final ChatClient chatClient;
+    private final ImagePreprocessor imagePreprocessor;
+    private final ImageResultCache resultCache;
+    private final MultimodalProperties.Compare compareConfig;
 
-    public MultimodalService(ChatModel chatModel) {
+    public MultimodalService(ChatModel chatModel,
+                             ImagePreprocessor imagePreprocessor,
+                             ImageResultCache resultCache,
+                             MultimodalProperties properties) {
         this.chatClient = ChatClient.builder(chatModel).build();
+        this.imagePreprocessor = imagePreprocessor;
+        this.resultCache = resultCache;
+        this.compareConfig = properties.getCompare();
     }
 
     /**
@@ -47,7 +89,7 @@ public class MultimodalService {
      * 
      * 实现原理：
      * 1. 使用 UserMessage 的 media 字段传递图像数据
-     * 2. MimeType 指定图像格式（如 IMAGE_PNG, IMAGE_JPEG）
+     * 2. MimeType 指定图像格式（如 IMAGE_PNG, IMAGE_JPEG），由预处理按文件头识别
      * 3. Media 数据可以是 Resource 对象（本地文件/类路径资源）或 URI
      * 
      * @param imageResource 图片资源（支持 ClassPathResource, FileSystemResource, UrlResource 等）
@@ -55,22 +97,27 @@ public class MultimodalService {
      * @return AI 对图片的分析结果
      */
     public Mono<String> analyzeImage(Resource imageResource, String question) {
-        return Mono.fromCallable(() -> {
+        return imagePreprocessor.prepare(imageResource).flatMap(image -> Mono.fromCallable(() -> {
             logger.info("开始分析图片，问题: {}", question);
 
-            // 使用 ChatClient 构建多模态请求
-            String response = chatClient.prompt()
-                    .user(userSpec -> userSpec
-                            // 设置文本提示
-                            .text(question != null ? question : "请详细描述这张图片中的内容，包括主要物体、场景、颜色、氛围等。")
-                            // 添加媒体（图片）
-                            .media(MimeTypeUtils.IMAGE_PNG, imageResource))
-                    .call()
-                    .content();
+            String prompt = analyzePrompt(question);
 
-            logger.info("图片分析完成");
-            return response;
-        }).subscribeOn(Schedulers.boundedElastic());
+            // 相同的图片和问题直接返回缓存的结果
+            return resultCache.getOrLoad("analyze", prompt, image, () -> {
+                // 使用 ChatClient 构建多模态请求
+                String response = chatClient.prompt()
+                        .user(userSpec -> userSpec
+                                // 设置文本提示
+                                .text(prompt)
+                                // 添加媒体（图片）
+                                .media(image.mimeType(), image.resource()))
+                        .call()
+                        .content();
+
+                logger.info("图片分析完成");
+                return response;
+            });
+        }).subscribeOn(Schedulers.boundedElastic()));
     }
 
     /**
@@ -94,7 +141,34 @@ public class MultimodalService {
      * @return 对比分析结果
      */
     public Mono<String> compareImages(List<Resource> imageResources, String comparisonPrompt) {
-        return Mono.fromCallable(() -> {
+        return compareImages(imageResources, comparisonPrompt, null);
+    }
+
+    /**
+     * 对比多张图片，可选择对比方式
+     * 
+     * 所有图片放进一次调用时，耗时和 token 消耗随图片数增长，图片较多时容易超时。
+     * map-reduce 方式先并发描述每张图片（并发数和单张超时可配置，描述结果会被缓存），
+     * 再把文字描述交给模型做一次纯文本对比。描述和对比都使用可取消的流式调用，
+     * 总耗时不超过 ⌈图片数 / 并发数⌉ x 单张超时 + 对比超时。
+     * 
+     * @param imageResources 图片资源列表
+     * @param comparisonPrompt 对比分析提示词
+     * @param mode 对比方式（为 null 时使用配置的默认方式）
+     * @return 对比分析结果
+     */
+    public Mono<String> compareImages(List<Resource> imageResources, String comparisonPrompt, CompareMode mode) {
+        CompareMode resolved = mode != null ? mode : compareConfig.getDefaultMode();
+        if (resolved == CompareMode.AUTO) {
+            resolved = imageResources.size() > compareConfig.getSingleShotMaxImages()
+                    ? CompareMode.MAP_REDUCE
+                    : CompareMode.SINGLE;
+        }
+        if (resolved == CompareMode.MAP_REDUCE) {
+            return compareByDescriptions(imageResources, comparisonPrompt);
+        }
+
+        return imagePreprocessor.prepareAll(imageResources).flatMap(images -> Mono.fromCallable(() -> {
             logger.info("开始对比 {} 张图片", imageResources.size());
 
             // 构建多模态请求，添加多张图片
@@ -106,8 +180,8 @@ public class MultimodalService {
                                 : "请对比分析这些图片，找出它们的相似之处和差异。");
                         
                         // 添加所有图片到 media
-                        for (Resource imageResource : imageResources) {
-                            userSpec.media(MimeTypeUtils.IMAGE_PNG, imageResource);
+                        for (PreparedImage image : images) {
+                            userSpec.media(image.mimeType(), image.resource());
                         }
                     })
                     .call()
@@ -115,7 +189,85 @@ public class MultimodalService {
 
             logger.info("图片对比完成");
             return response;
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * map-reduce 对比：并发描述每张图片，再基于描述做一次纯文本对比
+     */
+    private Mono<String> compareByDescriptions(List<Resource> imageResources, String comparisonPrompt) {
+        long start = System.currentTimeMillis();
+        logger.info("开始以 map-reduce 方式对比 {} 张图片，并发数: {}", imageResources.size(), compareConfig.getConcurrency());
+
+        return Flux.range(0, imageResources.size())
+                .flatMapSequential(index -> describeForComparison(index, imageResources.get(index)),
+                        Math.max(1, compareConfig.getConcurrency()))
+                .collectList()
+                .flatMap(descriptions -> {
+                    long failed = descriptions.stream().filter(d -> d.error() != null).count();
+                    if (failed == descriptions.size()) {
+                        return Mono.<String>error(
+                                new IllegalStateException("所有图片描述均失败: " + descriptions.get(0).error()));
+                    }
+                    logger.info("图片描述完成: 成功 {} 张，失败 {} 张，耗时 {}ms",
+                            descriptions.size() - failed, failed, System.currentTimeMillis() - start);
+
+                    StringBuilder numbered = new StringBuilder();
+                    for (ImageDescription description : descriptions) {
+                        numbered.append("图片 ").append(description.index() + 1).append("：")
+                                .append(description.error() != null
+                                        ? "（描述失败：" + description.error() + "）"
+                                        : description.text())
+                                .append("\n\n");
+                    }
+                    String prompt = String.format(REDUCE_PROMPT, descriptions.size(), numbered,
+                            comparisonPrompt != null ? comparisonPrompt : "请对比分析这些图片，找出它们的相似之处和差异。");
+
+                    // 纯文本调用，不再附带图片；流式调用在超时后取消订阅即可中断请求
+                    return chatClient.prompt()
+                            .user(prompt)
+                            .stream()
+                            .content()
+                            .collect(Collectors.joining())
+                            .timeout(compareConfig.getReduceTimeout())
+                            .onErrorMap(TimeoutException.class, e -> new IllegalStateException(
+                                    "图片对比超时（" + compareConfig.getReduceTimeout().toSeconds() + "s）", e))
+                            .doOnNext(response -> logger.info("图片对比完成，总耗时 {}ms",
+                                    System.currentTimeMillis() - start));
+                });
+    }
+
+    /**
+     * 描述单张图片，超时或失败时返回带错误信息的结果，不影响其他图片
+     * 
+     * 超时时间包含预处理、查询缓存和模型调用。
+     */
+    private Mono<ImageDescription> describeForComparison(int index, Resource imageResource) {
+        return imagePreprocessor.prepare(imageResource)
+                .flatMap(image -> Mono.fromCallable(() -> resultCache.get("describe", DESCRIBE_PROMPT, image))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .switchIfEmpty(Mono.defer(() -> chatClient.prompt()
+                                .user(userSpec -> userSpec
+                                        .text(DESCRIBE_PROMPT)
+                                        .media(image.mimeType(), image.resource()))
+                                .stream()
+                                .content()
+                                .collect(Collectors.joining())
+                                .flatMap(text -> Mono.fromCallable(() -> {
+                                            resultCache.put("describe", DESCRIBE_PROMPT, image, text);
+                                            return text;
+                                        })
+                                        .subscribeOn(Schedulers.boundedElastic())))))
+                // 模型调用是流式的，超时取消订阅时会中断请求，不会在后台继续占用线程和连接
+                .timeout(compareConfig.getItemTimeout())
+                .map(text -> new ImageDescription(index, text, null))
+                .onErrorResume(e -> {
+                    String error = e instanceof TimeoutException
+                            ? "超时（" + compareConfig.getItemTimeout().toSeconds() + "s）"
+                            : e.getMessage();
+                    logger.warn("图片 {} 描述失败: {}", index + 1, error);
+                    return Mono.just(new ImageDescription(index, null, error));
+                });
     }
 
     /**
@@ -132,7 +284,7 @@ public class MultimodalService {
     public Mono<String> extractStructuredInfo(Resource imageResource, 
                                                String extractionPrompt,
                                                String outputFormat) {
-        return Mono.fromCallable(() -> {
+        return imagePreprocessor.prepare(imageResource).flatMap(image -> Mono.fromCallable(() -> {
             logger.info("开始从图片提取结构化信息");
 
             String fullPrompt = String.format("""
@@ -153,16 +305,18 @@ public class MultimodalService {
                     """
             );
 
-            String response = chatClient.prompt()
-                    .user(userSpec -> userSpec
-                            .text(fullPrompt)
-                            .media(MimeTypeUtils.IMAGE_PNG, imageResource))
-                    .call()
-                    .content();
+            return resultCache.getOrLoad("extract", fullPrompt, image, () -> {
+                String response = chatClient.prompt()
+                        .user(userSpec -> userSpec
+                                .text(fullPrompt)
+                                .media(image.mimeType(), image.resource()))
+                        .call()
+                        .content();
 
-            logger.info("结构化信息提取完成");
-            return response;
-        }).subscribeOn(Schedulers.boundedElastic());
+                logger.info("结构化信息提取完成");
+                return response;
+            });
+        }).subscribeOn(Schedulers.boundedElastic()));
     }
 
     /**
@@ -176,19 +330,19 @@ public class MultimodalService {
      * @return 问题的答案
      */
     public Mono<String> visualQuestionAnswering(Resource imageResource, String question) {
-        return Mono.fromCallable(() -> {
+        return imagePreprocessor.prepare(imageResource).flatMap(image -> Mono.fromCallable(() -> {
             logger.info("视觉问答，问题: {}", question);
 
             String response = chatClient.prompt()
                     .user(userSpec -> userSpec
                             .text(question)
-                            .media(MimeTypeUtils.IMAGE_PNG, imageResource))
+                            .media(image.mimeType(), image.resource()))
                     .call()
                     .content();
 
             logger.info("视觉问答完成");
             return response;
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()));
     }
 
     /**
@@ -202,26 +356,23 @@ public class MultimodalService {
      * @return 文字分析结果
      */
     public Mono<String> analyzeImageText(Resource imageResource, String analysisType) {
-        return Mono.fromCallable(() -> {
+        return imagePreprocessor.prepare(imageResource).flatMap(image -> Mono.fromCallable(() -> {
             logger.info("分析图片中的文字，类型: {}", analysisType);
 
-            String prompt = switch (analysisType != null ? analysisType.toLowerCase() : "extract") {
-                case "summarize" -> "请阅读图片中的文字内容，并提供简洁的摘要。";
-                case "translate" -> "请将图片中的文字翻译成中文。";
-                case "analyze" -> "请分析图片中的文字内容，解释其含义和背景。";
-                default -> "请提取图片中的所有文字内容，保持原有格式。";
-            };
+            String prompt = textPrompt(analysisType);
 
-            String response = chatClient.prompt()
-                    .user(userSpec -> userSpec
-                            .text(prompt)
-                            .media(MimeTypeUtils.IMAGE_PNG, imageResource))
-                    .call()
-                    .content();
+            return resultCache.getOrLoad("text", prompt, image, () -> {
+                String response = chatClient.prompt()
+                        .user(userSpec -> userSpec
+                                .text(prompt)
+                                .media(image.mimeType(), image.resource()))
+                        .call()
+                        .content();
 
-            logger.info("图片文字分析完成");
-            return response;
-        }).subscribeOn(Schedulers.boundedElastic());
+                logger.info("图片文字分析完成");
+                return response;
+            });
+        }).subscribeOn(Schedulers.boundedElastic()));
     }
 
     /**
@@ -234,26 +385,160 @@ public class MultimodalService {
      * @return 创意内容
      */
     public Mono<String> creativeDescription(Resource imageResource, String creativeStyle) {
-        return Mono.fromCallable(() -> {
+        return imagePreprocessor.prepare(imageResource).flatMap(image -> Mono.fromCallable(() -> {
             logger.info("生成创意描述，风格: {}", creativeStyle);
 
-            String prompt = switch (creativeStyle != null ? creativeStyle.toLowerCase() : "story") {
-                case "poem" -> "请根据这张图片创作一首优美的诗歌。";
-                case "marketing" -> "请为这张图片中的产品/场景撰写一段吸引人的营销文案。";
-                case "social" -> "请为这张图片写一段适合社交媒体发布的配文，包含相关话题标签。";
-                case "story" -> "请根据这张图片创作一个有趣的小故事。";
-                default -> "请根据这张图片创作一段优美的描述性文字。";
-            };
+            String prompt = creativePrompt(creativeStyle);
 
             String response = chatClient.prompt()
                     .user(userSpec -> userSpec
                             .text(prompt)
-                            .media(MimeTypeUtils.IMAGE_PNG, imageResource))
+                            .media(image.mimeType(), image.resource()))
                     .call()
                     .content();
 
             logger.info("创意描述生成完成");
             return response;
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()));
     }
+
+    // ==================== 流式输出 ====================
+
+    /**
+     * 流式分析单张图片内容
+     * 
+     * 与 analyzeImage 使用相同的提示词和缓存：命中时一次性返回缓存的结果，
+     * 未命中时边生成边返回，完整结果生成后写入缓存。
+     * 
+     * @param imageResource 图片资源
+     * @param question 关于图片的问题（可选）
+     * @return 模型生成的内容片段
+     */
+    public Flux<String> streamAnalyzeImage(Resource imageResource, String question) {
+        String prompt = analyzePrompt(question);
+        return imagePreprocessor.prepare(imageResource)
+                .flatMapMany(image -> streamCached("analyze", prompt, image));
+    }
+
+    /**
+     * 流式视觉问答
+     * 
+     * @param imageResource 图片资源
+     * @param question 关于图片的具体问题
+     * @return 模型生成的内容片段
+     */
+    public Flux<String> streamVisualQuestionAnswering(Resource imageResource, String question) {
+        return imagePreprocessor.prepare(imageResource)
+                .flatMapMany(image -> stream(question, image));
+    }
+
+    /**
+     * 流式分析图片中的文字，与 analyzeImageText 共用缓存
+     * 
+     * @param imageResource 包含文字的图片资源
+     * @param analysisType 分析类型（extract、summarize、translate、analyze）
+     * @return 模型生成的内容片段
+     */
+    public Flux<String> streamAnalyzeImageText(Resource imageResource, String analysisType) {
+        String prompt = textPrompt(analysisType);
+        return imagePreprocessor.prepare(imageResource)
+                .flatMapMany(image -> streamCached("text", prompt, image));
+    }
+
+    /**
+     * 流式生成图片的创意描述
+     * 
+     * @param imageResource 图片资源
+     * @param creativeStyle 创意风格（story、poem、marketing、social）
+     * @return 模型生成的内容片段
+     */
+    public Flux<String> streamCreativeDescription(Resource imageResource, String creativeStyle) {
+        String prompt = creativePrompt(creativeStyle);
+        return imagePreprocessor.prepare(imageResource)
+                .flatMapMany(image -> stream(prompt, image));
+    }
+
+    /**
+     * 流式调用模型，请求和响应都在 WebClient 的事件循环上处理，不占用阻塞线程
+     */
+    private Flux<String> stream(String prompt, PreparedImage image) {
+        long start = System.currentTimeMillis();
+        AtomicBoolean first = new AtomicBoolean(true);
+        return chatClient.prompt()
+                .user(userSpec -> userSpec
+                        .text(prompt)
+                        .media(image.mimeType(), image.resource()))
+                .stream()
+                .content()
+                .doOnNext(chunk -> {
+                    if (first.compareAndSet(true, false)) {
+                        logger.info("流式输出首个片段，耗时 {}ms", System.currentTimeMillis() - start);
+                    }
+                })
+                .doOnComplete(() -> logger.info("流式输出完成，耗时 {}ms", System.currentTimeMillis() - start));
+    }
+
+    /**
+     * 带缓存的流式调用：命中时输出完整结果，未命中时流式输出并在完成后写入缓存
+     * 
+     * 查询和写入缓存可能读写磁盘文件，只有这两步切换到 boundedElastic 线程；
+     * 客户端中途断开时结果不完整，不写入缓存。
+     */
+    private Flux<String> streamCached(String operation, String prompt, PreparedImage image) {
+        return Mono.fromCallable(() -> resultCache.get(operation, prompt, image))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flux()
+                .switchIfEmpty(Flux.defer(() -> {
+                    StringBuilder response = new StringBuilder();
+                    return stream(prompt, image)
+                            .doOnNext(response::append)
+                            .concatWith(Mono.<String>fromRunnable(() -> {
+                                        if (!response.isEmpty()) {
+                                            resultCache.put(operation, prompt, image, response.toString());
+                                        }
+                                    })
+                                    .subscribeOn(Schedulers.boundedElastic()));
+                }));
+    }
+
+    private static String analyzePrompt(String question) {
+        return question != null ? question : "请详细描述这张图片中的内容，包括主要物体、场景、颜色、氛围等。";
+    }
+
+    private static String textPrompt(String analysisType) {
+        return switch (analysisType != null ? analysisType.toLowerCase() : "extract") {
+            case "summarize" -> "请阅读图片中的文字内容，并提供简洁的摘要。";
+            case "translate" -> "请将图片中的文字翻译成中文。";
+            case "analyze" -> "请分析图片中的文字内容，解释其含义和背景。";
+            default -> "请提取图片中的所有文字内容，保持原有格式。";
+        };
+    }
+
+    private static String creativePrompt(String creativeStyle) {
+        return switch (creativeStyle != null ? creativeStyle.toLowerCase() : "story") {
+            case "poem" -> "请根据这张图片创作一首优美的诗歌。";
+            case "marketing" -> "请为这张图片中的产品/场景撰写一段吸引人的营销文案。";
+            case "social" -> "请为这张图片写一段适合社交媒体发布的配文，包含相关话题标签。";
+            case "story" -> "请根据这张图片创作一个有趣的小故事。";
+            default -> "请根据这张图片创作一段优美的描述性文字。";
+        };
+    }
+
+    /**
+     * 获取图片结果缓存统计信息
+     * 
+     * @return 命中率、内存占用和按操作的命中次数
+     */
+    public ImageResultCache.Stats getCacheStats() {
+        return resultCache.stats();
+    }
+
+    /**
+     * map-reduce 对比中单张图片的描述
+     * 
+     * @param index 图片在输入中的下标
+     * @param text 描述内容（失败时为 null）
+     * @param error 错误信息（成功时为 null）
+     */
+    private record ImageDescription(int index, String text, String error) {}
 }
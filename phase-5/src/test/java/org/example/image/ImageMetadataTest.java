@@ -0,0 +1,48 @@
+package org.example.image;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ImageMetadata 测试
+ * 
+ * 在 4x2 的图片中标记 (1, 0) 处的像素，检查按各个 EXIF 方向旋转后该像素的位置和图片尺寸。
+ */
+class ImageMetadataTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    private static final int MARK = 0xFF0000;
+
+    @ParameterizedTest(name = "方向 {0}")
+    @CsvSource({
+            // 方向, 目标宽, 目标高, 标记像素的目标 x, 目标 y
+            "1, 4, 2, 1, 0",
+            "2, 4, 2, 2, 0",
+            "3, 4, 2, 2, 1",
+            "4, 4, 2, 1, 1",
+            "5, 2, 4, 0, 1",
+            "6, 2, 4, 1, 1",
+            "7, 2, 4, 1, 2",
+            "8, 2, 4, 0, 2"
+    })
+    void orientMovesMarkedPixel(int orientation, int width, int height, int markX, int markY) {
+        BufferedImage source = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        source.setRGB(1, 0, MARK);
+
+        BufferedImage target = ImageMetadata.orient(source, orientation);
+
+        assertEquals(width, target.getWidth());
+        assertEquals(height, target.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = x == markX && y == markY ? MARK : 0;
+                assertEquals(expected, target.getRGB(x, y) & 0xFFFFFF, "像素 (" + x + ", " + y + ")");
+            }
+        }
+    }
+}